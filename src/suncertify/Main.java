@@ -1,11 +1,21 @@
 package suncertify;
 
 import java.awt.EventQueue;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import suncertify.Util.ProgramMode;
+import suncertify.db.BulkLoadResult;
+import suncertify.db.Data;
+import suncertify.db.ExportFormat;
 import suncertify.gui.SubContractorController;
 import suncertify.gui.MainFrame;
 import suncertify.gui.SubContractorModel;
@@ -41,6 +51,10 @@ public class Main {
 		LOGGER.info("Starting application...");
 		if (args.length == 0) {
 			clientMode();
+		} else if (args.length == 3 && "import".equals(args[0])) {
+			importMode(new File(args[1]), new File(args[2]));
+		} else if (args.length == 3 && "export".equals(args[0])) {
+			exportMode(args[1], new File(args[2]));
 		} else if (args.length == 1) {
 			if ("server".equals(args[0])) {
 				serverMode();
@@ -97,7 +111,12 @@ public class Main {
 				+ "Available modes are:" + util.newLine()
 				+ "server  -  start the server system" + util.newLine()
 				+ "alone   -  start the standalone application"
-				+ util.newLine() + "<empty> -  start the network client system");
+				+ util.newLine() + "<empty> -  start the network client system"
+				+ util.newLine() + "import <source> <database> - import the "
+				+ "records of a .csv or .db file into the database file"
+				+ util.newLine() + "export <database>|<server>:<port> <target>"
+				+ " - export the records of the database file or of the "
+				+ "running server to a .csv or .jsonl file");
 		System.exit(2);
 	}
 
@@ -120,6 +139,89 @@ public class Main {
 
 	}
 
+	/**
+	 * Imports the records of the given source file into the given database
+	 * file by a bulk load. A source file ending with <code>.db</code> is read
+	 * as database file, any other as comma separated values.
+	 * 
+	 * @param sourceFile
+	 *            the file containing the records to import
+	 * @param dbFile
+	 *            the database file to import into
+	 */
+	private static void importMode(File sourceFile, File dbFile) {
+		try {
+			Data data = new Data(dbFile);
+			try {
+				BulkLoadResult result;
+				if (sourceFile.getName().toLowerCase().endsWith(".db")) {
+					result = data.importDatabase(sourceFile);
+				} else {
+					result = data.importCsv(new InputStreamReader(
+							new FileInputStream(sourceFile), "US-ASCII"));
+				}
+				LOGGER.info(result.toString());
+			} finally {
+				data.close();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "The import of '" + sourceFile
+					+ "' failed", e);
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Exports all records of the given database to the given target file. A
+	 * target file ending with <code>.jsonl</code> or <code>.json</code> is
+	 * written as JSON Lines, any other as comma separated values. <br>
+	 * The database is either a database file not in use or a running server
+	 * given as <code>server:port</code>. A running server exports a
+	 * consistent snapshot of its records while it keeps serving its clients.
+	 * A database file in use by a server cannot be opened by this process,
+	 * so it has to be exported through its server.
+	 * 
+	 * @param source
+	 *            the database file or the server to export
+	 * @param targetFile
+	 *            the file to write the records to
+	 */
+	private static void exportMode(String source, File targetFile) {
+		String name = targetFile.getName().toLowerCase();
+		ExportFormat format = name.endsWith(".jsonl")
+				|| name.endsWith(".json") ? ExportFormat.JSON_LINES
+				: ExportFormat.CSV;
+		File dbFile = new File(source);
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(
+					targetFile), "US-ASCII");
+			try {
+				int exported;
+				if (dbFile.isFile()) {
+					Data data = new Data(dbFile);
+					try {
+						exported = data.export(writer, format);
+					} finally {
+						data.close();
+					}
+				} else {
+					exported = servFac.exportFromServer(source, writer,
+							format);
+				}
+				LOGGER.info(exported + " records exported to '" + targetFile
+						+ "'");
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "The export of '" + source
+					+ "' failed", e);
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+
 	/**
 	 * Launches the application in standalone mode.
 	 */
@@ -31,6 +31,23 @@ public final class PropertyManager {
 	/** The absolute path of the database file */
 	public static final String PROPERTY_DB_FILE_PATH = "database.file.path";
 
+	/** The storage mode of the database (see
+	 * <code>suncertify.db.StorageMode</code>) */
+	public static final String PROPERTY_DB_STORAGE_MODE =
+			"database.storage.mode";
+
+	/** When modifications are forced to disk (STRICT, PERIODIC or ASYNC) */
+	public static final String PROPERTY_DB_DURABILITY = "database.durability";
+
+	/** The time in milliseconds to wait for a record lock held by another
+	 * client before giving up */
+	public static final String PROPERTY_DB_LOCK_TIMEOUT =
+			"database.lock.timeout";
+
+	/** The time in milliseconds a record lock is leased for before it is
+	 * released automatically */
+	public static final String PROPERTY_DB_LOCK_LEASE = "database.lock.lease";
+
 	/** The RMI server address (name or IP address) */
 	public static final String PROPERTY_SERVER_ADDRESS = "server.address";
 
@@ -40,6 +57,18 @@ public final class PropertyManager {
 	/** Standard value of the RMI port */
 	private static final String SERVER_PORT_STANDARD = "1099";
 
+	/** Standard value of the database storage mode */
+	private static final String DB_STORAGE_MODE_STANDARD = "FILE";
+
+	/** Standard value of the database durability mode */
+	private static final String DB_DURABILITY_STANDARD = "STRICT";
+
+	/** Standard value of the database lock timeout in milliseconds */
+	private static final String DB_LOCK_TIMEOUT_STANDARD = "5000";
+
+	/** Standard value of the database lock lease time in milliseconds */
+	private static final String DB_LOCK_LEASE_STANDARD = "60000";
+
 	/** The instance to read/write from/to the database */
 	private Properties props;
 
@@ -73,6 +102,14 @@ public final class PropertyManager {
 			 */
 			if (!propFile.exists()) {
 				props.setProperty(PROPERTY_DB_FILE_PATH, "");
+				props.setProperty(PROPERTY_DB_STORAGE_MODE,
+						DB_STORAGE_MODE_STANDARD);
+				props.setProperty(PROPERTY_DB_DURABILITY,
+						DB_DURABILITY_STANDARD);
+				props.setProperty(PROPERTY_DB_LOCK_TIMEOUT,
+						DB_LOCK_TIMEOUT_STANDARD);
+				props.setProperty(PROPERTY_DB_LOCK_LEASE,
+						DB_LOCK_LEASE_STANDARD);
 				props.setProperty(PROPERTY_SERVER_ADDRESS, "");
 				props.setProperty(PROPERTY_SERVER_PORT, SERVER_PORT_STANDARD);
 				props.store(new FileWriter(PROP_FILE), "Property '" + PROP_FILE
@@ -0,0 +1,270 @@
+package suncertify.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The <code>AsyncData</code> class is an asynchronous facade of
+ * {@link Data}. Its methods return at once with a <code>Future</code> of the
+ * result, while the operations are executed by a dedicated I/O thread. A
+ * {@link DBCallback} may be passed to be notified on completion instead of
+ * waiting for the <code>Future</code>, so the calling thread, e.g.: the event
+ * dispatch thread of the GUI, is never parked. <br>
+ * Reads submitted while the I/O thread is busy are combined: All reads
+ * pending when the I/O thread gets to them are done by one call of
+ * {@link Data#readAll(int[])}, i.e.: with one shared access to the database
+ * and merged file reads. <br>
+ * Record locks are not offered here since waiting for a lock would block the
+ * I/O thread; records are modified by
+ * {@link #compareAndUpdate(int, long, String[], DBCallback)} instead.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+public class AsyncData {
+
+	/** The database the operations are executed on */
+	private final Data data;
+
+	/** The executor running the operations on the I/O thread */
+	private final ExecutorService executor;
+
+	/** The reads submitted but not yet executed */
+	private final Queue<ReadRequest> pendingReads =
+			new ConcurrentLinkedQueue<ReadRequest>();
+
+	/** Indicates that a batch executing the pending reads is submitted */
+	private final AtomicBoolean readBatchScheduled = new AtomicBoolean();
+
+	/**
+	 * Constructs the facade of the given database and starts its I/O thread.
+	 * 
+	 * @param data
+	 *            the database to access asynchronously
+	 */
+	public AsyncData(Data data) {
+		this.data = data;
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Database I/O");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Reads a record asynchronously. The read is combined with the other
+	 * reads pending at the time it is executed.
+	 * 
+	 * @param recNo
+	 *            the record number to read
+	 * @param callback
+	 *            the callback to notify on completion or <code>null</code>
+	 * @return the future values of the record; it fails with a
+	 *         <code>RecordNotFoundException</code> if the record does not
+	 *         exist or with a <code>RejectedExecutionException</code> if the
+	 *         I/O thread has been shut down
+	 */
+	public Future<String[]> read(int recNo, DBCallback<String[]> callback) {
+		ReadRequest request = new ReadRequest(recNo, callback);
+		pendingReads.add(request);
+		if (readBatchScheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						readPending();
+					}
+				});
+			} catch (RejectedExecutionException ree) {
+				readBatchScheduled.set(false);
+				ReadRequest rejected;
+				while ((rejected = pendingReads.poll()) != null) {
+					rejected.result.fail(ree);
+				}
+			}
+		}
+		return request.result;
+	}
+
+	/**
+	 * Reads a record together with its version stamp asynchronously (see
+	 * {@link Data#readRecord(int)}).
+	 * 
+	 * @param recNo
+	 *            the record number to read
+	 * @param callback
+	 *            the callback to notify on completion or <code>null</code>
+	 * @return the future record
+	 */
+	public Future<DBRecord> readRecord(final int recNo,
+			DBCallback<DBRecord> callback) {
+		return submit(new Callable<DBRecord>() {
+			@Override
+			public DBRecord call() throws Exception {
+				return data.readRecord(recNo);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Searches the records matching the given criteria asynchronously (see
+	 * {@link DBMain#find(String[])}).
+	 * 
+	 * @param criteria
+	 *            the values to search for in the order of the database
+	 *            columns
+	 * @param callback
+	 *            the callback to notify on completion or <code>null</code>
+	 * @return the future numbers of the found records
+	 */
+	public Future<int[]> find(final String[] criteria,
+			DBCallback<int[]> callback) {
+		return submit(new Callable<int[]>() {
+			@Override
+			public int[] call() throws Exception {
+				return data.find(criteria);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Updates a record asynchronously if its version stamp is still the
+	 * expected one (see {@link Data#compareAndUpdate(int, long, String[])}).
+	 * 
+	 * @param recNo
+	 *            the number of the record to update
+	 * @param expectedVersion
+	 *            the version stamp the record must still have
+	 * @param values
+	 *            the new data of the record
+	 * @param callback
+	 *            the callback to notify on completion or <code>null</code>
+	 * @return the future indication if the record has been updated
+	 */
+	public Future<Boolean> compareAndUpdate(final int recNo,
+			final long expectedVersion, final String[] values,
+			DBCallback<Boolean> callback) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return data.compareAndUpdate(recNo, expectedVersion, values);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Stops the I/O thread after all submitted operations have been
+	 * executed. Operations submitted afterwards are rejected.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Submits the given operation to the I/O thread.
+	 * 
+	 * @param <T>
+	 *            the type of the operation's result
+	 * @param operation
+	 *            the operation to execute
+	 * @param callback
+	 *            the callback to notify on completion or <code>null</code>
+	 * @return the future result of the operation
+	 */
+	private <T> Future<T> submit(final Callable<T> operation,
+			DBCallback<T> callback) {
+		final DBAsyncResult<T> result = new DBAsyncResult<T>(callback);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				T value;
+				try {
+					value = operation.call();
+				} catch (Exception e) {
+					result.fail(e);
+					return;
+				}
+				result.complete(value);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Executes all pending reads by one call of {@link Data#readAll(int[])}.
+	 * Runs on the I/O thread.
+	 */
+	private void readPending() {
+		readBatchScheduled.set(false);
+		List<ReadRequest> batch = new ArrayList<ReadRequest>();
+		ReadRequest request;
+		while ((request = pendingReads.poll()) != null) {
+			batch.add(request);
+		}
+		if (batch.isEmpty()) {
+			return; // taken by the previous batch already
+		}
+
+		int[] recNos = new int[batch.size()];
+		for (int i = 0; i < recNos.length; i++) {
+			recNos[i] = batch.get(i).recNo;
+		}
+		String[][] records;
+		try {
+			records = data.readAll(recNos);
+		} catch (RecordNotFoundException rnfe) {
+			for (ReadRequest failed : batch) {
+				failed.result.fail(rnfe);
+			}
+			return;
+		}
+		for (int i = 0; i < records.length; i++) {
+			ReadRequest read = batch.get(i);
+			if (records[i] != null) {
+				read.result.complete(records[i]);
+			} else {
+				read.result.fail(new RecordNotFoundException("Record '"
+						+ read.recNo + "' does not exist"));
+			}
+		}
+	}
+
+	/**
+	 * A read waiting to be executed with the next batch.
+	 */
+	private static class ReadRequest {
+
+		/** The number of the record to read */
+		private final int recNo;
+
+		/** The pending result of the read */
+		private final DBAsyncResult<String[]> result;
+
+		/**
+		 * Constructs a read request.
+		 * 
+		 * @param recNo
+		 *            the number of the record to read
+		 * @param callback
+		 *            the callback to notify on completion or
+		 *            <code>null</code>
+		 */
+		ReadRequest(int recNo, DBCallback<String[]> callback) {
+			this.recNo = recNo;
+			result = new DBAsyncResult<String[]>(callback);
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package suncertify.db;
+
+/**
+ * The <code>BulkLoadResult</code> class reports the outcome of a bulk load of
+ * records into the database done by {@link Data#importCsv(java.io.Reader)} or
+ * {@link Data#importDatabase(java.io.File)}.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+public final class BulkLoadResult {
+
+	/** The number of records imported */
+	private final int importedCount;
+
+	/** The number of records skipped as they were already present */
+	private final int duplicateCount;
+
+	/** The duration of the bulk load in milliseconds */
+	private final long duration;
+
+	/**
+	 * Constructs the result of a bulk load.
+	 * 
+	 * @param importedCount
+	 *            the number of records imported
+	 * @param duplicateCount
+	 *            the number of records skipped as they were already present
+	 * @param duration
+	 *            the duration of the bulk load in milliseconds
+	 */
+	BulkLoadResult(int importedCount, int duplicateCount, long duration) {
+		this.importedCount = importedCount;
+		this.duplicateCount = duplicateCount;
+		this.duration = duration;
+	}
+
+	/**
+	 * Returns the number of records added to the database.
+	 * 
+	 * @return the number of imported records
+	 */
+	public int getImportedCount() {
+		return importedCount;
+	}
+
+	/**
+	 * Returns the number of records not added to the database as a record
+	 * with the same key was already present.
+	 * 
+	 * @return the number of skipped duplicates
+	 */
+	public int getDuplicateCount() {
+		return duplicateCount;
+	}
+
+	/**
+	 * Returns the time the bulk load has taken.
+	 * 
+	 * @return the duration of the bulk load in milliseconds
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return String.format("Bulk load imported %d records and skipped %d "
+				+ "duplicates in %d ms", importedCount, duplicateCount,
+				duration);
+	}
+
+}
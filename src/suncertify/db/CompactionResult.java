@@ -0,0 +1,59 @@
+package suncertify.db;
+
+/**
+ * The <code>CompactionResult</code> class reports the outcome of a compaction
+ * of the database file done by {@link Data#compact()}.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+public final class CompactionResult {
+
+	/** The number of bytes the database file has shrunk */
+	private final long reclaimedBytes;
+
+	/** The duration of the compaction in milliseconds */
+	private final long duration;
+
+	/**
+	 * Constructs the result of a compaction.
+	 * 
+	 * @param reclaimedBytes
+	 *            the number of bytes the database file has shrunk
+	 * @param duration
+	 *            the duration of the compaction in milliseconds
+	 */
+	CompactionResult(long reclaimedBytes, long duration) {
+		this.reclaimedBytes = reclaimedBytes;
+		this.duration = duration;
+	}
+
+	/**
+	 * Returns the number of bytes the database file has shrunk by removing
+	 * deleted records.
+	 * 
+	 * @return the reclaimed bytes
+	 */
+	public long getReclaimedBytes() {
+		return reclaimedBytes;
+	}
+
+	/**
+	 * Returns the time the compaction has taken.
+	 * 
+	 * @return the duration of the compaction in milliseconds
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return String.format("Compaction reclaimed %d bytes in %d ms",
+				reclaimedBytes, duration);
+	}
+
+}
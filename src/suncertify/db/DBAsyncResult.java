@@ -0,0 +1,153 @@
+package suncertify.db;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The <code>DBAsyncResult</code> class is the pending result of an
+ * asynchronous database operation of {@link AsyncData}. The I/O thread
+ * completes it with the operation's result or exception, which wakes up the
+ * threads waiting in {@link #get()} and notifies the callback, if any. An
+ * exception thrown by the callback is logged but does not affect the result.
+ * <br>
+ * Operations cannot be cancelled once they have been submitted.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ * @param <T>
+ *            the type of the operation's result
+ */
+class DBAsyncResult<T> implements Future<T> {
+
+	/** The logger of the database layer */
+	private static final Logger LOGGER = Logger.getLogger(DBAsyncResult.class
+			.getName());
+
+	/** The callback to notify on completion or <code>null</code> */
+	private final DBCallback<T> callback;
+
+	/** Released when the result has been set */
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	/** The result of the operation */
+	private volatile T result;
+
+	/** The exception of the failed operation or <code>null</code> */
+	private volatile Exception failure;
+
+	/**
+	 * Constructs a pending result.
+	 * 
+	 * @param callback
+	 *            the callback to notify on completion or <code>null</code>
+	 */
+	DBAsyncResult(DBCallback<T> callback) {
+		this.callback = callback;
+	}
+
+	/**
+	 * Completes the operation successfully.
+	 * 
+	 * @param value
+	 *            the result of the operation
+	 */
+	void complete(T value) {
+		result = value;
+		done.countDown();
+		if (callback != null) {
+			try {
+				callback.completed(value);
+			} catch (RuntimeException re) {
+				LOGGER.log(Level.WARNING, "Database callback failed", re);
+			}
+		}
+	}
+
+	/**
+	 * Completes the operation with the given exception.
+	 * 
+	 * @param cause
+	 *            the exception thrown by the operation
+	 */
+	void fail(Exception cause) {
+		failure = cause;
+		done.countDown();
+		if (callback != null) {
+			try {
+				callback.failed(cause);
+			} catch (RuntimeException re) {
+				LOGGER.log(Level.WARNING, "Database callback failed", re);
+			}
+		}
+	}
+
+	/**
+	 * Does nothing because submitted operations cannot be cancelled.
+	 * 
+	 * @param mayInterruptIfRunning
+	 *            ignored
+	 * @return always <code>false</code>
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T get() throws InterruptedException, ExecutionException {
+		done.await();
+		return getResult();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public T get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit)) {
+			throw new TimeoutException("Database operation not completed in "
+					+ "time");
+		}
+		return getResult();
+	}
+
+	/**
+	 * Returns the result of the completed operation.
+	 * 
+	 * @return the result
+	 * @throws ExecutionException
+	 *             wrapping the exception of the failed operation
+	 */
+	private T getResult() throws ExecutionException {
+		if (failure != null) {
+			throw new ExecutionException(failure);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,32 @@
+package suncertify.db;
+
+/**
+ * A callback notified when an asynchronous database operation of
+ * {@link AsyncData} has completed. It is called on the I/O thread of
+ * <code>AsyncData</code>, so it should return quickly and must not wait for
+ * other asynchronous operations.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ * @param <T>
+ *            the type of the operation's result
+ */
+public interface DBCallback<T> {
+
+	/**
+	 * Called when the operation has completed successfully.
+	 * 
+	 * @param result
+	 *            the result of the operation
+	 */
+	public void completed(T result);
+
+	/**
+	 * Called when the operation has failed.
+	 * 
+	 * @param cause
+	 *            the exception thrown by the operation, e.g.: a
+	 *            <code>RecordNotFoundException</code>
+	 */
+	public void failed(Exception cause);
+}
@@ -0,0 +1,116 @@
+package suncertify.db;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The <code>DBColumnIndex</code> class is a secondary index over the values of
+ * one database column. It maps every value to the numbers of the records
+ * holding it. The values are kept sorted, so all records whose value starts
+ * with a given prefix are found by one lookup of the prefix followed by a walk
+ * over the matching values, i.e.: in O(log n + k). Additionally the values
+ * are hashed, so the records holding exactly a given value are found in
+ * constant time. Both views share the same record number sets. <br>
+ * The index holds the values as returned when reading a record, i.e.: without
+ * padding. It is maintained by <code>DBFileAccess</code> on every
+ * modification and is not thread safe.
+ *
+ * @author Jochen R. Meyer
+ *
+ */
+class DBColumnIndex {
+
+	/** The indexed values and the records holding them */
+	private TreeMap<String, DBRecNoSet> entries;
+
+	/** The same entries hashed for exact-match lookups */
+	private HashMap<String, DBRecNoSet> exactEntries;
+
+	/**
+	 * Constructs an empty index.
+	 */
+	DBColumnIndex() {
+		entries = new TreeMap<String, DBRecNoSet>();
+		exactEntries = new HashMap<String, DBRecNoSet>();
+	}
+
+	/**
+	 * Adds the given record holding the given value to the index.
+	 *
+	 * @param value
+	 *            the value of the record's column
+	 * @param recNo
+	 *            the number of the record
+	 */
+	void add(String value, int recNo) {
+		DBRecNoSet recNos = exactEntries.get(value);
+		if (recNos == null) {
+			recNos = new DBRecNoSet();
+			entries.put(value, recNos);
+			exactEntries.put(value, recNos);
+		}
+		recNos.add(recNo);
+	}
+
+	/**
+	 * Removes the given record holding the given value from the index.
+	 *
+	 * @param value
+	 *            the value of the record's column
+	 * @param recNo
+	 *            the number of the record
+	 */
+	void remove(String value, int recNo) {
+		DBRecNoSet recNos = exactEntries.get(value);
+		if (recNos != null && recNos.remove(recNo) && recNos.isEmpty()) {
+			entries.remove(value);
+			exactEntries.remove(value);
+		}
+	}
+
+	/**
+	 * Removes all values from the index.
+	 */
+	void clear() {
+		entries.clear();
+		exactEntries.clear();
+	}
+
+	/**
+	 * Finds all records holding exactly the given value.
+	 *
+	 * @param value
+	 *            the value to look for
+	 * @return a bit set containing the numbers of the matching records
+	 */
+	BitSet findExact(String value) {
+		BitSet result = new BitSet();
+		DBRecNoSet recNos = exactEntries.get(value);
+		if (recNos != null) {
+			recNos.addTo(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Finds all records whose value starts with the given prefix.
+	 *
+	 * @param prefix
+	 *            the prefix to look for
+	 * @return a bit set containing the numbers of the matching records
+	 */
+	BitSet findPrefix(String prefix) {
+		BitSet result = new BitSet();
+		for (Map.Entry<String, DBRecNoSet> entry : entries.tailMap(prefix)
+				.entrySet()) {
+			if (!entry.getKey().startsWith(prefix)) {
+				break;
+			}
+			entry.getValue().addTo(result);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,85 @@
+package suncertify.db;
+
+/**
+ * Extension of the {@link DBMain} interface whose record locks are not bound
+ * to the locking thread. <br>
+ * Locking a record returns a lock cookie identifying the lock owner. The
+ * record can only be updated, deleted and unlocked by passing this cookie,
+ * no matter which thread does it. So a client may lock a record on one thread
+ * and modify and unlock it on another one, e.g.: when its calls are executed
+ * by a thread pool. <br>
+ * Locks acquired by {@link #lock(int)} are still bound to the locking thread;
+ * they cannot be used together with the methods of this interface.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+public interface DBCookieMain extends DBMain {
+
+	/**
+	 * Locks a record so that it can only be updated or deleted by the holder
+	 * of the returned lock cookie. If the specified record is already locked,
+	 * the current thread waits at most the given time until the lock is
+	 * handed over to it.
+	 * 
+	 * @param recNo
+	 *            the record number to lock
+	 * @param timeoutMillis
+	 *            the maximum time to wait for the lock in milliseconds
+	 * @return the lock cookie to pass when updating, deleting or unlocking
+	 *         the record
+	 * @throws RecordNotFoundException
+	 *             if the given record number could not be found on the database
+	 * @throws RecordBusyException
+	 *             if the lock could not be acquired in time or the current
+	 *             thread has been interrupted while waiting for it
+	 */
+	public long lockRecord(int recNo, long timeoutMillis)
+			throws RecordNotFoundException, RecordBusyException;
+
+	/**
+	 * Modifies the fields of a record locked with the given lock cookie. The
+	 * new value for field n appears in data[n].
+	 * 
+	 * @param recNo
+	 *            the record number to update
+	 * @param data
+	 *            the new data of the record
+	 * @param lockCookie
+	 *            the cookie returned when locking the record
+	 * @throws RecordNotFoundException
+	 *             if the given record number could not be found on the database
+	 *             or is not locked with the given cookie
+	 */
+	public void update(int recNo, String[] data, long lockCookie)
+			throws RecordNotFoundException;
+
+	/**
+	 * Deletes a record locked with the given lock cookie, making the record
+	 * number and associated disk storage available for reuse.
+	 * 
+	 * @param recNo
+	 *            the record number to delete
+	 * @param lockCookie
+	 *            the cookie returned when locking the record
+	 * @throws RecordNotFoundException
+	 *             if the given record number could not be found on the database
+	 *             or is not locked with the given cookie
+	 */
+	public void delete(int recNo, long lockCookie)
+			throws RecordNotFoundException;
+
+	/**
+	 * Releases the lock on a record locked with the given lock cookie. A lock
+	 * held with another cookie is not released.
+	 * 
+	 * @param recNo
+	 *            the record number to unlock
+	 * @param lockCookie
+	 *            the cookie returned when locking the record
+	 * @throws RecordNotFoundException
+	 *             if the given record number could not be found on the database
+	 */
+	public void unlock(int recNo, long lockCookie)
+			throws RecordNotFoundException;
+}
@@ -0,0 +1,162 @@
+package suncertify.db;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The <code>DBCsvRecordSource</code> class reads the records to import from
+ * comma separated values. Each line holds one record with the values in the
+ * order of the database columns. Values containing commas, quotes or line
+ * breaks are enclosed in double quotes, quotes inside them are doubled. <br>
+ * A first line naming the database columns is skipped, as are empty lines.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+class DBCsvRecordSource implements DBRecordSource {
+
+	/** The size of the buffer reading the values */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** The character separating two values */
+	private static final char SEPARATOR = ',';
+
+	/** The character enclosing a value containing special characters */
+	private static final char QUOTE = '"';
+
+	/** The reader delivering the values */
+	private final BufferedReader reader;
+
+	/** The names of the database columns */
+	private final String[] columnNames;
+
+	/** The values of the record currently read */
+	private final List<String> values = new ArrayList<String>();
+
+	/** Collects the characters of the value currently read */
+	private final StringBuilder value = new StringBuilder();
+
+	/** The number of the line currently read */
+	private int lineNumber;
+
+	/**
+	 * Constructs the source reading from the given reader.
+	 * 
+	 * @param reader
+	 *            the reader delivering the comma separated values
+	 * @param columnNames
+	 *            the names of the database columns in the order of their
+	 *            numbers
+	 */
+	DBCsvRecordSource(Reader reader, String[] columnNames) {
+		this.reader = new BufferedReader(reader, BUFFER_SIZE);
+		this.columnNames = columnNames.clone();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String[] nextRecord() throws IOException {
+		while (readLine()) {
+			if (values.size() == 1 && values.get(0).length() == 0) {
+				continue; // empty line
+			}
+			if (values.size() != columnNames.length) {
+				throw new IOException("Line " + lineNumber + " contains "
+						+ values.size() + " values instead of "
+						+ columnNames.length);
+			}
+			String[] record = values.toArray(new String[values.size()]);
+			if (lineNumber == 1 && isHeader(record)) {
+				continue;
+			}
+			return record;
+		}
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Reads the values of the next line, which may span several physical
+	 * lines if a quoted value contains line breaks.
+	 * 
+	 * @return <code>false</code> if the end of the input has been reached
+	 * @throws IOException
+	 *             if the input cannot be read or ends inside a quoted value
+	 */
+	private boolean readLine() throws IOException {
+		values.clear();
+		value.setLength(0);
+		int c = reader.read();
+		if (c < 0) {
+			return false;
+		}
+		lineNumber++;
+		int startLine = lineNumber;
+		boolean quoted = false;
+		while (true) {
+			if (quoted) {
+				if (c < 0) {
+					throw new IOException("Line " + startLine + " ends "
+							+ "inside a quoted value");
+				}
+				if (c == QUOTE) {
+					c = reader.read();
+					if (c != QUOTE) {
+						quoted = false;
+						continue; // handle the character behind the quote
+					}
+				} else if (c == '\n') {
+					lineNumber++;
+				}
+				value.append((char) c);
+			} else if (c < 0 || c == '\n') {
+				break;
+			} else if (c == '\r') {
+				reader.mark(1);
+				if (reader.read() != '\n') {
+					reader.reset();
+				}
+				break;
+			} else if (c == SEPARATOR) {
+				values.add(value.toString());
+				value.setLength(0);
+			} else if (c == QUOTE) {
+				quoted = true;
+			} else {
+				value.append((char) c);
+			}
+			c = reader.read();
+		}
+		values.add(value.toString());
+		return true;
+	}
+
+	/**
+	 * Checks if the given record names the database columns.
+	 * 
+	 * @param record
+	 *            the values of the record
+	 * @return <code>true</code> if the values are the column names
+	 */
+	private boolean isHeader(String[] record) {
+		for (int i = 0; i < record.length; i++) {
+			if (!columnNames[i].equalsIgnoreCase(record[i].trim())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -1,19 +1,38 @@
 package suncertify.db;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * The <code>DBFileAccess</code> class is the part of the database layer which
  * actually executes the read and write operations on the database file. It is
- * not thread safe and serves as a helper class for <code>Data</code>.
+ * not thread safe and serves as a helper class for <code>Data</code>. <br>
+ * All file operations are positional reads and writes on a
+ * <code>FileChannel</code>, i.e.: there is no shared file pointer. Thus reading
+ * operations do not interfere with each other and may be executed in parallel
+ * as long as no modifying operation is running at the same time. <br>
+ * Optionally the modifications are protected by a write-ahead journal (see
+ * {@link DBJournal}). In this case modified records are kept in memory and
+ * written to the database file by a checkpoint later on. Journaled
+ * modifications are durable as soon as they are committed. <br>
+ * The name and location columns are held in secondary indexes (see
+ * {@link DBColumnIndex}) which are built when the file is opened and kept up
+ * to date by every modification. They allow prefix and exact-match searches
+ * without a full scan.
  * 
  * @author Jochen R. Meyer
  * 
@@ -27,17 +46,58 @@ class DBFileAccess {
 	private static final int MAGIC_COOKIE_VALUE_BYTES = 4;
 
 	/** Predefined value indicating a valid database record */
-	private static final byte RECORD_VALID = 00;
+	static final byte RECORD_VALID = 00;
 
 	/** Predefined value indicating a database record marked as deleted */
 	private static final byte RECORD_DELETED = (byte) 0xFF;
 
+	/** Number of records whose flags are read at once while scanning the
+	 * data section */
+	static final int SCAN_CHUNK_RECORDS = 1024;
+
+	/** Number of modified records kept in memory until a checkpoint is
+	 * enforced */
+	private static final int MAX_PENDING_RECORDS = 4096;
+
+	/** The maximum number of unrequested records between two requested ones
+	 * which are read along to merge the two reads into one */
+	private static final int MAX_READ_GAP = 4;
+
+	/** The suffix appended to the database file name to get the name of its
+	 * journal file */
+	private static final String JOURNAL_SUFFIX = ".journal";
+
+	/** The suffix appended to the database file name to get the name of the
+	 * compacted copy while a compaction is running */
+	private static final String COMPACTION_SUFFIX = ".compact";
+
+	/** The suffix appended to the database file name to get the name of the
+	 * file mapping the records to their slots after a compaction */
+	private static final String SLOTS_SUFFIX = ".slots";
+
+	/** The suffix appended to the database file name to get the name of the
+	 * new slot map while a compaction replaces the database file */
+	private static final String SLOTS_TEMP_SUFFIX = ".slots.tmp";
+
+	/** The name of the column not being part of a record's unique key */
+	private static final String OWNER_COLUMN = "owner";
+
+	/** The names of the columns maintained in a secondary index */
+	private static final List<String> INDEXED_COLUMNS = Arrays.asList("name",
+			"location");
+
 	/** Standard message for a failed database update */
 	private static final String MSG_DB_UPDATE_FAIL = "Database update failed.";
 
-	/** The object reaizing the read/write operations */
+	/** The database file */
+	private File dbFile;
+
+	/** The file the channel has been opened from */
 	private RandomAccessFile raf;
 
+	/** The channel realizing the positional read/write operations */
+	private FileChannel channel;
+
 	/** The actual start of the data section (to be read from the database 
 	 * file) */
 	private int dataSectionStart;
@@ -49,11 +109,113 @@ class DBFileAccess {
 	 * columns' lengths) */
 	private int dataSetLength;
 
+	/** The codec converting the raw bytes of a record from and into its
+	 * values */
+	private DBRecordCodec codec;
+
+	/** A buffer per thread able to hold one complete record. It is reused for
+	 * every record read or written by the thread. */
+	private ThreadLocal<ByteBuffer> recordBuffer;
+
+	/** The state of all record slots in the database file: a set bit marks a
+	 * valid record, a cleared bit a deleted one */
+	private BitSet validRecords;
+
+	/** The number of record slots in the database file (i.e.: valid and
+	 * deleted ones). This is the high-water mark at which new records are
+	 * appended if there is no deleted record to reuse. */
+	private int recordCount;
+
+	/** The numbers of all records marked as deleted, i.e.: the slots which
+	 * can be reused by newly created records */
+	private Queue<Integer> freeRecords;
+
+	/** Indicates the modifications are protected by a journal */
+	private boolean journaled;
+
+	/** The write-ahead journal; <code>null</code> if not journaled */
+	private DBJournal journal;
+
+	/** The images of all records modified since the last checkpoint, i.e.: of
+	 * all journaled records not yet written to the database file; keyed by
+	 * the records' slots */
+	private SortedMap<Integer, byte[]> pendingRecords;
+
+	/** Indicates a checkpoint has written records to the database file
+	 * without forcing them to disk */
+	private boolean unforcedWrites;
+
+	/** The commit ticket up to which all modifications have been forced to
+	 * the database file by a checkpoint */
+	private long forcedTicket;
+
+	/** The secondary indexes in the order of the database columns;
+	 * <code>null</code> for columns not indexed */
+	private DBColumnIndex[] columnIndexes;
+
+	/** The unique keys of all valid records (all values except the owner)
+	 * and the records holding them */
+	private Map<List<String>, DBRecNoSet> uniqueKeys;
+
+	/** The number of the owner column or <code>-1</code> if there is none */
+	private int ownerColumn = -1;
+
+	/** The slots of the records in the database file since its last
+	 * compaction; <code>null</code> as long as each record resides in the
+	 * slot of its own number. A deleted record may have no slot (-1). */
+	private int[] recordSlots;
+
+	/** The number of slots in the database file if the records are mapped to
+	 * their slots by <code>recordSlots</code> */
+	private int slotCount;
+
+	/** The number of records mapped explicitly by the slot map file; the
+	 * records appended afterwards occupy the remaining slots in order */
+	private int mappedRecordCount;
+
+	/** The file persisting <code>recordSlots</code> */
+	private File slotsFile;
+
+	/** The compacted copy of the database file while a compaction is
+	 * running, <code>null</code> otherwise */
+	private File compactionFile;
+
+	/** The records copied by the running compaction in the order of their
+	 * current slots; their slots in the copy are their indexes */
+	private int[] compactionRecords;
+
+	/** The records modified since the running compaction has started */
+	private BitSet compactionDirty;
+
+	/** Indicates if the data section is held in memory */
+	private boolean memoryResident;
+
+	/** The images of all record slots if the data section is held in memory,
+	 * <code>null</code> otherwise; it may be larger than the slots in use */
+	private byte[] memoryImage;
+
+	/** The snapshots currently open; the images of their slots are preserved
+	 * before they are modified */
+	private List<DBSnapshot> snapshots;
+
+	/** The version stamps of the records by record number; <code>0</code> for
+	 * records not modified since the database file has been opened */
+	private long[] recordVersions;
+
+	/** The version stamp of the latest modification */
+	private long lastVersion;
+
 	/**
 	 * Contructs the object without any arguments.
 	 */
 	DBFileAccess() {
 		dbColumns = new ArrayList<DBColumn>();
+		validRecords = new BitSet();
+		freeRecords = new ArrayDeque<Integer>();
+		pendingRecords = new TreeMap<Integer, byte[]>();
+		uniqueKeys = new HashMap<List<String>, DBRecNoSet>();
+		snapshots = new ArrayList<DBSnapshot>();
+		recordVersions = new long[0];
 	}
 
 	/**
@@ -66,15 +228,400 @@ class DBFileAccess {
 	 *             if the database file cannot be accessed properly
 	 */
 	DBFileAccess(File dbFile) throws IOException {
+		this(dbFile, false);
+	}
+
+	/**
+	 * Constructs a <code>DBFileAccess</code> object and initializes it with a
+	 * connection to the given database <code>File</code> object. If
+	 * <code>journaled</code> is <code>true</code>, all modifications are
+	 * protected by a write-ahead journal stored next to the database file.
+	 * 
+	 * @param dbFile
+	 *            the database file to operate on
+	 * @param journaled
+	 *            <code>true</code> if the modifications shall be journaled
+	 * @throws IOException
+	 *             if the database file or its journal cannot be accessed
+	 *             properly
+	 */
+	DBFileAccess(File dbFile, boolean journaled) throws IOException {
+		this(dbFile, journaled, false);
+	}
+
+	/**
+	 * Constructs a <code>DBFileAccess</code> object and initializes it with a
+	 * connection to the given database <code>File</code> object. If
+	 * <code>memoryResident</code> is <code>true</code>, the whole data section
+	 * is loaded into memory at once. All reads are served from memory then,
+	 * while modifications are written to memory and to the database file.
+	 * 
+	 * @param dbFile
+	 *            the database file to operate on
+	 * @param journaled
+	 *            <code>true</code> if the modifications shall be journaled
+	 * @param memoryResident
+	 *            <code>true</code> if the records shall be held in memory
+	 * @throws IOException
+	 *             if the database file or its journal cannot be accessed
+	 *             properly
+	 */
+	DBFileAccess(File dbFile, boolean journaled, boolean memoryResident)
+			throws IOException {
 		this();
+		this.journaled = journaled;
+		this.memoryResident = memoryResident;
 		openConnection(dbFile);
 	}
 
+	/**
+	 * Writes all records modified since the last checkpoint to the database
+	 * file and forces them to disk. Afterwards the journal is emptied. Without
+	 * a journal nothing has to be done.
+	 * 
+	 * @throws IOException
+	 *             if the database file or its journal cannot be accessed
+	 *             properly
+	 */
+	void checkpoint() throws IOException {
+		checkpoint(true);
+	}
+
+	/**
+	 * Writes all records modified since the last checkpoint to the database
+	 * file and, if requested, forces them to disk together with the records
+	 * written unforced by previous checkpoints. Afterwards the journal is
+	 * emptied. Without a journal nothing has to be done.
+	 * 
+	 * @param force
+	 *            <code>true</code> if the records must be forced to disk,
+	 *            <code>false</code> if they may be flushed by the operating
+	 *            system later
+	 * @throws IOException
+	 *             if the database file or its journal cannot be accessed
+	 *             properly
+	 */
+	void checkpoint(boolean force) throws IOException {
+		if (journal == null) {
+			return;
+		}
+
+		boolean pending = !pendingRecords.isEmpty();
+		if (pending) {
+			// The journal must be written before the database file is touched
+			journal.commit(journal.getAppendedSequence(), force);
+			for (Map.Entry<Integer, byte[]> record : pendingRecords
+					.entrySet()) {
+				writeFully(dataSectionStart + ((long) dataSetLength
+						* record.getKey()), ByteBuffer.wrap(record.getValue()));
+			}
+			unforcedWrites = true;
+		}
+		if (force && unforcedWrites) {
+			channel.force(false);
+			unforcedWrites = false;
+			forcedTicket = journal.getAppendedSequence();
+		}
+		if (pending) {
+			journal.reset();
+			pendingRecords.clear();
+		}
+	}
+
+	/**
+	 * Indicates if all journaled modifications up to the given commit ticket
+	 * have been forced to disk, either in the journal or in the database
+	 * file.
+	 * 
+	 * @param commitTicket
+	 *            the ticket returned by {@link #getCommitTicket()} after the
+	 *            modifications to check
+	 * @return <code>true</code> if the modifications are durable
+	 */
+	boolean isDurable(long commitTicket) {
+		return journal == null || (!unforcedWrites && Math.max(journal
+				.getDurableSequence(), forcedTicket) >= commitTicket);
+	}
+
+	/**
+	 * Closes the connection to the database file: All records modified since
+	 * the last checkpoint are written to the database file first, then the
+	 * database file and its journal are closed. The object must not be used
+	 * afterwards.
+	 * 
+	 * @throws IOException
+	 *             if the database file or its journal cannot be accessed
+	 *             properly
+	 */
+	void close() throws IOException {
+		try {
+			checkpoint();
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Closes the database file and its journal without a checkpoint, i.e.:
+	 * like a crash of the application. The journaled modifications are
+	 * replayed the next time the database file is opened. The object must
+	 * not be used afterwards.
+	 * 
+	 * @throws IOException
+	 *             if the database file or its journal cannot be closed
+	 *             properly
+	 */
+	void release() throws IOException {
+		try {
+			if (journal != null) {
+				journal.close();
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Makes all journaled modifications up to the given commit ticket
+	 * durable. This method may be called concurrently by several threads, i.e.:
+	 * without exclusive access to this object. Threads committing at the same
+	 * time share one forced write of the journal.
+	 * 
+	 * @param commitTicket
+	 *            the ticket returned by {@link #getCommitTicket()} after the
+	 *            modifications to commit
+	 * @throws IOException
+	 *             if the journal cannot be written properly
+	 */
+	void commit(long commitTicket) throws IOException {
+		commit(commitTicket, true);
+	}
+
+	/**
+	 * Writes all journaled modifications up to the given commit ticket to the
+	 * journal file and, if requested, forces them to disk. Like
+	 * {@link #commit(long)} this method may be called concurrently by several
+	 * threads.
+	 * 
+	 * @param commitTicket
+	 *            the ticket returned by {@link #getCommitTicket()} after the
+	 *            modifications to commit
+	 * @param force
+	 *            <code>true</code> if the modifications must be forced to
+	 *            disk, <code>false</code> if they may be flushed by the
+	 *            operating system later
+	 * @throws IOException
+	 *             if the journal cannot be written properly
+	 */
+	void commit(long commitTicket, boolean force) throws IOException {
+		if (journal != null) {
+			journal.commit(commitTicket, force);
+		}
+	}
+
+	/**
+	 * Starts a compaction of the database file, i.e.: takes a snapshot of the
+	 * valid records to be copied into a new file without the deleted ones.
+	 * The copy is made by {@link #copyCompactedRecords()} and swapped in by
+	 * {@link #finishCompaction()}. The record numbers do not change: The
+	 * records are mapped to their new slots by a slot map file kept next to
+	 * the database file.
+	 * 
+	 * @throws IOException
+	 *             if the database file or its journal cannot be accessed
+	 *             properly
+	 */
+	void beginCompaction() throws IOException {
+		if (compactionDirty != null) {
+			throw new IllegalStateException("A compaction is already running");
+		}
+		checkpoint();
+
+		// copy the records in the order of their current slots
+		long[] slotsAndRecords = new long[validRecords.cardinality()];
+		int i = 0;
+		for (int recNo = validRecords.nextSetBit(0); recNo >= 0; recNo =
+				validRecords.nextSetBit(recNo + 1)) {
+			slotsAndRecords[i++] = ((long) getSlot(recNo) << 32) | recNo;
+		}
+		Arrays.sort(slotsAndRecords);
+		compactionRecords = new int[slotsAndRecords.length];
+		for (i = 0; i < slotsAndRecords.length; i++) {
+			compactionRecords[i] = (int) slotsAndRecords[i];
+		}
+
+		compactionFile = new File(dbFile.getPath() + COMPACTION_SUFFIX);
+		compactionDirty = new BitSet();
+	}
+
+	/**
+	 * Copies the header and the records of the snapshot taken by
+	 * {@link #beginCompaction()} into the compacted copy of the database file.
+	 * Adjacent slots are read together in chunks. <br>
+	 * This method does not need exclusive access to this object, i.e.: other
+	 * threads may read and modify records meanwhile. Records modified during
+	 * the copy are copied again by {@link #finishCompaction()}.
+	 * 
+	 * @throws IOException
+	 *             if the database file or its copy cannot be accessed
+	 *             properly
+	 */
+	void copyCompactedRecords() throws IOException {
+		RandomAccessFile copy = new RandomAccessFile(compactionFile, "rw");
+		try {
+			FileChannel copyChannel = copy.getChannel();
+			copyChannel.truncate(0);
+			writeFully(copyChannel, 0, ByteBuffer.wrap(readBytes(0,
+					dataSectionStart)));
+
+			ByteBuffer chunk = ByteBuffer.allocate(SCAN_CHUNK_RECORDS
+					* dataSetLength);
+			long copyPosition = dataSectionStart;
+			int i = 0;
+			while (i < compactionRecords.length) {
+
+				// collect a run of adjacent slots fitting into the chunk
+				int firstSlot = getSlot(compactionRecords[i]);
+				int runLength = 1;
+				while (i + runLength < compactionRecords.length
+						&& runLength < SCAN_CHUNK_RECORDS
+						&& getSlot(compactionRecords[i + runLength])
+								== firstSlot + runLength) {
+					runLength++;
+				}
+				chunk.clear();
+				chunk.limit(runLength * dataSetLength);
+				readFully(dataSectionStart + ((long) dataSetLength
+						* firstSlot), chunk);
+				chunk.flip();
+				writeFully(copyChannel, copyPosition, chunk);
+				copyPosition += runLength * dataSetLength;
+				i += runLength;
+			}
+		} finally {
+			copy.close();
+		}
+	}
+
+	/**
+	 * Finishes the running compaction: The records modified since it has
+	 * started are copied again, the copy is forced to disk and replaces the
+	 * database file by renaming it. Afterwards all records are accessed in
+	 * their new slots. If the file cannot be replaced, the compaction is
+	 * aborted and the database file is left untouched. <br>
+	 * The new slot map is forced to a temporary file before the database
+	 * file is replaced and renamed afterwards. If the compaction is
+	 * interrupted in between, opening the database file completes it (see
+	 * {@link #openConnection(File)} and {@link #loadSlotMap(int)}).
+	 * 
+	 * @return the number of bytes the database file has shrunk
+	 * @throws IOException
+	 *             if the database file or its copy cannot be accessed
+	 *             properly
+	 */
+	long finishCompaction() throws IOException {
+		checkpoint();
+		int[] newSlots = new int[recordCount];
+		Arrays.fill(newSlots, -1);
+		for (int i = 0; i < compactionRecords.length; i++) {
+			newSlots[compactionRecords[i]] = i;
+		}
+		int newSlotCount = compactionRecords.length;
+
+		RandomAccessFile copy = new RandomAccessFile(compactionFile, "rw");
+		try {
+			FileChannel copyChannel = copy.getChannel();
+			ByteBuffer buf = recordBuffer.get();
+			for (int recNo = compactionDirty.nextSetBit(0); recNo >= 0; 
+					recNo = compactionDirty.nextSetBit(recNo + 1)) {
+				if (newSlots[recNo] < 0) {
+					if (!validRecords.get(recNo)) {
+						continue; // created and deleted during the copy
+					}
+					newSlots[recNo] = newSlotCount++;
+				}
+				buf.clear();
+				readSlot(recNo, buf);
+				writeFully(copyChannel, dataSectionStart + ((long) dataSetLength
+						* newSlots[recNo]), buf);
+			}
+			copyChannel.force(false);
+		} catch (RecordNotFoundException rnfe) {
+			throw new IOException("Could not copy a modified record", rnfe);
+		} finally {
+			copy.close();
+		}
+		File slotsTempFile = new File(dbFile.getPath() + SLOTS_TEMP_SUFFIX);
+		try {
+			writeSlotMap(slotsTempFile, newSlots);
+		} catch (IOException ioe) {
+			abortCompaction();
+			throw ioe;
+		}
+
+		/*
+		 * A file cannot be renamed onto an existing one on every platform, so
+		 * the database file is deleted first. If the rename fails afterwards,
+		 * the copy is kept and renamed the next time the file is opened.
+		 */
+		long oldLength = channel.size();
+		long newLength = compactionFile.length();
+		raf.close();
+		if (!dbFile.delete()) {
+			raf = new RandomAccessFile(dbFile, "rw");
+			channel = raf.getChannel();
+			abortCompaction();
+			throw new IOException("The database file could not be replaced "
+					+ "by its compacted copy");
+		}
+		if (!compactionFile.renameTo(dbFile)) {
+			compactionFile = null; // kept for the next opening
+			compactionRecords = null;
+			compactionDirty = null;
+			throw new IOException("The compacted copy '" + compactionFile
+					+ "' could not be renamed; it replaces the database file "
+					+ "the next time the file is opened");
+		}
+		raf = new RandomAccessFile(dbFile, "rw");
+		channel = raf.getChannel();
+
+		recordSlots = newSlots;
+		slotCount = newSlotCount;
+		mappedRecordCount = newSlots.length;
+		if (memoryImage != null) {
+			memoryImage = new byte[slotCount * dataSetLength];
+			readFully(dataSectionStart, ByteBuffer.wrap(memoryImage));
+		}
+		compactionFile = null;
+		compactionRecords = null;
+		compactionDirty = null;
+		replaceSlotMap(slotsTempFile);
+		return oldLength - newLength;
+	}
+
+	/**
+	 * Aborts the running compaction and deletes the incomplete copy of the
+	 * database file. The database file itself is not affected.
+	 */
+	void abortCompaction() {
+		if (compactionFile != null) {
+			compactionFile.delete();
+			new File(dbFile.getPath() + SLOTS_TEMP_SUFFIX).delete();
+		}
+		compactionFile = null;
+		compactionRecords = null;
+		compactionDirty = null;
+	}
+
 	/**
 	 * Inserts a new record into the database file. If there are deleted
 	 * records, the first available deleted record is overwritten. If not, the
 	 * database file is extended and the record is added after the last the
-	 * record in the file.
+	 * record in the file. The insert position is taken from the free slots
+	 * held in memory, i.e.: it is determined in constant time. <br>
+	 * A record is a duplicate if all its values except the owner equal those
+	 * of an existing record. This is checked by a lookup in the unique key
+	 * index, i.e.: in constant time as well.
 	 * 
 	 * @param data
 	 *            the data of the new record
@@ -86,18 +633,20 @@ class DBFileAccess {
 	 *             if the database file cannot be accessed properly
 	 */
 	int create(String[] data) throws DuplicateKeyException, IOException {
-		String[] dataCopy = Arrays.copyOf(data, data.length);
-		dataCopy[5] = null; // Omit check for customer
+		if (data == null || data.length != dbColumns.size()) {
+			throw new IllegalArgumentException("The number of values must "
+					+ "match the number of database fields.");
+		}
+		checkData(data);
+		if (uniqueKeys.containsKey(getUniqueKey(getStoredValues(data)))) {
+			throw new DuplicateKeyException("Record is already present "
+					+ "in database");
+		}
 		int recNo = getFirstPossibleInsertRecNo();
 		try {
-			if (find(dataCopy).length > 0) { // The record is already present
-				throw new DuplicateKeyException("Record is already present "
-						+ "in database");
-			}
-			checkData(data);
-			setPointerToRecord(recNo);
-			writeByte(RECORD_VALID);
-			update(recNo, data);
+			updateIndexes(recNo, null, writeRecord(recNo, data));
+			occupyRecordSlot(recNo);
+			stampVersion(recNo);
 		} catch (RecordNotFoundException rnfe) {
 			throw new IOException("Could not verify write data integrity");
 		}
@@ -117,13 +666,26 @@ class DBFileAccess {
 	 */
 	void delete(int recNo) throws RecordNotFoundException, IOException {
 		checkValidRecNo(recNo);
-		setPointerToRecord(recNo);
-		writeByte(RECORD_DELETED);
+		ByteBuffer buf = recordBuffer.get();
+		buf.clear();
+		readSlot(recNo, buf);
+		String[] oldValues = codec.decode(buf.array(), 0);
+		buf.put(0, RECORD_DELETED);
+		writeSlot(recNo, buf);
+		updateIndexes(recNo, oldValues, null);
+		validRecords.clear(recNo);
+		freeRecords.add(recNo);
+		stampVersion(recNo);
 	}
 
 	/**
 	 * See {@link DBMain#find(String[]) DBMain.find(String[])} for detailed
-	 * explanation.
+	 * explanation. <br>
+	 * Criteria on indexed columns are answered by prefix lookups in their
+	 * indexes, whose results are intersected. Only the remaining candidates
+	 * are read to check the criteria on columns without index. If all given
+	 * criteria are on indexed columns, no record is read at all. The found
+	 * record numbers are collected in a bit set, i.e.: without boxing them.
 	 * 
 	 * @param criteria
 	 *            an array containing the values to search for in the order of
@@ -136,47 +698,55 @@ class DBFileAccess {
 	 *             if the database file cannot be accessed properly
 	 */
 	int[] find(String[] criteria) throws RecordNotFoundException, IOException {
-		if (criteria == null || criteria.length != dbColumns.size()) {
-			throw new IllegalArgumentException("The number of criterias must "
-					+ "match the number of database fields.");
-		}
-		List<Integer> found = new ArrayList<Integer>();
+		return find(createQuery(criteria, false, true));
+	}
 
-		for (Integer recNo : getAllValidRecords()) {
-			String[] rec = read(recNo);
-			boolean matches = true;
-			for (int i = 0; (i < rec.length) && matches; i++) {
-				matches = (criteria[i] == null) || (criteria[i].equals(""))
-						|| (rec[i].startsWith(criteria[i]));
-			}
-			if (matches) {
-				found.add(recNo);
-			}
-		}
+	/**
+	 * Returns a ticket identifying the modifications made so far. Passing it
+	 * to {@link #commit(long)} makes all of them durable.
+	 * 
+	 * @return the commit ticket of the last modification
+	 */
+	long getCommitTicket() {
+		return journal != null ? journal.getAppendedSequence() : 0;
+	}
 
-		int[] result = new int[found.size()];
-		for (int i = 0; i < result.length; i++) {
-			result[i] = found.get(i);
+	/**
+	 * Returns the version stamp of the given record. Each creation, update
+	 * and deletion of a record gives it a new version stamp which has never
+	 * been used before, so a record has been modified if its version stamp
+	 * has changed. The stamps are held in memory only: All records start with
+	 * version <code>0</code> when the database file is opened.
+	 * 
+	 * @param recNo
+	 *            the number of the record
+	 * @return the version stamp of the record
+	 */
+	long getVersion(int recNo) {
+		if (recNo < 0 || recNo >= recordVersions.length) {
+			return 0;
 		}
-		return result;
+		return recordVersions[recNo];
 	}
 
 	/**
-	 * Checks if a record is valid or deleted.
+	 * Checks if a record is valid or deleted. The check is answered from the
+	 * record states held in memory, i.e.: no file access is needed.
 	 * 
 	 * @param recNo
 	 *            the number of the record to check
 	 * @return <code>true</code> if the given record is valid,
 	 *         <code>false</code> otherwise
-	 * @throws IOException
-	 *             if the database file cannot be accessed properly
 	 */
-	boolean isValidRecord(int recNo) throws IOException {
-		return getAllValidRecords().contains(recNo);
+	boolean isValidRecord(int recNo) {
+		return recNo >= 0 && validRecords.get(recNo);
 	}
 
 	/**
-	 * Opens a connection to the given database <code>File</code> object.
+	 * Opens a connection to the given database <code>File</code> object. If
+	 * the modifications are journaled, all records found in the journal are
+	 * written to the database file first, i.e.: modifications interrupted by
+	 * a crash are completed.
 	 * 
 	 * @param dbFile
 	 *            the database file to operate on
@@ -187,6 +757,7 @@ class DBFileAccess {
 		if (dbFile == null) {
 			throw new IllegalArgumentException("Given File paramter is null");
 		}
+		renameCompactedCopy(dbFile);
 		if (!dbFile.exists()) {
 			throw new IOException("The file '" + dbFile + "' is not existing");
 		}
@@ -194,44 +765,78 @@ class DBFileAccess {
 			throw new IOException("The file '" + dbFile + "' is not readable");
 		}
 
+		this.dbFile = dbFile;
+		slotsFile = new File(dbFile.getPath() + SLOTS_SUFFIX);
+		raf = new RandomAccessFile(dbFile, "rw");
+		channel = raf.getChannel();
+
 		// Check magic cookie value
-		InputStream is = new FileInputStream(dbFile);
-		byte[] buf = new byte[MAGIC_COOKIE_VALUE_BYTES];
-		is.read(buf);
+		byte[] buf = readBytes(0, MAGIC_COOKIE_VALUE_BYTES);
 		int magicCookieValue = (new BigInteger(buf)).intValue();
 		if (magicCookieValue != MAGIC_COOKIE_VALUE) {
+			raf.close();
 			throw new IOException("The file '" + dbFile
 					+ "' is not a valid database file");
 		}
 
-		raf = new RandomAccessFile(dbFile, "rw");
-
 		dataSectionStart = MAGIC_COOKIE_VALUE_BYTES; // After magic cookie value
-		raf.seek(MAGIC_COOKIE_VALUE_BYTES);
-		int fieldCount = new BigInteger(readBytes(2)).intValue();
+		int fieldCount = new BigInteger(readBytes(dataSectionStart, 2))
+				.intValue();
 		dataSectionStart += 2; // Behind field count field
 		dataSetLength = 1; // including flag
 		DBColumn dbCol;
 
 		for (int i = 0; i < fieldCount; i++) {
 			dbCol = new DBColumn();
-			int fieldNameLength = new BigInteger(readBytes(1)).intValue();
+			int fieldNameLength = new BigInteger(readBytes(dataSectionStart,
+					1)).intValue();
 			dataSectionStart += 1; // behind field name length byte
-			byte[] fieldName = readBytes(fieldNameLength);
+			byte[] fieldName = readBytes(dataSectionStart, fieldNameLength);
 			dbCol.setName(new String(fieldName));
 			dataSectionStart += fieldNameLength; // behind field name bytes
-			int fieldLength = new BigInteger(readBytes(1)).intValue();
+			int fieldLength = new BigInteger(readBytes(dataSectionStart, 1))
+					.intValue();
 			dbCol.setLength(fieldLength);
 			dataSectionStart += 1; // behind field length byte
 			dataSetLength += fieldLength;
 			dbCol.setNumber(i);
 			dbColumns.add(dbCol);
 		}
+
+		codec = new DBRecordCodec(dbColumns);
+		columnIndexes = new DBColumnIndex[dbColumns.size()];
+		for (DBColumn column : dbColumns) {
+			if (INDEXED_COLUMNS.contains(column.getName())) {
+				columnIndexes[column.getNumber()] = new DBColumnIndex();
+			}
+			if (OWNER_COLUMN.equals(column.getName())) {
+				ownerColumn = column.getNumber();
+			}
+		}
+		recordBuffer = new ThreadLocal<ByteBuffer>() {
+			@Override
+			protected ByteBuffer initialValue() {
+				return ByteBuffer.allocate(dataSetLength);
+			}
+		};
+
+		if (journaled) {
+			try {
+				journal = new DBJournal(new File(dbFile.getPath()
+						+ JOURNAL_SUFFIX), dataSetLength);
+			} catch (IOException ioe) {
+				raf.close();
+				throw ioe;
+			}
+			recoverFromJournal();
+		}
+		loadRecordStates();
 	}
 
 	/**
 	 * Returns a <code>String</code> array containing the data of the given
-	 * record number.
+	 * record number. The whole record is fetched by one read operation into a
+	 * reused buffer and decoded from there.
 	 * 
 	 * @param recNo
 	 *            the record number of the record to read
@@ -242,21 +847,19 @@ class DBFileAccess {
 	 *             if the database file cannot be accessed properly
 	 */
 	String[] read(int recNo) throws RecordNotFoundException, IOException {
-		String[] record = new String[dbColumns.size()];
+		String[] record = null;
 
-		setPointerToRecord(recNo);
-
-		if (raf.getFilePointer() == raf.length()) {
+		if (recNo < 0 || recNo >= recordCount) {
 			throw new RecordNotFoundException(
 					formatRecordNotFoundMessage(recNo));
 		}
 
-		byte flag = readBytes(1)[0];
+		ByteBuffer buf = recordBuffer.get();
+		buf.clear();
+		readSlot(recNo, buf);
+		byte flag = buf.get(0);
 		if (flag == RECORD_VALID) {
-			for (DBColumn dbCol : dbColumns) {
-				record[dbCol.getNumber()] = new String(
-						readBytes(dbCol.getLength())).trim();
-			}
+			record = codec.decode(buf.array(), 0);
 		} else if (flag == RECORD_DELETED) {
 			throw new RecordNotFoundException(formatRecordErrorMessage(
 					"Record '%d' is marked as deleted", recNo));
@@ -269,87 +872,518 @@ class DBFileAccess {
 	}
 
 	/**
-	 * Updates the given record with the given data.
+	 * Finds all records whose values equal the given criteria exactly. Empty
+	 * criteria are ignored; if all criteria are empty, all valid records are
+	 * found. Criteria on indexed columns are answered by hash lookups, all
+	 * others by reading the candidate records.
 	 * 
-	 * @param recNo
-	 *            the number of the record to update
-	 * @param data
-	 *            the new data for the record
+	 * @param criteria
+	 *            an array containing the values to search for in the order of
+	 *            the database columns; <code>null</code> or empty values are
+	 *            ignored
+	 * @param matchAll
+	 *            <code>true</code> if a record must match all given criteria,
+	 *            <code>false</code> if it must match at least one of them
+	 * @return an array containing the record numbers of the found records in
+	 *         ascending order
 	 * @throws RecordNotFoundException
-	 *             if the given record is not/no more a valid record
+	 *             if a record could not be read during the search on the
+	 *             database
 	 * @throws IOException
 	 *             if the database file cannot be accessed properly
 	 */
-	void update(int recNo, String[] data) throws RecordNotFoundException,
-			IOException {
-		checkValidRecNo(recNo);
-		checkData(data);
-		setPointerToRecordData(recNo);
-		for (DBColumn dbCol : dbColumns) {
-			String str = data[dbCol.getNumber()];
+	int[] findExact(String[] criteria, boolean matchAll)
+			throws RecordNotFoundException, IOException {
+		return find(createQuery(criteria, true, matchAll));
+	}
 
-			// data is padded right (i.e.: left-justified)
-			str = String.format("%1$-" + dbCol.getLength() + "s",
-					(str != null ? str : ""));
-			writeBytes(str.getBytes());
+	/**
+	 * Creates a query for the given criteria.
+	 * 
+	 * @param criteria
+	 *            an array containing the values to search for in the order of
+	 *            the database columns
+	 * @param exact
+	 *            <code>true</code> if a value must equal its criterion,
+	 *            <code>false</code> if it must start with it
+	 * @param matchAll
+	 *            <code>true</code> if a record must match all given criteria,
+	 *            <code>false</code> if it must match at least one of them
+	 * @return the query
+	 */
+	DBQuery createQuery(String[] criteria, boolean exact, boolean matchAll) {
+		if (criteria == null || criteria.length != dbColumns.size()) {
+			throw new IllegalArgumentException("The number of criterias must "
+					+ "match the number of database fields.");
 		}
+		return new DBQuery(criteria, exact, matchAll);
 	}
 
 	/**
-	 * Checks the given data if it can be written to the database without any
-	 * contraint violation like max. column value length. If a violation is
-	 * found, an {@link IllegalArgumentException} is thrown.
+	 * Determines the candidate records of the given query from the secondary
+	 * indexes. Only the candidates can match the query.
 	 * 
-	 * @param data
-	 *            the data to check
+	 * @param query
+	 *            the query to get the candidates for
+	 * @return the candidate records or <code>null</code> if all valid records
+	 *         are candidates
 	 */
-	private void checkData(String[] data) {
-		List<String> invalidColumns = new ArrayList<String>();
-		for (DBColumn dbCol : dbColumns) {
-			int colNr = dbCol.getNumber();
-			if (data[colNr] != null && data[colNr].length() > dbCol.getLength()) {
-				invalidColumns.add(dbCol.getName());
-			}
-		}
-		if (invalidColumns.size() > 0) {
-			String invalidCols = invalidColumns.get(0);
-			for (int i = 1; i < invalidColumns.size(); i++) {
-				invalidCols += ", " + invalidColumns.get(i);
-			}
-			throw new IllegalArgumentException(MSG_DB_UPDATE_FAIL
-					+ " Values for columns " + invalidCols + " too long!");
-		}
+	BitSet getCandidates(DBQuery query) {
+		return query.getCandidates(columnIndexes);
 	}
 
 	/**
-	 * Perform the check if the given record is a valid one.
+	 * Reads the records matching the given query in the order of their
+	 * numbers, starting at the given record number, until the given number
+	 * of records has been found. Only the given candidates are considered.
+	 * Candidates deleted meanwhile are skipped, candidates modified meanwhile
+	 * are checked against the query again.
 	 * 
-	 * @param recNo
-	 *            The number of the record to check
+	 * @param query
+	 *            the query to match
+	 * @param candidates
+	 *            the candidates as returned by {@link #getCandidates(DBQuery)}
+	 * @param fromRecNo
+	 *            the record number to start at
+	 * @param maxRecords
+	 *            the maximum number of records to add
+	 * @param records
+	 *            the list to add the matching records to
+	 * @return the record number to continue at or <code>-1</code> if all
+	 *         candidates have been read
 	 * @throws RecordNotFoundException
-	 *             if the given record is not/no more a valid record
+	 *             if a record could not be read
 	 * @throws IOException
 	 *             if the database file cannot be accessed properly
 	 */
-	private void checkValidRecNo(int recNo) throws RecordNotFoundException,
-			IOException {
-		if (!isValidRecord(recNo)) {
-			throw new RecordNotFoundException(
-					formatRecordErrorMessage(MSG_DB_UPDATE_FAIL
-							+ " Record '%d' is no more valid", recNo));
+	int readMatching(DBQuery query, BitSet candidates, int fromRecNo,
+			int maxRecords, List<DBRecord> records)
+			throws RecordNotFoundException, IOException {
+		BitSet recNos = candidates != null ? candidates : validRecords;
+		int added = 0;
+		int recNo = recNos.nextSetBit(fromRecNo);
+		while (recNo >= 0 && added < maxRecords) {
+			if (validRecords.get(recNo)) {
+				String[] values = read(recNo);
+				if (query.matches(values)) {
+					records.add(new DBRecord(recNo, values, getVersion(recNo)));
+					added++;
+				}
+			}
+			recNo = recNos.nextSetBit(recNo + 1);
 		}
+		return recNo;
 	}
 
 	/**
-	 * Format the given message taking the given record as an argument.
+	 * Finds all records matching the given query. The candidates are taken
+	 * from the secondary indexes and only read if the indexes do not answer
+	 * the query completely.
 	 * 
-	 * @param message
-	 *            the message to format
-	 * @param recNo
-	 *            the argument to format in the message
-	 * @return a formatted message containg the record number
-	 */
-	private String formatRecordErrorMessage(String message, int recNo) {
+	 * @param query
+	 *            the query to match
+	 * @return an array containing the record numbers of the found records in
+	 *         ascending order
+	 * @throws RecordNotFoundException
+	 *             if a record could not be read during the search
+	 * @throws IOException
+	 *             if the database file cannot be accessed properly
+	 */
+	private int[] find(DBQuery query) throws RecordNotFoundException,
+			IOException {
+		BitSet candidates = query.getCandidates(columnIndexes);
+		BitSet recNos = candidates != null ? candidates : validRecords;
+		BitSet found;
+		if (query.isAnsweredBy(columnIndexes)) {
+			found = recNos;
+		} else {
+			found = new BitSet();
+			for (int recNo = recNos.nextSetBit(0); recNo >= 0; recNo = recNos
+					.nextSetBit(recNo + 1)) {
+				if (query.matches(read(recNo))) {
+					found.set(recNo);
+				}
+			}
+		}
+
+		int[] result = new int[found.cardinality()];
+		int i = 0;
+		for (int recNo = found.nextSetBit(0); recNo >= 0; recNo = found
+				.nextSetBit(recNo + 1)) {
+			result[i++] = recNo;
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the given records at once. The requested records are sorted by
+	 * their position in the database file and records lying close to each
+	 * other are fetched by one read operation of up to
+	 * <code>SCAN_CHUNK_RECORDS</code> records. Records held in memory are
+	 * taken from there.
+	 * 
+	 * @param recNos
+	 *            the numbers of the records to read, in any order
+	 * @return the values of the records in the order of the given record
+	 *         numbers; <code>null</code> for each record not existing
+	 * @throws IOException
+	 *             if the database file cannot be accessed properly
+	 */
+	String[][] readAll(int[] recNos) throws IOException {
+		String[][] records = new String[recNos.length][];
+
+		// collect the records to read from the file, ordered by their slots
+		long[] slotsAndIndexes = new long[recNos.length];
+		int count = 0;
+		for (int i = 0; i < recNos.length; i++) {
+			int recNo = recNos[i];
+			if (!isValidRecord(recNo) || getSlot(recNo) < 0) {
+				continue;
+			}
+			int slot = getSlot(recNo);
+			if (memoryImage != null || pendingRecords.containsKey(slot)) {
+				try {
+					records[i] = read(recNo);
+				} catch (RecordNotFoundException rnfe) {
+					records[i] = null;
+				}
+			} else {
+				slotsAndIndexes[count++] = ((long) slot << 32) | i;
+			}
+		}
+		Arrays.sort(slotsAndIndexes, 0, count);
+
+		ByteBuffer chunk = null;
+		int first = 0;
+		while (first < count) {
+
+			// merge records lying close to each other into one read
+			int firstSlot = (int) (slotsAndIndexes[first] >>> 32);
+			int lastSlot = firstSlot;
+			int end = first + 1;
+			while (end < count) {
+				int slot = (int) (slotsAndIndexes[end] >>> 32);
+				if (slot - lastSlot > MAX_READ_GAP + 1
+						|| slot - firstSlot >= SCAN_CHUNK_RECORDS) {
+					break;
+				}
+				lastSlot = slot;
+				end++;
+			}
+
+			int runLength = (lastSlot - firstSlot + 1) * dataSetLength;
+			if (chunk == null || chunk.capacity() < runLength) {
+				chunk = ByteBuffer.allocate(runLength);
+			}
+			chunk.clear();
+			chunk.limit(runLength);
+			readFully(dataSectionStart + ((long) dataSetLength * firstSlot),
+					chunk);
+			for (int j = first; j < end; j++) {
+				int offset = ((int) (slotsAndIndexes[j] >>> 32) - firstSlot)
+						* dataSetLength;
+				if (chunk.get(offset) == RECORD_VALID) {
+					records[(int) slotsAndIndexes[j]] = codec.decode(chunk
+							.array(), offset);
+				}
+			}
+			first = end;
+		}
+		return records;
+	}
+
+	/**
+	 * Appends all records of the given source to the database file. This is
+	 * meant for loading large amounts of records: The records are encoded
+	 * into a large buffer which is written sequentially behind the last
+	 * record whenever it is full; the file is forced to disk once at the end.
+	 * Records already present in the database or in the source before are
+	 * skipped, which is checked against the unique keys held in memory. Free
+	 * slots of deleted records are not reused. <br>
+	 * The records bypass the journal. The import stops at the first invalid
+	 * record; the records before it stay imported.
+	 * 
+	 * @param source
+	 *            the source delivering the records to import
+	 * @return the numbers of imported and skipped records
+	 * @throws IOException
+	 *             if the source or the database file cannot be accessed
+	 *             properly or the source contains an invalid record
+	 */
+	BulkLoadResult appendAll(DBRecordSource source) throws IOException {
+		if (compactionDirty != null) {
+			throw new IllegalStateException("A compaction is running");
+		}
+		long start = System.currentTimeMillis();
+		checkpoint();
+
+		ByteBuffer chunk = ByteBuffer.allocate(SCAN_CHUNK_RECORDS
+				* dataSetLength);
+		byte[] buf = chunk.array();
+		int imported = 0;
+		int duplicates = 0;
+		int firstSlot = -1;
+		int offset = 0;
+		try {
+			String[] data;
+			while ((data = source.nextRecord()) != null) {
+				if (data.length != dbColumns.size()) {
+					throw new IOException("Record " + (imported + duplicates)
+							+ " of the source has " + data.length
+							+ " values instead of " + dbColumns.size());
+				}
+				try {
+					checkData(data);
+				} catch (IllegalArgumentException iae) {
+					throw new IOException("Record " + (imported + duplicates)
+							+ " of the source is invalid: " + iae.getMessage());
+				}
+				codec.encode(RECORD_VALID, data, buf, offset);
+				String[] stored = codec.decode(buf, offset);
+				if (uniqueKeys.containsKey(getUniqueKey(stored))) {
+					duplicates++;
+					continue;
+				}
+
+				int recNo = recordCount;
+				int slot = allocateSlot(recNo);
+				if (firstSlot < 0) {
+					firstSlot = slot;
+				}
+				updateIndexes(recNo, null, stored);
+				validRecords.set(recNo);
+				recordCount++;
+				imported++;
+				offset += dataSetLength;
+				if (offset == buf.length) {
+					appendChunk(firstSlot, chunk, offset);
+					firstSlot = -1;
+					offset = 0;
+				}
+			}
+		} finally {
+			if (offset > 0) {
+				appendChunk(firstSlot, chunk, offset);
+			}
+			channel.force(false);
+		}
+		return new BulkLoadResult(imported, duplicates,
+				System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Takes a snapshot of all records, i.e.: of the current state of the data
+	 * section. All modifications since the last checkpoint are written to the
+	 * database file first, so that it can be read from there. The snapshot
+	 * has to be closed by {@link #closeSnapshot(DBSnapshot)} when it is not
+	 * needed anymore. While it is open, the database file must not be
+	 * compacted.
+	 * 
+	 * @return the snapshot to read by
+	 *         {@link #readSnapshot(DBSnapshot, int, ByteBuffer)}
+	 * @throws IOException
+	 *             if the database file or its journal cannot be accessed
+	 *             properly
+	 */
+	DBSnapshot openSnapshot() throws IOException {
+		if (compactionDirty != null) {
+			throw new IllegalStateException("A compaction is running");
+		}
+		checkpoint();
+		DBSnapshot snapshot = new DBSnapshot(recordSlots == null ? recordCount
+				: slotCount);
+		snapshots.add(snapshot);
+		return snapshot;
+	}
+
+	/**
+	 * Closes the given snapshot, i.e.: stops preserving the images of its
+	 * record slots.
+	 * 
+	 * @param snapshot
+	 *            the snapshot to close
+	 */
+	void closeSnapshot(DBSnapshot snapshot) {
+		snapshots.remove(snapshot);
+	}
+
+	/**
+	 * Reads the record images of the given snapshot starting at the given slot
+	 * into the given buffer, as many as fit into it. This method reads the
+	 * database file directly and does not need exclusive access to this
+	 * object. Images of records modified since the snapshot was taken are
+	 * replaced by their preserved ones.
+	 * 
+	 * @param snapshot
+	 *            the snapshot to read
+	 * @param firstSlot
+	 *            the slot of the first record to read
+	 * @param chunk
+	 *            the buffer to fill with consecutive record images
+	 * @return the number of record images read; <code>0</code> if there are no
+	 *         more slots in the snapshot
+	 * @throws IOException
+	 *             if the database file cannot be accessed properly
+	 */
+	int readSnapshot(DBSnapshot snapshot, int firstSlot, ByteBuffer chunk)
+			throws IOException {
+		int count = Math.min(snapshot.getSlotCount() - firstSlot,
+				chunk.capacity() / dataSetLength);
+		if (count <= 0) {
+			return 0;
+		}
+		chunk.clear();
+		chunk.limit(count * dataSetLength);
+		long position = dataSectionStart + ((long) dataSetLength * firstSlot);
+		while (chunk.hasRemaining()) {
+			if (channel.read(chunk, position + chunk.position()) < 0) {
+				break;
+			}
+		}
+
+		// an incomplete last record is treated as deleted
+		int bytesRead = chunk.position();
+		count = Math.min(count, (bytesRead + dataSetLength - 1)
+				/ dataSetLength);
+		if (bytesRead < count * dataSetLength) {
+			chunk.put((count - 1) * dataSetLength, RECORD_DELETED);
+		}
+		snapshot.applyPreImages(firstSlot, count, chunk.array(),
+				dataSetLength);
+		return count;
+	}
+
+	/**
+	 * Returns the header of the database file, i.e.: all bytes in front of
+	 * the data section.
+	 * 
+	 * @return the header of the database file
+	 * @throws IOException
+	 *             if the database file cannot be accessed properly
+	 */
+	byte[] getHeader() throws IOException {
+		return readBytes(0, dataSectionStart);
+	}
+
+	/**
+	 * Returns the names of the database columns.
+	 * 
+	 * @return the column names in the order of the column numbers
+	 */
+	String[] getColumnNames() {
+		String[] names = new String[dbColumns.size()];
+		for (DBColumn dbCol : dbColumns) {
+			names[dbCol.getNumber()] = dbCol.getName();
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the codec converting the records of the database file.
+	 * 
+	 * @return the record codec
+	 */
+	DBRecordCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Returns the given values the way they are returned by
+	 * {@link #read(int)} after writing them to a record, i.e.: without padding,
+	 * cut off to their columns' lengths and with unrepresentable characters
+	 * replaced. No file access is done.
+	 * 
+	 * @param data
+	 *            the values as passed to {@link #create(String[])} or
+	 *            {@link #update(int, String[])}
+	 * @return the values as stored in the database
+	 */
+	String[] getStoredValues(String[] data) {
+		ByteBuffer buf = recordBuffer.get();
+		buf.clear();
+		codec.encode(RECORD_VALID, data, buf.array(), 0);
+		return codec.decode(buf.array(), 0);
+	}
+
+	/**
+	 * Updates the given record with the given data. The whole record is encoded
+	 * into a reused buffer and written by one write operation.
+	 * 
+	 * @param recNo
+	 *            the number of the record to update
+	 * @param data
+	 *            the new data for the record
+	 * @throws RecordNotFoundException
+	 *             if the given record is not/no more a valid record
+	 * @throws IOException
+	 *             if the database file cannot be accessed properly
+	 */
+	void update(int recNo, String[] data) throws RecordNotFoundException,
+			IOException {
+		checkValidRecNo(recNo);
+		checkData(data);
+		String[] oldValues = read(recNo);
+		updateIndexes(recNo, oldValues, writeRecord(recNo, data));
+		stampVersion(recNo);
+	}
+
+	/**
+	 * Checks the given data if it can be written to the database without any
+	 * contraint violation like max. column value length. If a violation is
+	 * found, an {@link IllegalArgumentException} is thrown.
+	 * 
+	 * @param data
+	 *            the data to check
+	 */
+	private void checkData(String[] data) {
+		List<String> invalidColumns = null; // only created if needed
+		for (DBColumn dbCol : dbColumns) {
+			int colNr = dbCol.getNumber();
+			if (data[colNr] != null && data[colNr].length() > dbCol.getLength()) {
+				if (invalidColumns == null) {
+					invalidColumns = new ArrayList<String>();
+				}
+				invalidColumns.add(dbCol.getName());
+			}
+		}
+		if (invalidColumns != null) {
+			String invalidCols = invalidColumns.get(0);
+			for (int i = 1; i < invalidColumns.size(); i++) {
+				invalidCols += ", " + invalidColumns.get(i);
+			}
+			throw new IllegalArgumentException(MSG_DB_UPDATE_FAIL
+					+ " Values for columns " + invalidCols + " too long!");
+		}
+	}
+
+	/**
+	 * Perform the check if the given record is a valid one.
+	 * 
+	 * @param recNo
+	 *            The number of the record to check
+	 * @throws RecordNotFoundException
+	 *             if the given record is not/no more a valid record
+	 * @throws IOException
+	 *             if the database file cannot be accessed properly
+	 */
+	private void checkValidRecNo(int recNo) throws RecordNotFoundException {
+		if (!isValidRecord(recNo)) {
+			throw new RecordNotFoundException(
+					formatRecordErrorMessage(MSG_DB_UPDATE_FAIL
+							+ " Record '%d' is no more valid", recNo));
+		}
+	}
+
+	/**
+	 * Format the given message taking the given record as an argument.
+	 * 
+	 * @param message
+	 *            the message to format
+	 * @param recNo
+	 *            the argument to format in the message
+	 * @return a formatted message containg the record number
+	 */
+	private String formatRecordErrorMessage(String message, int recNo) {
 		return (String.format(message, recNo));
 	}
 
@@ -367,79 +1401,540 @@ class DBFileAccess {
 	}
 
 	/**
-	 * Convenience method to get all records marked as deleted.
+	 * Determines the first possible insert position for a new record. This
+	 * is the first free slot or, if there is none, the slot behind the last
+	 * record in the file.
+	 * 
+	 * @return the record number for the record to insert
+	 */
+	private int getFirstPossibleInsertRecNo() {
+		Integer freeRecNo = freeRecords.peek();
+		return freeRecNo != null ? freeRecNo : recordCount;
+	}
+
+	/**
+	 * Marks the given slot as occupied by a valid record. The slot must be the
+	 * one returned by {@link #getFirstPossibleInsertRecNo()}, i.e.: either
+	 * the first free slot or the slot behind the last record.
+	 * 
+	 * @param recNo
+	 *            the number of the newly occupied record slot
+	 */
+	private void occupyRecordSlot(int recNo) {
+		if (recNo == recordCount) {
+			recordCount++;
+		} else {
+			freeRecords.remove();
+		}
+		validRecords.set(recNo);
+	}
+
+	/**
+	 * Scans the deletion flags of all records in the database file and builds
+	 * the record states and the queue of free slots held in memory. This is
+	 * done once when opening the connection. Afterwards the states are kept
+	 * up to date by the modifying operations. The flags are read in chunks of
+	 * several records to keep the number of file accesses low. After a
+	 * compaction the records are located by the slot map.
 	 * 
-	 * @return a <code>List</code> of the numbers of all deleted records
 	 * @throws IOException
 	 *             if the database file cannot be accessed properly
 	 */
-	private List<Integer> getAllDeletedRecords() throws IOException {
-		return getRecords(false);
+	private void loadRecordStates() throws IOException {
+		long dataSectionLength = channel.size() - dataSectionStart;
+		int fileSlots = (int) ((dataSectionLength + dataSetLength - 1)
+				/ dataSetLength);
+		int[] slotRecords = loadSlotMap(fileSlots);
+		validRecords = new BitSet(recordCount);
+		freeRecords.clear();
+		if (recordSlots != null) {
+			for (int recNo = 0; recNo < recordCount; recNo++) {
+				if (recordSlots[recNo] < 0) {
+					freeRecords.add(recNo);
+				}
+			}
+		}
+
+		if (memoryResident) {
+			memoryImage = new byte[fileSlots * dataSetLength];
+			readFully(dataSectionStart, ByteBuffer.wrap(memoryImage, 0,
+					(int) dataSectionLength));
+			markRecordStates(memoryImage, (int) dataSectionLength, 0,
+					slotRecords);
+			return;
+		}
+
+		ByteBuffer buf = ByteBuffer.allocate(SCAN_CHUNK_RECORDS
+				* dataSetLength);
+		int slot = 0;
+		while (slot < fileSlots) {
+			buf.clear();
+			long position = dataSectionStart + ((long) dataSetLength * slot);
+			while (buf.hasRemaining()) {
+				if (channel.read(buf, position + buf.position()) < 0) {
+					break;
+				}
+			}
+			buf.flip();
+			slot = markRecordStates(buf.array(), buf.limit(), slot,
+					slotRecords);
+		}
+	}
+
+	/**
+	 * Marks the records whose images are contained in the given buffer as
+	 * valid or free according to their deletion flags. Valid records are
+	 * added to the secondary indexes.
+	 * 
+	 * @param buf
+	 *            the buffer containing consecutive record images
+	 * @param length
+	 *            the number of bytes of the buffer to use
+	 * @param firstSlot
+	 *            the slot of the first record in the buffer
+	 * @param slotRecords
+	 *            the numbers of the records in each slot; <code>null</code>
+	 *            if each record resides in the slot of its own number
+	 * @return the slot following the last one in the buffer
+	 */
+	private int markRecordStates(byte[] buf, int length, int firstSlot,
+			int[] slotRecords) {
+		int slot = firstSlot;
+		for (int offset = 0; offset < length; offset += dataSetLength) {
+			int recNo = slotRecords == null ? slot : slotRecords[slot];
+			byte flag = buf[offset];
+			if (flag == RECORD_VALID) {
+				validRecords.set(recNo);
+				updateIndexes(recNo, null, codec.decode(buf, offset));
+			} else if (flag == RECORD_DELETED) {
+				freeRecords.add(recNo);
+			}
+			slot++;
+		}
+		return slot;
 	}
 
 	/**
-	 * Convenience method to get all valid records.
+	 * Completes a compaction interrupted after the database file has been
+	 * deleted, i.e.: renames the compacted copy to the database file. The
+	 * slot map of the copy is put into place by {@link #loadSlotMap(int)}
+	 * later on.
 	 * 
-	 * @return a <code>List</code> of the numbers of all valid records
+	 * @param dbFile
+	 *            the database file to open
+	 * @throws IOException
+	 *             if the compacted copy cannot be renamed
+	 */
+	private static void renameCompactedCopy(File dbFile) throws IOException {
+		File copy = new File(dbFile.getPath() + COMPACTION_SUFFIX);
+		File slotsTempFile = new File(dbFile.getPath() + SLOTS_TEMP_SUFFIX);
+		if (!dbFile.exists() && copy.exists() && slotsTempFile.exists()
+				&& !copy.renameTo(dbFile)) {
+			throw new IOException("The compacted copy '" + copy
+					+ "' could not be renamed to '" + dbFile + "'");
+		}
+	}
+
+	/**
+	 * Reads the slot map file written by the last compaction and sets up the
+	 * mapping of the records to their slots. The file holds the slots of all
+	 * records existing at the compaction, followed by the slots assigned to
+	 * records having been deleted before it. The records appended afterwards
+	 * occupy the remaining slots in the order of their numbers. <br>
+	 * A temporary slot map is left behind by an interrupted compaction: If
+	 * its copy still exists, the database file has not been replaced and the
+	 * compaction is rolled back. Otherwise the new slot map belongs to the
+	 * replaced database file and is put into place.
+	 * 
+	 * @param fileSlots
+	 *            the number of slots in the database file
+	 * @return the numbers of the records in each slot or <code>null</code> if
+	 *         the database file has never been compacted
+	 * @throws IOException
+	 *             if the slot map file cannot be read properly
+	 */
+	private int[] loadSlotMap(int fileSlots) throws IOException {
+		File slotsTempFile = new File(dbFile.getPath() + SLOTS_TEMP_SUFFIX);
+		if (slotsTempFile.exists()) {
+			File copy = new File(dbFile.getPath() + COMPACTION_SUFFIX);
+			if (copy.exists()) {
+				copy.delete();
+				slotsTempFile.delete();
+			} else {
+				replaceSlotMap(slotsTempFile);
+			}
+		}
+		if (!slotsFile.exists()) {
+			recordSlots = null;
+			recordCount = fileSlots;
+			return null;
+		}
+
+		ByteBuffer buf;
+		RandomAccessFile map = new RandomAccessFile(slotsFile, "r");
+		try {
+			byte[] content = new byte[(int) map.length()];
+			map.readFully(content);
+			buf = ByteBuffer.wrap(content);
+		} finally {
+			map.close();
+		}
+		int[] slots = new int[buf.getInt()];
+		for (int recNo = 0; recNo < slots.length; recNo++) {
+			slots[recNo] = buf.getInt();
+		}
+		while (buf.remaining() >= 8) {
+			int recNo = buf.getInt();
+			slots[recNo] = buf.getInt();
+		}
+
+		// a slot lost by a crash before it was written leaves its record free
+		int[] slotRecords = new int[fileSlots];
+		Arrays.fill(slotRecords, -1);
+		for (int recNo = 0; recNo < slots.length; recNo++) {
+			if (slots[recNo] >= fileSlots) {
+				slots[recNo] = -1;
+			} else if (slots[recNo] >= 0) {
+				slotRecords[slots[recNo]] = recNo;
+			}
+		}
+		int appended = 0;
+		for (int slot = 0; slot < fileSlots; slot++) {
+			if (slotRecords[slot] < 0) {
+				appended++;
+			}
+		}
+		recordSlots = Arrays.copyOf(slots, slots.length + appended);
+		int recNo = slots.length;
+		for (int slot = 0; slot < fileSlots; slot++) {
+			if (slotRecords[slot] < 0) {
+				slotRecords[slot] = recNo;
+				recordSlots[recNo++] = slot;
+			}
+		}
+		mappedRecordCount = slots.length;
+		slotCount = fileSlots;
+		recordCount = recordSlots.length;
+		return slotRecords;
+	}
+
+	/**
+	 * Writes the given slot map to the given file and forces it to disk.
+	 * 
+	 * @param file
+	 *            the file to write
+	 * @param slots
+	 *            the slots of the records
+	 * @throws IOException
+	 *             if the file cannot be written properly
+	 */
+	private static void writeSlotMap(File file, int[] slots)
+			throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(4 * (slots.length + 1));
+		buf.putInt(slots.length);
+		for (int slot : slots) {
+			buf.putInt(slot);
+		}
+		buf.flip();
+		RandomAccessFile map = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel mapChannel = map.getChannel();
+			mapChannel.truncate(0);
+			writeFully(mapChannel, 0, buf);
+			mapChannel.force(false);
+		} finally {
+			map.close();
+		}
+	}
+
+	/**
+	 * Replaces the slot map file by the given new one.
+	 * 
+	 * @param slotsTempFile
+	 *            the new slot map written by a compaction
+	 * @throws IOException
+	 *             if the slot map file cannot be replaced
+	 */
+	private void replaceSlotMap(File slotsTempFile) throws IOException {
+		slotsFile.delete();
+		if (!slotsTempFile.renameTo(slotsFile)) {
+			throw new IOException("The slot map '" + slotsFile
+					+ "' could not be replaced");
+		}
+	}
+
+	/**
+	 * Appends the slot assigned to a record being deleted before the last
+	 * compaction to the slot map file and forces it to disk. This is done
+	 * before the record is written to its slot.
+	 * 
+	 * @param recNo
+	 *            the number of the record
+	 * @param slot
+	 *            the new slot of the record
+	 * @throws IOException
+	 *             if the slot map file cannot be written properly
+	 */
+	private void appendSlotAssignment(int recNo, int slot) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(8);
+		buf.putInt(recNo).putInt(slot).flip();
+		RandomAccessFile map = new RandomAccessFile(slotsFile, "rw");
+		try {
+			FileChannel mapChannel = map.getChannel();
+			writeFully(mapChannel, mapChannel.size(), buf);
+			mapChannel.force(false);
+		} finally {
+			map.close();
+		}
+	}
+
+	/**
+	 * Writes the latest image of every record found in the journal to the
+	 * database file, forces the database file to disk and empties the journal
+	 * afterwards. Applying an image twice does no harm, so an interrupted
+	 * recovery is simply repeated the next time.
+	 * 
+	 * @throws IOException
+	 *             if the database file or its journal cannot be accessed
+	 *             properly
+	 */
+	private void recoverFromJournal() throws IOException {
+		SortedMap<Integer, byte[]> images = journal.readEntries();
+		if (!images.isEmpty()) {
+			for (Map.Entry<Integer, byte[]> image : images.entrySet()) {
+				writeFully(dataSectionStart + ((long) dataSetLength
+						* image.getKey()), ByteBuffer.wrap(image.getValue()));
+			}
+			channel.force(false);
+		}
+		journal.reset();
+	}
+
+	/**
+	 * Returns the position of the specified record in the database file, i.e.:
+	 * the position of its deletion flag. The record number directly behind
+	 * the last record is available, too, as it is used to append a new
+	 * record.
+	 * 
+	 * @param recNo
+	 *            the number of the record
+	 * @return the position of the record in the database file or
+	 *         <code>-1</code> if the record has no slot in the file
+	 * @throws RecordNotFoundException
+	 *             if the given record number is not available
+	 */
+	private long getRecordPosition(int recNo) throws RecordNotFoundException {
+
+		// Throw an exception if the record is not available
+		if (recNo < 0 || recNo > recordCount) {
+			throw new RecordNotFoundException(
+					formatRecordNotFoundMessage(recNo));
+		}
+		int slot = getSlot(recNo);
+		return slot < 0 ? -1 : dataSectionStart + ((long) dataSetLength
+				* slot);
+	}
+
+	/**
+	 * Returns the slot of the given record in the database file. Until the
+	 * file is compacted, this is the record number itself.
+	 * 
+	 * @param recNo
+	 *            the number of the record
+	 * @return the slot of the record or <code>-1</code> if it has none
+	 */
+	private int getSlot(int recNo) {
+		if (recordSlots == null) {
+			return recNo;
+		}
+		return recNo < recordSlots.length ? recordSlots[recNo] : -1;
+	}
+
+	/**
+	 * Returns the slot of the given record in the database file. A record
+	 * without slot, i.e.: a record deleted before the last compaction, gets a
+	 * new slot at the end of the file, which is recorded in the slot map
+	 * file.
+	 * 
+	 * @param recNo
+	 *            the number of the record
+	 * @return the slot of the record
+	 * @throws IOException
+	 *             if the slot map file cannot be written properly
+	 */
+	private int allocateSlot(int recNo) throws IOException {
+		if (recordSlots == null) {
+			return recNo;
+		}
+		if (recNo >= recordSlots.length) {
+			int oldLength = recordSlots.length;
+			recordSlots = Arrays.copyOf(recordSlots, Math.max(recNo + 1,
+					oldLength * 2));
+			Arrays.fill(recordSlots, oldLength, recordSlots.length, -1);
+		}
+		if (recordSlots[recNo] < 0) {
+			if (recNo < mappedRecordCount) {
+				appendSlotAssignment(recNo, slotCount);
+			}
+			recordSlots[recNo] = slotCount++;
+		}
+		return recordSlots[recNo];
+	}
+
+	/**
+	 * Reads the complete image of the specified record (including its deletion
+	 * flag) into the given buffer. If the data section is held in memory, the
+	 * image is copied from there. Otherwise a record modified since the last
+	 * checkpoint is taken from memory, all others are read from the database
+	 * file. A record without slot reads as a deleted record. Afterwards the
+	 * buffer is ready to be written again.
+	 * 
+	 * @param recNo
+	 *            the number of the record to read
+	 * @param buf
+	 *            the buffer to fill, able to hold one complete record
 	 * @throws IOException
 	 *             if the database file cannot be accessed properly
+	 * @throws RecordNotFoundException
+	 *             if the given record slot is not available
 	 */
-	private List<Integer> getAllValidRecords() throws IOException {
-		return getRecords(true);
+	private void readSlot(int recNo, ByteBuffer buf) throws IOException,
+			RecordNotFoundException {
+		long position = getRecordPosition(recNo);
+		int slot = getSlot(recNo);
+		if (slot < 0) {
+			buf.put(0, RECORD_DELETED);
+			buf.position(dataSetLength);
+		} else if (memoryImage != null) {
+			buf.put(memoryImage, slot * dataSetLength, dataSetLength);
+		} else {
+			byte[] image = pendingRecords.get(slot);
+			if (image != null) {
+				buf.put(image);
+			} else {
+				readFully(position, buf);
+			}
+		}
+		buf.flip();
 	}
 
 	/**
-	 * Determines the first possible insert position for a new record.
+	 * Writes the complete image of the specified record (including its
+	 * deletion flag) held by the given buffer. If the data section is held in
+	 * memory, the image is copied there first. Without a journal the image is
+	 * written to the database file directly. Otherwise it is appended to the
+	 * journal and kept in memory until the next checkpoint. Both the journal
+	 * and the memory refer to the record's slot, not to its number.
 	 * 
-	 * @return the record number for the record to insert
+	 * @param recNo
+	 *            the number of the record to write
+	 * @param buf
+	 *            the buffer holding the complete record image
 	 * @throws IOException
 	 *             if the database file cannot be accessed properly
+	 * @throws RecordNotFoundException
+	 *             if the given record slot is not available
 	 */
-	private int getFirstPossibleInsertRecNo() throws IOException {
-		List<Integer> deleted = getAllDeletedRecords();
-		if (deleted.size() > 0) {
-			return deleted.get(0);
+	private void writeSlot(int recNo, ByteBuffer buf) throws IOException,
+			RecordNotFoundException {
+		getRecordPosition(recNo); // checks the record number
+		int slot = allocateSlot(recNo);
+		long position = getRecordPosition(recNo);
+		if (compactionDirty != null) {
+			compactionDirty.set(recNo);
+		}
+		preserveSnapshotImages(recNo, slot);
+		if (memoryImage != null) {
+			int offset = slot * dataSetLength;
+			if (offset + dataSetLength > memoryImage.length) {
+				memoryImage = Arrays.copyOf(memoryImage, Math.max(offset
+						+ dataSetLength, memoryImage.length * 2));
+			}
+			System.arraycopy(buf.array(), 0, memoryImage, offset,
+					dataSetLength);
+		}
+		if (journal == null) {
+			writeFully(position, buf);
 		} else {
-			return getAllValidRecords().size();
+			journal.append(slot, buf);
+			byte[] image = pendingRecords.get(slot);
+			if (image == null) {
+				image = new byte[dataSetLength];
+				pendingRecords.put(slot, image);
+			}
+			System.arraycopy(buf.array(), 0, image, 0, dataSetLength);
+			if (pendingRecords.size() >= MAX_PENDING_RECORDS) {
+				checkpoint();
+			}
 		}
 	}
 
 	/**
-	 * Returns a <code>List</code> of record numbers. Depending on the flag all
-	 * valid or all deleted records are returned. This method executes the
-	 * 'real' read actions for the convenience methods
-	 * {@link DBFileAccess#getAllValidRecords() getAllValidRecords} and
-	 * {@link DBFileAccess#getAllDeletedRecords() getAllDeletedRecords}.
+	 * Writes the given chunk of consecutive record images to the database
+	 * file starting at the given slot. If the data section is held in memory,
+	 * the images are copied there, too.
 	 * 
-	 * @param valid
-	 *            search for valid (<code>true</code>) or deleted (
-	 *            <code>false</code>) records
-	 * @return depending on the given flag a <code>List</code> of valid or
-	 *         deleted record numbers
+	 * @param firstSlot
+	 *            the slot of the first record in the chunk
+	 * @param chunk
+	 *            the buffer holding the record images
+	 * @param length
+	 *            the number of bytes of the chunk to write
 	 * @throws IOException
 	 *             if the database file cannot be accessed properly
 	 */
-	private List<Integer> getRecords(boolean valid) throws IOException {
-		List<Integer> result = new ArrayList<Integer>();
-		int recNo = 0;
-		int readPos = dataSectionStart;
-		byte flag = -1;
-		byte flagValue = valid ? RECORD_VALID : RECORD_DELETED;
-		while (readPos < raf.length()) {
-			raf.seek(readPos);
-			flag = readBytes(1)[0];
-			if (flag == flagValue) {
-				result.add(recNo);
-			}
-			recNo++;
-			readPos = dataSectionStart + (recNo * dataSetLength);
+	private void appendChunk(int firstSlot, ByteBuffer chunk, int length)
+			throws IOException {
+		if (memoryImage != null) {
+			int offset = firstSlot * dataSetLength;
+			if (offset + length > memoryImage.length) {
+				memoryImage = Arrays.copyOf(memoryImage, Math.max(offset
+						+ length, memoryImage.length * 2));
+			}
+			System.arraycopy(chunk.array(), 0, memoryImage, offset, length);
+		}
+		chunk.clear();
+		chunk.limit(length);
+		writeFully(dataSectionStart + ((long) dataSetLength * firstSlot),
+				chunk);
+	}
+
+	/**
+	 * Preserves the current image of the given record for every open snapshot
+	 * the record's slot belongs to and which has not preserved it yet. This
+	 * must be done before the slot is modified.
+	 * 
+	 * @param recNo
+	 *            the number of the record about to be modified
+	 * @param slot
+	 *            the slot of the record
+	 * @throws IOException
+	 *             if the database file cannot be accessed properly
+	 * @throws RecordNotFoundException
+	 *             if the given record slot is not available
+	 */
+	private void preserveSnapshotImages(int recNo, int slot)
+			throws IOException, RecordNotFoundException {
+		byte[] image = null;
+		for (DBSnapshot snapshot : snapshots) {
+			if (snapshot.needsPreImage(slot)) {
+				if (image == null) {
+					ByteBuffer buf = ByteBuffer.allocate(dataSetLength);
+					readSlot(recNo, buf);
+					image = buf.array();
+				}
+				snapshot.preserve(slot, image);
+			}
 		}
-		return result;
 	}
 
 	/**
-	 * Reads and returns the specified number of bytes from the database file.
+	 * Reads and returns the specified number of bytes from the database file
+	 * starting at the specified position. The read operation does not depend
+	 * on any file pointer.
 	 * 
+	 * @param position
+	 *            the file position to start reading at
 	 * @param length
 	 *            the number of bytes to read
 	 * @return a byte array containing the read bytes
@@ -448,93 +1943,174 @@ class DBFileAccess {
 	 *             the specified number of bytes was not possible
 	 * 
 	 */
-	private byte[] readBytes(int length) throws IOException {
-		byte[] buf = new byte[length];
-		int bytesRead = raf.read(buf);
-		if (buf.length != bytesRead) {
+	private byte[] readBytes(long position, int length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		readFully(position, buf);
+		return buf.array();
+	}
+
+	/**
+	 * Fills the remaining space of the given buffer with bytes read from the
+	 * database file starting at the specified position. The read operation
+	 * does not depend on any file pointer.
+	 * 
+	 * @param position
+	 *            the file position to start reading at
+	 * @param buf
+	 *            the buffer to fill
+	 * @throws IOException
+	 *             if the database file cannot be accessed properly or the
+	 *             buffer could not be filled completely
+	 */
+	private void readFully(long position, ByteBuffer buf) throws IOException {
+		int length = buf.remaining();
+		int bytesRead = 0;
+		while (buf.hasRemaining()) {
+			int count = channel.read(buf, position + bytesRead);
+			if (count < 0) {
+				break;
+			}
+			bytesRead += count;
+		}
+		if (length != bytesRead) {
 			throw new IOException("Could not read correct number of bytes "
 					+ "(read: " + bytesRead + ", needed: " + length + ")!");
-		} else {
-			return buf;
 		}
 	}
 
 	/**
-	 * Makes the <code>RandomAccessFile</code> object point to the specified
-	 * record.
+	 * Writes the given data as a valid record to the specified record slot.
+	 * The record including its deletion flag is encoded into the thread's
+	 * record buffer and written as a whole.
 	 * 
 	 * @param recNo
-	 *            the number of the record to which the file pointer shall point
+	 *            the number of the record to write
+	 * @param data
+	 *            the data of the record
+	 * @return the values as written, i.e.: as returned by reading the record
 	 * @throws IOException
 	 *             if the database file cannot be accessed properly
 	 * @throws RecordNotFoundException
-	 *             if the given record is not/no more a valid record
+	 *             if the given record slot is not available
 	 */
-	private void setPointerToRecord(int recNo) throws IOException,
-			RecordNotFoundException {
-		int position = dataSectionStart + (dataSetLength * recNo);
-		raf.seek(position);
+	private String[] writeRecord(int recNo, String[] data)
+			throws IOException, RecordNotFoundException {
+		ByteBuffer buf = recordBuffer.get();
+		buf.clear();
+		codec.encode(RECORD_VALID, data, buf.array(), 0);
+		String[] stored = codec.decode(buf.array(), 0);
+		writeSlot(recNo, buf);
+		return stored;
+	}
 
-		// Throw an exception if the record is not available
-		if (position > raf.length()) {
-			throw new RecordNotFoundException(
-					formatRecordNotFoundMessage(recNo));
+	/**
+	 * Gives the given record a new version stamp after it has been modified.
+	 * 
+	 * @param recNo
+	 *            the number of the modified record
+	 */
+	private void stampVersion(int recNo) {
+		if (recNo >= recordVersions.length) {
+			recordVersions = Arrays.copyOf(recordVersions, Math.max(recNo + 1,
+					recordVersions.length * 2));
 		}
+		recordVersions[recNo] = ++lastVersion;
 	}
 
 	/**
-	 * Makes the <code>RandomAccessFile</code> object point to the data of the
-	 * specified record, i.e.: behind the status flag.
+	 * Replaces the old values of the given record in the secondary indexes and
+	 * the unique key index by its new values.
 	 * 
 	 * @param recNo
-	 *            the number of the record to which data block the file pointer
-	 *            shall point
-	 * @throws IOException
-	 *             if the database file cannot be accessed properly
-	 * @throws RecordNotFoundException
-	 *             if the given record is not/no more a valid record
+	 *            the number of the record
+	 * @param oldValues
+	 *            the values to remove from the indexes or <code>null</code> if
+	 *            the record has not been indexed yet
+	 * @param newValues
+	 *            the values to add to the indexes or <code>null</code> if the
+	 *            record has been deleted
 	 */
-	private void setPointerToRecordData(int recNo) throws IOException,
-			RecordNotFoundException {
-		setPointerToRecord(recNo);
-		long position = raf.getFilePointer();
-		raf.skipBytes(1);
+	private void updateIndexes(int recNo, String[] oldValues,
+			String[] newValues) {
+		for (int i = 0; i < columnIndexes.length; i++) {
+			if (columnIndexes[i] != null) {
+				if (oldValues != null) {
+					columnIndexes[i].remove(oldValues[i], recNo);
+				}
+				if (newValues != null) {
+					columnIndexes[i].add(newValues[i], recNo);
+				}
+			}
+		}
 
-		/*
-		 * Because the skipBytes() method may fail, we need to check if we
-		 * really reached the correct position
-		 */
-		if (raf.getFilePointer() != (position + 1L)) {
-			throw new IOException("Could not seek to desired position");
+		if (oldValues != null) {
+			List<String> oldKey = getUniqueKey(oldValues);
+			DBRecNoSet recNos = uniqueKeys.get(oldKey);
+			if (recNos != null && recNos.remove(recNo) && recNos.isEmpty()) {
+				uniqueKeys.remove(oldKey);
+			}
+		}
+		if (newValues != null) {
+			List<String> newKey = getUniqueKey(newValues);
+			DBRecNoSet recNos = uniqueKeys.get(newKey);
+			if (recNos == null) {
+				recNos = new DBRecNoSet();
+				uniqueKeys.put(newKey, recNos);
+			}
+			recNos.add(recNo);
 		}
 	}
 
 	/**
-	 * Write one <code>byte</code> to the database. Start at the current
-	 * position of the <code>RandomAccessFile</code>. Existing data is
-	 * overridden.
+	 * Returns the unique key of a record holding the given values, i.e.: all
+	 * its values except the owner.
 	 * 
-	 * @param b
-	 *            the <code>byte</code> to write
+	 * @param values
+	 *            the values of the record as stored in the database
+	 * @return the unique key of the record
+	 */
+	private List<String> getUniqueKey(String[] values) {
+		String[] key = Arrays.copyOf(values, values.length);
+		if (ownerColumn >= 0) {
+			key[ownerColumn] = "";
+		}
+		return Arrays.asList(key);
+	}
+
+	/**
+	 * Writes the remaining content of the given buffer to the database
+	 * starting at the specified position. Existing data is overridden.
+	 * 
+	 * @param position
+	 *            the file position to start writing at
+	 * @param buf
+	 *            the buffer containing the bytes to write
 	 * @throws IOException
 	 *             if the database file cannot be accessed properly
 	 */
-	private void writeByte(byte b) throws IOException {
-		writeBytes(new byte[] { b });
+	private void writeFully(long position, ByteBuffer buf) throws IOException {
+		writeFully(channel, position, buf);
 	}
 
 	/**
-	 * Write the the content of a <code>byte</code> array to the database. Start
-	 * at the current position of the <code>RandomAccessFile</code>. Existing
-	 * data is overridden.
+	 * Writes the remaining content of the given buffer to the given channel
+	 * starting at the specified position.
 	 * 
-	 * @param bytes
-	 *            the <code>byte</code> array containing the bytes to write
+	 * @param target
+	 *            the channel to write to
+	 * @param position
+	 *            the file position to start writing at
+	 * @param buf
+	 *            the buffer containing the bytes to write
 	 * @throws IOException
-	 *             if the database file cannot be accessed properly
+	 *             if the file cannot be accessed properly
 	 */
-	private void writeBytes(byte[] bytes) throws IOException {
-		raf.write(bytes);
+	private static void writeFully(FileChannel target, long position,
+			ByteBuffer buf) throws IOException {
+		long start = position - buf.position();
+		while (buf.hasRemaining()) {
+			target.write(buf, start + buf.position());
+		}
 	}
 
 }
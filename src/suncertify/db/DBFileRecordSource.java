@@ -0,0 +1,114 @@
+package suncertify.db;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * The <code>DBFileRecordSource</code> class reads the records to import from
+ * another database file having the same columns. The file is read
+ * sequentially in chunks of several records; deleted records are skipped.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+class DBFileRecordSource implements DBRecordSource {
+
+	/** The stream reading the source file */
+	private final InputStream in;
+
+	/** The codec decoding the records */
+	private final DBRecordCodec codec;
+
+	/** The chunk of records currently read */
+	private final byte[] chunk;
+
+	/** The number of bytes of the chunk filled */
+	private int chunkLength;
+
+	/** The offset of the next record in the chunk */
+	private int offset;
+
+	/**
+	 * Opens the given database file as source. Its header, i.e.: the magic
+	 * cookie and the column descriptions, has to equal the given one.
+	 * 
+	 * @param sourceFile
+	 *            the database file to read
+	 * @param header
+	 *            the header of the database to import into
+	 * @param codec
+	 *            the codec of the database to import into
+	 * @throws IOException
+	 *             if the file cannot be read or has different columns
+	 */
+	DBFileRecordSource(File sourceFile, byte[] header, DBRecordCodec codec)
+			throws IOException {
+		this.codec = codec;
+		chunk = new byte[DBFileAccess.SCAN_CHUNK_RECORDS
+				* codec.getRecordLength()];
+		in = new FileInputStream(sourceFile);
+		byte[] sourceHeader = new byte[header.length];
+		if (fill(sourceHeader) != header.length
+				|| !Arrays.equals(header, sourceHeader)) {
+			in.close();
+			throw new IOException("The file '" + sourceFile + "' is no "
+					+ "database file with the same fields");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String[] nextRecord() throws IOException {
+		int recordLength = codec.getRecordLength();
+		while (true) {
+			if (offset + recordLength > chunkLength) {
+				chunkLength = fill(chunk);
+				offset = 0;
+				if (chunkLength < recordLength) {
+					return null; // an incomplete last record is ignored
+				}
+			}
+			int recordOffset = offset;
+			offset += recordLength;
+			if (chunk[recordOffset] == DBFileAccess.RECORD_VALID) {
+				return codec.decode(chunk, recordOffset);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Reads bytes into the given buffer until it is full or the end of the
+	 * file has been reached.
+	 * 
+	 * @param buf
+	 *            the buffer to fill
+	 * @return the number of bytes read
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	private int fill(byte[] buf) throws IOException {
+		int length = 0;
+		while (length < buf.length) {
+			int count = in.read(buf, length, buf.length - length);
+			if (count < 0) {
+				break;
+			}
+			length += count;
+		}
+		return length;
+	}
+
+}
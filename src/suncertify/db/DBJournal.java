@@ -0,0 +1,395 @@
+package suncertify.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * The <code>DBJournal</code> class is the write-ahead journal of the database
+ * layer. Every modification of a record is appended to the journal as a
+ * complete image of the record before it is written to the database file. If
+ * the application terminates unexpectedly, the journal is replayed into the
+ * database file the next time it is opened. Thus a record is never left half
+ * written. <br>
+ * Appending an entry just buffers it in memory. It becomes durable when it is
+ * committed: The first committing thread writes all buffered entries to the
+ * journal file and forces them to disk while further threads wait and buffer
+ * their entries for the next write. So all commits arriving during one forced
+ * write share the next one (group commit). A commit may also just write the
+ * entries without forcing them, leaving it to the operating system to flush
+ * them: They survive a crash of the application then, but not a power loss.
+ * <br>
+ * Each entry consists of the record number, the record image (including the
+ * deletion flag) and a checksum which detects entries only partially written
+ * before a crash. <br>
+ * The journal file is locked while it is open, so a database file can only
+ * be opened once at a time: A second instance would replay and empty the
+ * journal still in use by the first one.
+ *
+ * @author Jochen R. Meyer
+ *
+ */
+class DBJournal {
+
+	/** Magic value identifying a journal file */
+	private static final int JOURNAL_MAGIC = 0x4A524E4C;
+
+	/** Length of the journal header: magic value and record length */
+	private static final int HEADER_LENGTH = 8;
+
+	/** Initial capacity of the buffer collecting the appended entries */
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+	/** The file the journal channel has been opened from */
+	private RandomAccessFile raf;
+
+	/** The channel writing the journal file */
+	private FileChannel channel;
+
+	/** The lock keeping other database instances away from the journal */
+	private FileLock lock;
+
+	/** The length of one record image including its deletion flag */
+	private int recordLength;
+
+	/** The length of one journal entry */
+	private int entryLength;
+
+	/** The checksum calculator for appended entries */
+	private CRC32 crc;
+
+	/** The entries appended but not yet written to the journal file */
+	private ByteBuffer pending;
+
+	/** An empty buffer to be swapped with <code>pending</code> while its
+	 * entries are written */
+	private ByteBuffer spare;
+
+	/** The position in the journal file the next entries are written to */
+	private long fileEnd;
+
+	/** The total number of bytes appended since the journal was opened; it
+	 * serves as sequence number of the last appended entry */
+	private long appendedSequence;
+
+	/** The sequence number up to which all entries are written to the
+	 * journal file */
+	private long writtenSequence;
+
+	/** The sequence number up to which all entries are durable, i.e.:
+	 * forced to disk */
+	private long durableSequence;
+
+	/** Indicates a thread is currently writing entries to the journal file */
+	private boolean flushing;
+
+	/** The error of a failed write; the journal is unusable afterwards */
+	private IOException failure;
+
+	/**
+	 * Opens the given journal file for records of the given length. If the
+	 * file does not exist, it is created. An existing file is checked to be a
+	 * journal for records of the given length.
+	 *
+	 * @param journalFile
+	 *            the journal file to use
+	 * @param recordLength
+	 *            the length of one record including its deletion flag
+	 * @throws IOException
+	 *             if the journal file cannot be accessed properly, is no
+	 *             valid journal for records of the given length or is in use
+	 *             by another database instance
+	 */
+	DBJournal(File journalFile, int recordLength) throws IOException {
+		this.recordLength = recordLength;
+		entryLength = 4 + recordLength + 4; // recNo, image, checksum
+		crc = new CRC32();
+		pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		spare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+		raf = new RandomAccessFile(journalFile, "rw");
+		channel = raf.getChannel();
+		try {
+			lock = channel.tryLock();
+		} catch (OverlappingFileLockException ofle) {
+			lock = null; // locked by this process already
+		}
+		if (lock == null) {
+			raf.close();
+			throw new IOException("The journal '" + journalFile
+					+ "' is in use by another database instance");
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		if (channel.size() < HEADER_LENGTH) {
+			header.putInt(JOURNAL_MAGIC).putInt(recordLength).flip();
+			channel.truncate(0);
+			writeFully(header, 0);
+			channel.force(false);
+		} else {
+			readFully(header, 0);
+			if (header.getInt(0) != JOURNAL_MAGIC
+					|| header.getInt(4) != recordLength) {
+				raf.close();
+				throw new IOException("The file '" + journalFile
+						+ "' is not a journal of the database file");
+			}
+		}
+		fileEnd = channel.size();
+	}
+
+	/**
+	 * Reads all complete entries of the journal file and returns the latest
+	 * image of every record found. Reading stops at the first incomplete or
+	 * corrupt entry, i.e.: at an entry whose writing has been interrupted.
+	 *
+	 * @return the latest journaled image of each record, sorted by record
+	 *         number
+	 * @throws IOException
+	 *             if the journal file cannot be accessed properly
+	 */
+	SortedMap<Integer, byte[]> readEntries() throws IOException {
+		SortedMap<Integer, byte[]> images = new TreeMap<Integer, byte[]>();
+		ByteBuffer entry = ByteBuffer.allocate(entryLength);
+		long position = HEADER_LENGTH;
+		while (position + entryLength <= fileEnd) {
+			entry.clear();
+			readFully(entry, position);
+			crc.reset();
+			crc.update(entry.array(), 0, entryLength - 4);
+			if ((int) crc.getValue() != entry.getInt(entryLength - 4)) {
+				break;
+			}
+			byte[] image = new byte[recordLength];
+			System.arraycopy(entry.array(), 4, image, 0, recordLength);
+			images.put(entry.getInt(0), image);
+			position += entryLength;
+		}
+		return images;
+	}
+
+	/**
+	 * Appends the image of the given record to the journal. The entry is
+	 * buffered in memory until it is committed.
+	 *
+	 * @param recNo
+	 *            the number of the record
+	 * @param image
+	 *            the buffer holding the complete record image at its
+	 *            beginning
+	 * @return the sequence number to pass to {@link #commit(long)} to make the
+	 *         entry durable
+	 */
+	synchronized long append(int recNo, ByteBuffer image) {
+		if (pending.remaining() < entryLength) {
+			ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+			pending.flip();
+			larger.put(pending);
+			pending = larger;
+		}
+		int start = pending.position();
+		pending.putInt(recNo);
+		pending.put(image.array(), 0, recordLength);
+		crc.reset();
+		crc.update(pending.array(), start, entryLength - 4);
+		pending.putInt((int) crc.getValue());
+		appendedSequence += entryLength;
+		return appendedSequence;
+	}
+
+	/**
+	 * Returns the sequence number of the last appended entry.
+	 *
+	 * @return the sequence number of the last appended entry
+	 */
+	synchronized long getAppendedSequence() {
+		return appendedSequence;
+	}
+
+	/**
+	 * Returns the sequence number up to which all entries have been forced to
+	 * disk.
+	 *
+	 * @return the sequence number of the last durable entry
+	 */
+	synchronized long getDurableSequence() {
+		return durableSequence;
+	}
+
+	/**
+	 * Makes all entries up to the given sequence number durable. If another
+	 * thread is writing the journal file at the moment, the current thread
+	 * waits until it has finished. If the entries are still not durable
+	 * afterwards, the current thread writes all entries appended so far and
+	 * forces them to disk.
+	 *
+	 * @param sequence
+	 *            the sequence number returned when appending the last entry
+	 *            to become durable
+	 * @throws IOException
+	 *             if the journal file cannot be written properly
+	 */
+	void commit(long sequence) throws IOException {
+		commit(sequence, true);
+	}
+
+	/**
+	 * Writes all entries up to the given sequence number to the journal file
+	 * and, if requested, forces them to disk. If another thread is writing
+	 * the journal file at the moment, the current thread waits until it has
+	 * finished. If the entries are still not written (or forced) afterwards,
+	 * the current thread writes all entries appended so far.
+	 *
+	 * @param sequence
+	 *            the sequence number returned when appending the last entry
+	 *            to write
+	 * @param force
+	 *            <code>true</code> if the entries must be forced to disk,
+	 *            <code>false</code> if writing them to the operating system
+	 *            is enough
+	 * @throws IOException
+	 *             if the journal file cannot be written properly
+	 */
+	void commit(long sequence, boolean force) throws IOException {
+		ByteBuffer batch;
+		long batchEnd;
+		synchronized (this) {
+			while (true) {
+				if (failure != null) {
+					throw new IOException("The journal is not writable",
+							failure);
+				}
+				if ((force ? durableSequence : writtenSequence) >= sequence) {
+					return;
+				}
+				if (!flushing) {
+					break;
+				}
+				try {
+					wait();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while "
+							+ "waiting for the journal");
+				}
+			}
+			flushing = true;
+			batch = pending;
+			pending = spare;
+			spare = null;
+			batchEnd = appendedSequence;
+		}
+
+		IOException writeFailure = null;
+		try {
+			batch.flip();
+			long batchLength = batch.limit();
+			writeFully(batch, fileEnd);
+			if (force) {
+				channel.force(false);
+			}
+			fileEnd += batchLength;
+		} catch (IOException ioe) {
+			writeFailure = ioe;
+			throw ioe;
+		} finally {
+			synchronized (this) {
+				batch.clear();
+				spare = batch;
+				flushing = false;
+				if (writeFailure == null) {
+					writtenSequence = batchEnd;
+					if (force) {
+						durableSequence = batchEnd;
+					}
+				} else {
+					failure = writeFailure;
+				}
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Empties the journal file. This must only be done after all journaled
+	 * images have been written to the database file and forced to disk, i.e.:
+	 * after a checkpoint. All appended entries must have been committed.
+	 *
+	 * @throws IOException
+	 *             if the journal file cannot be accessed properly
+	 */
+	synchronized void reset() throws IOException {
+		if (flushing || pending.position() > 0) {
+			throw new IllegalStateException("Journal still contains "
+					+ "uncommitted entries");
+		}
+		channel.truncate(HEADER_LENGTH);
+		fileEnd = HEADER_LENGTH;
+	}
+
+	/**
+	 * Closes the journal file and releases its lock. A thread currently
+	 * writing the journal file is waited for. Entries appended but not
+	 * committed are discarded.
+	 *
+	 * @throws IOException
+	 *             if the journal file cannot be closed properly
+	 */
+	synchronized void close() throws IOException {
+		while (flushing) {
+			try {
+				wait();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while "
+						+ "waiting for the journal");
+			}
+		}
+		raf.close();
+	}
+
+	/**
+	 * Reads bytes from the journal file into the given buffer until it is
+	 * full.
+	 *
+	 * @param buf
+	 *            the buffer to fill
+	 * @param position
+	 *            the file position to start reading at
+	 * @throws IOException
+	 *             if the journal file cannot be read properly
+	 */
+	private void readFully(ByteBuffer buf, long position) throws IOException {
+		long start = position - buf.position();
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, start + buf.position()) < 0) {
+				throw new IOException("Unexpected end of journal file");
+			}
+		}
+	}
+
+	/**
+	 * Writes the remaining bytes of the given buffer to the journal file.
+	 *
+	 * @param buf
+	 *            the buffer to write
+	 * @param position
+	 *            the file position to start writing at
+	 * @throws IOException
+	 *             if the journal file cannot be written properly
+	 */
+	private void writeFully(ByteBuffer buf, long position) throws IOException {
+		long start = position - buf.position();
+		while (buf.hasRemaining()) {
+			channel.write(buf, start + buf.position());
+		}
+	}
+
+}
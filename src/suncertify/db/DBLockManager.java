@@ -0,0 +1,641 @@
+package suncertify.db;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * The <code>DBLockManager</code> class manages the record locks of the
+ * clients. A record lock is owned by one owner at a time: either by the thread
+ * which has acquired it or by a lock cookie handed out to the client, so that
+ * locking, modifying and unlocking a record may run on different threads.
+ * <br>
+ * Threads waiting for a record lock are queued per record and get the lock in
+ * the order of their arrival: Releasing a lock hands it over directly to the
+ * first waiting thread and wakes up only this thread. So releasing a lock
+ * neither wakes up threads waiting for other records nor lets the woken up
+ * threads contend for the lock again. <br>
+ * The locks are spread over several stripes, each with its own map and its
+ * own mutex, so locking different records rarely contends. <br>
+ * Several records can be locked at once (see
+ * {@link #tryLockAll(int[], Object, long, TimeUnit)}). Their locks are always
+ * acquired in ascending order of the record numbers, so owners locking
+ * overlapping sets of records cannot deadlock each other. <br>
+ * Optionally a lock is only leased to its owner for a limited time, which the
+ * owner may renew. A lock whose lease has expired is released by
+ * {@link #expireLeases()} and handed over to the next waiting owner, so a
+ * client which has died while holding a lock does not block the record
+ * forever. The leases are tracked by a timing wheel, so expiring them costs
+ * constant time per tick.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+class DBLockManager {
+
+	/** The number of stripes; a power of two */
+	private static final int STRIPES = 16;
+
+	/** The interval in which {@link #expireLeases()} should be called in
+	 * milliseconds; it is the resolution of the lease times */
+	static final long LEASE_TICK_MILLIS = 100;
+
+	/** The number of ticks of one revolution of the lease timing wheel */
+	private static final int LEASE_WHEEL_TICKS = 512;
+
+	/** A deadline indicating that a lock never expires */
+	private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+	/** The logger of the database layer */
+	private static final Logger LOGGER = Logger.getLogger(DBLockManager.class
+			.getName());
+
+	/** The stripes the record locks are spread over */
+	private final Stripe[] stripes;
+
+	/** The locks whose leases expire, scheduled for their deadlines */
+	private final DBTimingWheel<RecordLock> leases;
+
+	/** The time a lock is leased for in nanoseconds; <code>0</code> if the
+	 * locks never expire */
+	private volatile long leaseNanos;
+
+	/** The number of leases expired so far */
+	private final AtomicLong expiredCount = new AtomicLong();
+
+	/** The number of leases renewed so far */
+	private final AtomicLong renewedCount = new AtomicLong();
+
+	/**
+	 * Constructs a lock manager without any locks. The locks never expire
+	 * until a lease time is set.
+	 */
+	DBLockManager() {
+		stripes = new Stripe[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe();
+		}
+		leases = new DBTimingWheel<RecordLock>(TimeUnit.MILLISECONDS
+				.toNanos(LEASE_TICK_MILLIS), LEASE_WHEEL_TICKS);
+	}
+
+	/**
+	 * Sets the time locks acquired or handed over from now on are leased for.
+	 * Locks held already keep their current lease until they are renewed.
+	 * 
+	 * @param leaseTime
+	 *            the lease time; <code>0</code> if the locks shall never
+	 *            expire
+	 * @param unit
+	 *            the unit of the lease time
+	 */
+	void setLeaseTime(long leaseTime, TimeUnit unit) {
+		if (leaseTime < 0) {
+			throw new IllegalArgumentException("Negative lease time");
+		}
+		leaseNanos = unit.toNanos(leaseTime);
+	}
+
+	/**
+	 * Acquires the lock of the given record for the current thread. If
+	 * another thread owns the lock, the current thread waits until the lock
+	 * is handed over to it. If the current thread already owns the lock,
+	 * nothing is done.
+	 * 
+	 * @param recNo
+	 *            the number of the record to lock
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting; it does
+	 *             not own the lock then
+	 */
+	void lock(int recNo) throws InterruptedException {
+		tryLock(recNo, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Acquires the lock of the given record for the current thread if it
+	 * becomes available within the given time. If another thread owns the
+	 * lock, the current thread waits until the lock is handed over to it or
+	 * the time has elapsed. If the current thread already owns the lock,
+	 * nothing is done.
+	 * 
+	 * @param recNo
+	 *            the number of the record to lock
+	 * @param timeout
+	 *            the maximum time to wait for the lock
+	 * @param unit
+	 *            the unit of the timeout
+	 * @return <code>true</code> if the current thread owns the lock,
+	 *         <code>false</code> if the time has elapsed before
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting; it does
+	 *             not own the lock then
+	 */
+	boolean tryLock(int recNo, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return tryLock(recNo, Thread.currentThread(), timeout, unit);
+	}
+
+	/**
+	 * Acquires the lock of the given record for the given owner if it becomes
+	 * available within the given time. If another owner holds the lock, the
+	 * current thread waits until the lock is handed over to the given owner or
+	 * the time has elapsed. If the given owner already holds the lock, nothing
+	 * is done. A lock whose lease has expired is released first, even if
+	 * {@link #expireLeases()} has not done so yet; its owner has to acquire it
+	 * anew then.
+	 * 
+	 * @param recNo
+	 *            the number of the record to lock
+	 * @param owner
+	 *            the owner of the lock, i.e.: a thread or a lock cookie;
+	 *            owners are compared by <code>equals</code>
+	 * @param timeout
+	 *            the maximum time to wait for the lock
+	 * @param unit
+	 *            the unit of the timeout
+	 * @return <code>true</code> if the given owner holds the lock,
+	 *         <code>false</code> if the time has elapsed before
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting; the
+	 *             given owner does not hold the lock then
+	 */
+	boolean tryLock(int recNo, Object owner, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		Stripe stripe = getStripe(recNo);
+		stripe.mutex.lock();
+		try {
+			RecordLock lock = stripe.locks.get(recNo);
+			if (lock != null && isExpired(lock, System.nanoTime())) {
+				expire(stripe, lock);
+				lock = stripe.locks.get(recNo);
+			}
+			if (lock == null) {
+				lock = new RecordLock(recNo, owner);
+				stripe.locks.put(recNo, lock);
+				startLease(lock);
+				return true;
+			}
+			if (lock.owner.equals(owner)) {
+				return true;
+			}
+
+			Waiter waiter = new Waiter(owner, stripe.mutex.newCondition());
+			lock.waiters.add(waiter);
+			long nanos = unit.toNanos(timeout);
+			try {
+				while (!waiter.granted) {
+					if (nanos <= 0) {
+						lock.waiters.remove(waiter);
+						return false;
+					}
+					nanos = waiter.condition.awaitNanos(nanos);
+				}
+				return true;
+			} catch (InterruptedException ie) {
+				if (waiter.granted) {
+					release(stripe, recNo, lock); // handed over meanwhile
+				} else {
+					lock.waiters.remove(waiter);
+				}
+				throw ie;
+			}
+		} finally {
+			stripe.mutex.unlock();
+		}
+	}
+
+	/**
+	 * Acquires the locks of all given records for the given owner if they
+	 * become available within the given time. The locks are acquired in
+	 * ascending order of the record numbers, no matter in which order they
+	 * are given. Either all locks are acquired or none: If the time elapses
+	 * or the current thread is interrupted, the locks acquired so far are
+	 * released again. Locks the given owner already holds are kept.
+	 * 
+	 * @param recNos
+	 *            the numbers of the records to lock; duplicates are ignored
+	 * @param owner
+	 *            the owner of the locks, i.e.: a thread or a lock cookie
+	 * @param timeout
+	 *            the maximum time to wait for all locks together
+	 * @param unit
+	 *            the unit of the timeout
+	 * @return <code>true</code> if the given owner holds all locks,
+	 *         <code>false</code> if the time has elapsed before
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting; the
+	 *             given owner does not hold any of the locks acquired by this
+	 *             call then
+	 */
+	boolean tryLockAll(int[] recNos, Object owner, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		int[] ordered = recNos.clone();
+		Arrays.sort(ordered);
+		int[] acquired = new int[ordered.length];
+		int acquiredCount = 0;
+		long timeoutNanos = unit.toNanos(timeout);
+		long start = System.nanoTime();
+		boolean locked = false;
+		try {
+			for (int i = 0; i < ordered.length; i++) {
+				int recNo = ordered[i];
+				if ((i > 0 && recNo == ordered[i - 1])
+						|| isOwnedBy(recNo, owner)) {
+					continue;
+				}
+				long remaining = (timeoutNanos == Long.MAX_VALUE) ? timeoutNanos
+						: timeoutNanos - (System.nanoTime() - start);
+				if (!tryLock(recNo, owner, remaining, TimeUnit.NANOSECONDS)) {
+					return false;
+				}
+				acquired[acquiredCount++] = recNo;
+			}
+			locked = true;
+			return true;
+		} finally {
+			if (!locked) {
+				for (int i = acquiredCount - 1; i >= 0; i--) {
+					unlock(acquired[i], owner);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Releases the locks of all given records the given owner holds, in
+	 * descending order of the record numbers.
+	 * 
+	 * @param recNos
+	 *            the numbers of the records to unlock
+	 * @param owner
+	 *            the owner of the locks, i.e.: a thread or a lock cookie
+	 * @return the number of locks released
+	 */
+	int unlockAll(int[] recNos, Object owner) {
+		int[] ordered = recNos.clone();
+		Arrays.sort(ordered);
+		int released = 0;
+		for (int i = ordered.length - 1; i >= 0; i--) {
+			if (unlock(ordered[i], owner)) {
+				released++;
+			}
+		}
+		return released;
+	}
+
+	/**
+	 * Releases the lock of the given record if the current thread owns it.
+	 * The lock is handed over to the thread waiting longest for it, if any.
+	 * 
+	 * @param recNo
+	 *            the number of the record to unlock
+	 * @return <code>true</code> if the lock has been released,
+	 *         <code>false</code> if the current thread did not own it
+	 */
+	boolean unlock(int recNo) {
+		return unlock(recNo, Thread.currentThread());
+	}
+
+	/**
+	 * Releases the lock of the given record if the given owner holds it. The
+	 * lock is handed over to the owner waiting longest for it, if any.
+	 * 
+	 * @param recNo
+	 *            the number of the record to unlock
+	 * @param owner
+	 *            the owner of the lock, i.e.: a thread or a lock cookie
+	 * @return <code>true</code> if the lock has been released,
+	 *         <code>false</code> if the given owner did not hold it
+	 */
+	boolean unlock(int recNo, Object owner) {
+		Stripe stripe = getStripe(recNo);
+		stripe.mutex.lock();
+		try {
+			RecordLock lock = stripe.locks.get(recNo);
+			if (lock == null || !lock.owner.equals(owner)) {
+				return false;
+			}
+			release(stripe, recNo, lock);
+			return true;
+		} finally {
+			stripe.mutex.unlock();
+		}
+	}
+
+	/**
+	 * Checks if the given record is locked by any owner. A lock whose lease
+	 * has expired does not count, even if it has not been released by
+	 * {@link #expireLeases()} yet.
+	 * 
+	 * @param recNo
+	 *            the number of the record to check
+	 * @return <code>true</code> if the record is locked
+	 */
+	boolean isLocked(int recNo) {
+		Stripe stripe = getStripe(recNo);
+		stripe.mutex.lock();
+		try {
+			RecordLock lock = stripe.locks.get(recNo);
+			return lock != null && !isExpired(lock, System.nanoTime());
+		} finally {
+			stripe.mutex.unlock();
+		}
+	}
+
+	/**
+	 * Checks if the current thread owns the lock of the given record.
+	 * 
+	 * @param recNo
+	 *            the number of the record to check
+	 * @return <code>true</code> if the current thread owns the lock
+	 */
+	boolean isOwnedByCurrentThread(int recNo) {
+		return isOwnedBy(recNo, Thread.currentThread());
+	}
+
+	/**
+	 * Checks if the given owner holds the lock of the given record. An owner
+	 * whose lease has expired does not hold the lock anymore, even if the
+	 * lock has not been released by {@link #expireLeases()} yet.
+	 * 
+	 * @param recNo
+	 *            the number of the record to check
+	 * @param owner
+	 *            the owner to check, i.e.: a thread or a lock cookie
+	 * @return <code>true</code> if the given owner holds the lock
+	 */
+	boolean isOwnedBy(int recNo, Object owner) {
+		Stripe stripe = getStripe(recNo);
+		stripe.mutex.lock();
+		try {
+			RecordLock lock = stripe.locks.get(recNo);
+			return lock != null && lock.owner.equals(owner)
+					&& !isExpired(lock, System.nanoTime());
+		} finally {
+			stripe.mutex.unlock();
+		}
+	}
+
+	/**
+	 * Renews the lease of the lock of the given record if the given owner
+	 * holds it, i.e.: the lease time starts again.
+	 * 
+	 * @param recNo
+	 *            the number of the record whose lock is renewed
+	 * @param owner
+	 *            the owner of the lock, i.e.: a thread or a lock cookie
+	 * @return <code>true</code> if the lease has been renewed,
+	 *         <code>false</code> if the given owner does not hold the lock
+	 *         (anymore)
+	 */
+	boolean renew(int recNo, Object owner) {
+		Stripe stripe = getStripe(recNo);
+		stripe.mutex.lock();
+		try {
+			RecordLock lock = stripe.locks.get(recNo);
+			if (lock == null || !lock.owner.equals(owner)) {
+				return false;
+			}
+			startLease(lock);
+			renewedCount.incrementAndGet();
+			return true;
+		} finally {
+			stripe.mutex.unlock();
+		}
+	}
+
+	/**
+	 * Releases all locks whose leases have expired and hands them over to
+	 * their next waiting owners. This method should be called every
+	 * {@link #LEASE_TICK_MILLIS} milliseconds.
+	 * 
+	 * @return the number of expired leases
+	 */
+	int expireLeases() {
+		long now = System.nanoTime();
+		int expired = 0;
+		for (RecordLock lock : leases.advance(now)) {
+			Stripe stripe = getStripe(lock.recNo);
+			stripe.mutex.lock();
+			try {
+				lock.scheduled = false;
+				if (stripe.locks.get(lock.recNo) != lock) {
+					continue; // released meanwhile
+				}
+				if (isExpired(lock, now)) {
+					expired++;
+					expire(stripe, lock);
+				}
+				if (stripe.locks.get(lock.recNo) == lock
+						&& lock.deadline != NO_DEADLINE) {
+					schedule(lock); // renewed or handed over meanwhile
+				}
+			} finally {
+				stripe.mutex.unlock();
+			}
+		}
+		return expired;
+	}
+
+	/**
+	 * Returns a snapshot of the current lock statistics.
+	 * 
+	 * @return the current statistics of the record locks
+	 */
+	LockStatistics getStatistics() {
+		int lockedCount = 0;
+		int waitingCount = 0;
+		for (Stripe stripe : stripes) {
+			stripe.mutex.lock();
+			try {
+				lockedCount += stripe.locks.size();
+				for (RecordLock lock : stripe.locks.values()) {
+					waitingCount += lock.waiters.size();
+				}
+			} finally {
+				stripe.mutex.unlock();
+			}
+		}
+		return new LockStatistics(lockedCount, waitingCount, expiredCount
+				.get(), renewedCount.get());
+	}
+
+	/**
+	 * Starts the lease of the given lock for its current owner. The mutex of
+	 * the lock's stripe must be held.
+	 * 
+	 * @param lock
+	 *            the lock whose lease starts
+	 */
+	private void startLease(RecordLock lock) {
+		long nanos = leaseNanos;
+		if (nanos == 0) {
+			lock.deadline = NO_DEADLINE;
+			return;
+		}
+		lock.deadline = System.nanoTime() + nanos;
+		if (!lock.scheduled) {
+			schedule(lock);
+		}
+	}
+
+	/**
+	 * Checks if the lease of the given lock has expired.
+	 * 
+	 * @param lock
+	 *            the lock to check
+	 * @param now
+	 *            the current time as given by <code>System.nanoTime()</code>
+	 * @return <code>true</code> if the lease has expired
+	 */
+	private static boolean isExpired(RecordLock lock, long now) {
+		return lock.deadline != NO_DEADLINE && now - lock.deadline >= 0;
+	}
+
+	/**
+	 * Releases the given lock because its lease has expired. The mutex of
+	 * the lock's stripe must be held.
+	 * 
+	 * @param stripe
+	 *            the stripe of the record
+	 * @param lock
+	 *            the expired lock
+	 */
+	private void expire(Stripe stripe, RecordLock lock) {
+		LOGGER.warning("The lease of the lock of record '" + lock.recNo
+				+ "' has expired");
+		expiredCount.incrementAndGet();
+		release(stripe, lock.recNo, lock);
+	}
+
+	/**
+	 * Schedules the expiry of the given lock at its deadline. The mutex of
+	 * the lock's stripe must be held.
+	 * 
+	 * @param lock
+	 *            the lock to schedule
+	 */
+	private void schedule(RecordLock lock) {
+		lock.scheduled = true;
+		leases.schedule(lock, lock.deadline);
+	}
+
+	/**
+	 * Hands the given lock over to its first waiting owner or removes it if
+	 * no owner is waiting. The mutex of the stripe must be held.
+	 * 
+	 * @param stripe
+	 *            the stripe of the record
+	 * @param recNo
+	 *            the number of the record
+	 * @param lock
+	 *            the lock to release
+	 */
+	private void release(Stripe stripe, int recNo, RecordLock lock) {
+		Waiter next = lock.waiters.poll();
+		if (next == null) {
+			stripe.locks.remove(recNo);
+		} else {
+			lock.owner = next.owner;
+			startLease(lock);
+			next.granted = true;
+			next.condition.signal();
+		}
+	}
+
+	/**
+	 * Returns the stripe holding the lock of the given record.
+	 * 
+	 * @param recNo
+	 *            the number of the record
+	 * @return the stripe of the record
+	 */
+	private Stripe getStripe(int recNo) {
+		return stripes[(recNo ^ (recNo >>> 16)) & (STRIPES - 1)];
+	}
+
+	/**
+	 * A part of the lock table with its own mutex.
+	 */
+	private static class Stripe {
+
+		/** Guards the locks of the stripe and their waiters */
+		private final ReentrantLock mutex = new ReentrantLock();
+
+		/** The locked records of the stripe and their locks */
+		private final Map<Integer, RecordLock> locks =
+				new HashMap<Integer, RecordLock>();
+	}
+
+	/**
+	 * The lock of one record: its owner and the owners waiting for it.
+	 */
+	private static class RecordLock {
+
+		/** The number of the locked record */
+		private final int recNo;
+
+		/** The owner of the lock: a thread or a lock cookie */
+		private Object owner;
+
+		/** The point in time the lease of the owner expires at as given by
+		 * <code>System.nanoTime()</code> */
+		private long deadline = NO_DEADLINE;
+
+		/** Indicates that the lock is scheduled in the lease timing wheel */
+		private boolean scheduled;
+
+		/** The owners waiting for the lock in the order of their arrival */
+		private final Queue<Waiter> waiters = new ArrayDeque<Waiter>(2);
+
+		/**
+		 * Constructs a lock owned by the given owner.
+		 * 
+		 * @param recNo
+		 *            the number of the locked record
+		 * @param owner
+		 *            the owner of the lock
+		 */
+		RecordLock(int recNo, Object owner) {
+			this.recNo = recNo;
+			this.owner = owner;
+		}
+	}
+
+	/**
+	 * An owner waiting for a record lock.
+	 */
+	private static class Waiter {
+
+		/** The owner the lock is handed over to */
+		private final Object owner;
+
+		/** The condition the thread waits on */
+		private final Condition condition;
+
+		/** Indicates that the lock has been handed over to the owner */
+		private boolean granted;
+
+		/**
+		 * Constructs a waiter.
+		 * 
+		 * @param owner
+		 *            the owner the lock is handed over to
+		 * @param condition
+		 *            the condition the waiting thread waits on
+		 */
+		Waiter(Object owner, Condition condition) {
+			this.owner = owner;
+			this.condition = condition;
+		}
+	}
+
+}
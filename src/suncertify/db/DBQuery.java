@@ -0,0 +1,145 @@
+package suncertify.db;
+
+import java.util.BitSet;
+
+/**
+ * The <code>DBQuery</code> class describes a search on the database: the
+ * criteria per column, whether a value must start with or equal its
+ * criterion and whether a record must match all given criteria or at least
+ * one of them. <code>null</code> or empty criteria are ignored. <br>
+ * A query determines the candidate records from the secondary indexes and
+ * checks the values of a record read from the database.
+ *
+ * @author Jochen R. Meyer
+ *
+ */
+class DBQuery {
+
+	/** The criteria in the order of the database columns */
+	private final String[] criteria;
+
+	/** Indicates if a value must equal its criterion instead of starting with
+	 * it */
+	private final boolean exact;
+
+	/** Indicates if a record must match all given criteria instead of at
+	 * least one of them */
+	private final boolean matchAll;
+
+	/**
+	 * Constructs a query.
+	 *
+	 * @param criteria
+	 *            the criteria in the order of the database columns
+	 * @param exact
+	 *            <code>true</code> if a value must equal its criterion,
+	 *            <code>false</code> if it must start with it
+	 * @param matchAll
+	 *            <code>true</code> if a record must match all given criteria,
+	 *            <code>false</code> if it must match at least one of them
+	 */
+	DBQuery(String[] criteria, boolean exact, boolean matchAll) {
+		this.criteria = criteria.clone();
+		this.exact = exact;
+		this.matchAll = matchAll;
+	}
+
+	/**
+	 * Returns the number of criteria, i.e.: the number of database columns
+	 * the query has been made for.
+	 *
+	 * @return the number of criteria
+	 */
+	int getCriteriaCount() {
+		return criteria.length;
+	}
+
+	/**
+	 * Determines the candidate records from the given indexes. Each candidate
+	 * may match the query, all other records do not.
+	 *
+	 * @param indexes
+	 *            the secondary indexes in the order of the database columns;
+	 *            <code>null</code> for columns not indexed
+	 * @return the candidate records or <code>null</code> if the indexes do
+	 *         not restrict the candidates, i.e.: all records are candidates
+	 */
+	BitSet getCandidates(DBColumnIndex[] indexes) {
+		BitSet candidates = null;
+		for (int i = 0; i < criteria.length; i++) {
+			if (isIgnored(i)) {
+				continue;
+			}
+			if (indexes[i] == null) {
+				if (!matchAll) {
+					return null; // any record may match this criterion
+				}
+				continue;
+			}
+			BitSet matches = exact ? indexes[i].findExact(criteria[i])
+					: indexes[i].findPrefix(criteria[i]);
+			if (candidates == null) {
+				candidates = matches;
+			} else if (matchAll) {
+				candidates.and(matches);
+			} else {
+				candidates.or(matches);
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Indicates if the candidates determined from the given indexes match the
+	 * query without checking their values, i.e.: if all given criteria are on
+	 * indexed columns.
+	 *
+	 * @param indexes
+	 *            the secondary indexes in the order of the database columns
+	 * @return <code>true</code> if the records need not be read
+	 */
+	boolean isAnsweredBy(DBColumnIndex[] indexes) {
+		for (int i = 0; i < criteria.length; i++) {
+			if (!isIgnored(i) && indexes[i] == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if a record holding the given values matches the query.
+	 *
+	 * @param values
+	 *            the values of the record as read from the database
+	 * @return <code>true</code> if the record matches
+	 */
+	boolean matches(String[] values) {
+		boolean anyGiven = false;
+		for (int i = 0; i < criteria.length; i++) {
+			if (isIgnored(i)) {
+				continue;
+			}
+			anyGiven = true;
+			boolean match = exact ? values[i].equals(criteria[i]) : values[i]
+					.startsWith(criteria[i]);
+			if (match != matchAll) {
+				return match;
+			}
+		}
+		return matchAll || !anyGiven;
+	}
+
+	/**
+	 * Indicates if the criterion of the given column is ignored.
+	 *
+	 * @param column
+	 *            the number of the column
+	 * @return <code>true</code> if the criterion is <code>null</code> or
+	 *         empty
+	 */
+	private boolean isIgnored(int column) {
+		return criteria[column] == null || criteria[column].equals("");
+	}
+
+}
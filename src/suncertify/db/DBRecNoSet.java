@@ -0,0 +1,124 @@
+package suncertify.db;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The <code>DBRecNoSet</code> class is a compact set of record numbers. The
+ * numbers are kept sorted in a primitive array, so a set of only a few records
+ * needs just a few bytes and no boxed <code>Integer</code> objects. Adding and
+ * removing a record number takes a binary search and an array copy. <br>
+ * The class is not thread safe.
+ *
+ * @author Jochen R. Meyer
+ *
+ */
+class DBRecNoSet {
+
+	/** The initial capacity of the array holding the record numbers */
+	private static final int INITIAL_CAPACITY = 2;
+
+	/** The record numbers in ascending order, followed by unused slots */
+	private int[] recNos;
+
+	/** The number of record numbers in the set */
+	private int size;
+
+	/**
+	 * Constructs an empty set.
+	 */
+	DBRecNoSet() {
+		recNos = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Adds the given record number to the set.
+	 *
+	 * @param recNo
+	 *            the record number to add
+	 * @return <code>true</code> if the set did not contain the record number
+	 *         before
+	 */
+	boolean add(int recNo) {
+		int index = Arrays.binarySearch(recNos, 0, size, recNo);
+		if (index >= 0) {
+			return false;
+		}
+		index = -(index + 1);
+		if (size == recNos.length) {
+			recNos = Arrays.copyOf(recNos, size * 2);
+		}
+		System.arraycopy(recNos, index, recNos, index + 1, size - index);
+		recNos[index] = recNo;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Removes the given record number from the set.
+	 *
+	 * @param recNo
+	 *            the record number to remove
+	 * @return <code>true</code> if the set contained the record number
+	 */
+	boolean remove(int recNo) {
+		int index = Arrays.binarySearch(recNos, 0, size, recNo);
+		if (index < 0) {
+			return false;
+		}
+		size--;
+		System.arraycopy(recNos, index + 1, recNos, index, size - index);
+		return true;
+	}
+
+	/**
+	 * Indicates if the set contains the given record number.
+	 *
+	 * @param recNo
+	 *            the record number to look for
+	 * @return <code>true</code> if the set contains the record number
+	 */
+	boolean contains(int recNo) {
+		return Arrays.binarySearch(recNos, 0, size, recNo) >= 0;
+	}
+
+	/**
+	 * Returns the number of record numbers in the set.
+	 *
+	 * @return the size of the set
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Indicates if the set is empty.
+	 *
+	 * @return <code>true</code> if the set contains no record number
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Sets the bits of all record numbers of this set in the given bit set.
+	 *
+	 * @param target
+	 *            the bit set to add the record numbers to
+	 */
+	void addTo(BitSet target) {
+		for (int i = 0; i < size; i++) {
+			target.set(recNos[i]);
+		}
+	}
+
+	/**
+	 * Returns the record numbers of the set.
+	 *
+	 * @return a new array containing the record numbers in ascending order
+	 */
+	int[] toArray() {
+		return Arrays.copyOf(recNos, size);
+	}
+
+}
@@ -0,0 +1,69 @@
+package suncertify.db;
+
+/**
+ * The <code>DBRecord</code> class holds a record read from the database
+ * together with its record number and its version stamp. It is returned by
+ * the cursors of <code>Data</code> and by {@link Data#readRecord(int)}. The
+ * version stamp can be passed to
+ * {@link Data#compareAndUpdate(int, long, String[])} to update the record
+ * only if it has not been modified since it has been read.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+public final class DBRecord {
+
+	/** The number of the record */
+	private final int recNo;
+
+	/** The values of the record in the order of the database columns */
+	private final String[] values;
+
+	/** The version stamp of the record at the time it has been read */
+	private final long version;
+
+	/**
+	 * Constructs a record.
+	 * 
+	 * @param recNo
+	 *            the number of the record
+	 * @param values
+	 *            the values of the record in the order of the database
+	 *            columns
+	 * @param version
+	 *            the version stamp of the record
+	 */
+	DBRecord(int recNo, String[] values, long version) {
+		this.recNo = recNo;
+		this.values = values;
+		this.version = version;
+	}
+
+	/**
+	 * Returns the number of the record.
+	 * 
+	 * @return the record number
+	 */
+	public int getRecNo() {
+		return recNo;
+	}
+
+	/**
+	 * Returns the values of the record.
+	 * 
+	 * @return a copy of the values in the order of the database columns
+	 */
+	public String[] getValues() {
+		return values.clone();
+	}
+
+	/**
+	 * Returns the version stamp of the record at the time it has been read.
+	 * 
+	 * @return the version stamp
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+}
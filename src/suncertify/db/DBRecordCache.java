@@ -0,0 +1,124 @@
+package suncertify.db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The <code>DBRecordCache</code> class is a size-bounded cache of record
+ * values, keyed by record number. If the cache is full, the least recently
+ * used record is evicted. <br>
+ * The cache is thread safe. It stores copies of the values given to it and
+ * returns copies as well, so callers may modify the arrays freely. Hits,
+ * misses and evictions are counted to help sizing the cache.
+ *
+ * @author Jochen R. Meyer
+ *
+ */
+class DBRecordCache {
+
+	/** The cached records in the order of their last access */
+	private LinkedHashMap<Integer, String[]> records;
+
+	/** The maximum number of cached records */
+	private final int capacity;
+
+	/** The number of successful lookups */
+	private long hitCount;
+
+	/** The number of failed lookups */
+	private long missCount;
+
+	/** The number of records evicted because the cache was full */
+	private long evictionCount;
+
+	/**
+	 * Constructs the cache holding at most the given number of records.
+	 *
+	 * @param capacity
+	 *            the maximum number of cached records; <code>0</code>
+	 *            disables caching
+	 */
+	DBRecordCache(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("The cache capacity must not "
+					+ "be negative");
+		}
+		this.capacity = capacity;
+		records = new LinkedHashMap<Integer, String[]>(16, 0.75f, true) {
+
+			/** The serial version of this class */
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<Integer, String[]> eldest) {
+				if (size() > DBRecordCache.this.capacity) {
+					evictionCount++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached values of the given record.
+	 *
+	 * @param recNo
+	 *            the number of the record
+	 * @return a copy of the cached values or <code>null</code> if the record
+	 *         is not cached
+	 */
+	synchronized String[] get(int recNo) {
+		String[] values = records.get(recNo);
+		if (values == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return values.clone();
+	}
+
+	/**
+	 * Caches the given values of the given record. Values cached before for
+	 * the record are replaced.
+	 *
+	 * @param recNo
+	 *            the number of the record
+	 * @param values
+	 *            the values of the record as they are read from the database
+	 */
+	synchronized void put(int recNo, String[] values) {
+		if (capacity > 0) {
+			records.put(recNo, values.clone());
+		}
+	}
+
+	/**
+	 * Removes the given record from the cache.
+	 *
+	 * @param recNo
+	 *            the number of the record
+	 */
+	synchronized void remove(int recNo) {
+		records.remove(recNo);
+	}
+
+	/**
+	 * Removes all records from the cache.
+	 */
+	synchronized void clear() {
+		records.clear();
+	}
+
+	/**
+	 * Returns a snapshot of the cache's counters.
+	 *
+	 * @return the current statistics of the cache
+	 */
+	synchronized RecordCacheStatistics getStatistics() {
+		return new RecordCacheStatistics(capacity, records.size(), hitCount,
+				missCount, evictionCount);
+	}
+
+}
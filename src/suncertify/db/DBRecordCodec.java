@@ -0,0 +1,133 @@
+package suncertify.db;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The <code>DBRecordCodec</code> class converts the raw bytes of a database
+ * record into its field values and vice versa. It knows the layout of one
+ * record (the deletion flag followed by the fixed length columns) and decodes
+ * or encodes all fields directly from or into one buffer holding the whole
+ * record, i.e.: without any intermediate byte arrays or strings. <br>
+ * The codec holds no mutable state and can be shared between threads.
+ *
+ * @author Jochen R. Meyer
+ *
+ */
+class DBRecordCodec {
+
+	/** The character encoding of the database file */
+	private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+	/** The byte used to pad values shorter than their column */
+	private static final byte PADDING = ' ';
+
+	/** The byte written for characters not representable in US-ASCII */
+	private static final byte UNMAPPABLE = '?';
+
+	/** The highest byte value treated as padding (spaces, null terminators and
+	 * other control characters - just like <code>String.trim()</code>) */
+	private static final byte PADDING_MAX = ' ';
+
+	/** The offsets of the columns' values relative to the record start */
+	private final int[] offsets;
+
+	/** The lengths of the columns' values */
+	private final int[] lengths;
+
+	/** The length of one record including its deletion flag */
+	private final int recordLength;
+
+	/**
+	 * Constructs the codec for records consisting of the given columns.
+	 *
+	 * @param dbColumns
+	 *            the columns of a record in the order of their numbers
+	 */
+	DBRecordCodec(List<DBColumn> dbColumns) {
+		offsets = new int[dbColumns.size()];
+		lengths = new int[dbColumns.size()];
+		int offset = 1; // behind the deletion flag
+		for (DBColumn dbCol : dbColumns) {
+			offsets[dbCol.getNumber()] = offset;
+			lengths[dbCol.getNumber()] = dbCol.getLength();
+			offset += dbCol.getLength();
+		}
+		recordLength = offset;
+	}
+
+	/**
+	 * Returns the length of one record including its deletion flag.
+	 *
+	 * @return the record length in bytes
+	 */
+	int getRecordLength() {
+		return recordLength;
+	}
+
+	/**
+	 * Decodes the field values of the record starting at the given offset of
+	 * the given buffer. Leading and trailing padding is not part of the
+	 * values.
+	 *
+	 * @param buf
+	 *            the buffer containing the record (including its deletion
+	 *            flag)
+	 * @param recordOffset
+	 *            the offset of the record's deletion flag in the buffer
+	 * @return the decoded field values in the order of the database columns
+	 */
+	String[] decode(byte[] buf, int recordOffset) {
+		String[] record = new String[offsets.length];
+		for (int i = 0; i < offsets.length; i++) {
+			int start = recordOffset + offsets[i];
+			int end = start + lengths[i];
+
+			// find the value's bounds without creating an intermediate string
+			while (end > start && buf[end - 1] <= PADDING_MAX
+					&& buf[end - 1] >= 0) {
+				end--;
+			}
+			while (start < end && buf[start] <= PADDING_MAX
+					&& buf[start] >= 0) {
+				start++;
+			}
+			record[i] = (start == end) ? "" : new String(buf, start, end
+					- start, US_ASCII);
+		}
+		return record;
+	}
+
+	/**
+	 * Encodes the given deletion flag and field values into the given buffer
+	 * starting at the given offset. The values are padded right (i.e.:
+	 * left-justified) to their columns' lengths. Values exceeding their column
+	 * are cut off, characters not representable in US-ASCII are replaced.
+	 *
+	 * @param flag
+	 *            the deletion flag of the record
+	 * @param data
+	 *            the field values in the order of the database columns;
+	 *            <code>null</code> values are written as empty values
+	 * @param buf
+	 *            the buffer to write the record to
+	 * @param recordOffset
+	 *            the offset of the record's deletion flag in the buffer
+	 */
+	void encode(byte flag, String[] data, byte[] buf, int recordOffset) {
+		buf[recordOffset] = flag;
+		for (int i = 0; i < offsets.length; i++) {
+			int start = recordOffset + offsets[i];
+			String value = data[i];
+			int length = (value == null) ? 0 : Math.min(value.length(),
+					lengths[i]);
+			for (int j = 0; j < length; j++) {
+				char c = value.charAt(j);
+				buf[start + j] = (c < 0x80) ? (byte) c : UNMAPPABLE;
+			}
+			Arrays.fill(buf, start + length, start + lengths[i], PADDING);
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+package suncertify.db;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The <code>DBRecordCursor</code> class streams the records matching a query
+ * in the order of their record numbers, i.e.: in one pass over the database
+ * file. The records are fetched in small batches, each with one short
+ * shared access to the database, so neither the whole result is held in
+ * memory nor other clients are blocked for the duration of the iteration.
+ * <br>
+ * The cursor is weakly consistent: The candidates are determined from the
+ * indexes when the cursor is created. Records deleted afterwards are skipped
+ * and modified records are checked against the query again when they are
+ * reached. If a database access error occurs while fetching, an
+ * <code>IllegalStateException</code> is thrown. The cursor itself is not
+ * thread safe.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+class DBRecordCursor implements Iterator<DBRecord> {
+
+	/** The number of records fetched with one database access */
+	private static final int BATCH_SIZE = 64;
+
+	/** The database to read from */
+	private final Data data;
+
+	/** The query the records must match */
+	private final DBQuery query;
+
+	/** The candidate records or <code>null</code> if all records are
+	 * candidates */
+	private final BitSet candidates;
+
+	/** The records fetched but not yet returned */
+	private List<DBRecord> batch;
+
+	/** The index of the next record to return from the batch */
+	private int batchIndex;
+
+	/** The record number to continue fetching at or <code>-1</code> if all
+	 * records have been fetched */
+	private int nextRecNo;
+
+	/**
+	 * Constructs a cursor over the records matching the given query.
+	 * 
+	 * @param data
+	 *            the database to read from
+	 * @param query
+	 *            the query the records must match
+	 * @param candidates
+	 *            the candidate records or <code>null</code> if all records
+	 *            are candidates
+	 */
+	DBRecordCursor(Data data, DBQuery query, BitSet candidates) {
+		this.data = data;
+		this.query = query;
+		this.candidates = candidates;
+		batch = new ArrayList<DBRecord>(BATCH_SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean hasNext() {
+		if (batchIndex < batch.size()) {
+			return true;
+		}
+		if (nextRecNo < 0) {
+			return false;
+		}
+		batch.clear();
+		batchIndex = 0;
+		nextRecNo = data.readMatching(query, candidates, nextRecNo,
+				BATCH_SIZE, batch);
+		return !batch.isEmpty();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public DBRecord next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return batch.get(batchIndex++);
+	}
+
+	/**
+	 * Not supported: Records must be deleted by locking them first.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Records cannot be removed "
+				+ "by a cursor");
+	}
+
+}
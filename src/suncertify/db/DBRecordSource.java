@@ -0,0 +1,27 @@
+package suncertify.db;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A <code>DBRecordSource</code> delivers the records to be imported into the
+ * database by a bulk load (see {@link DBFileAccess#appendAll(DBRecordSource)})
+ * one after the other. A source reads its records in streaming fashion, i.e.:
+ * it does not hold all of them in memory.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+interface DBRecordSource extends Closeable {
+
+	/**
+	 * Returns the next record of the source.
+	 * 
+	 * @return the values of the next record in the order of the database
+	 *         columns or <code>null</code> if there are no more records
+	 * @throws IOException
+	 *             if the source cannot be read or contains invalid data
+	 */
+	String[] nextRecord() throws IOException;
+
+}
@@ -0,0 +1,101 @@
+package suncertify.db;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The <code>DBSnapshot</code> class represents the state of the data section
+ * at a certain point in time, i.e.: a consistent view of all records which
+ * can be read while the records are modified. <br>
+ * A snapshot does not copy the records. Instead, before a record slot
+ * belonging to the snapshot is modified for the first time, its image at the
+ * time of the snapshot is preserved (copy on write). Reading the snapshot
+ * reads the database file and replaces the images of modified slots by their
+ * preserved ones. So a snapshot only needs memory for the records modified
+ * while it is open.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+class DBSnapshot {
+
+	/** The number of record slots belonging to the snapshot */
+	private final int slotCount;
+
+	/** The preserved images of modified slots, stored by slot */
+	private final Map<Integer, byte[]> preImages =
+			new HashMap<Integer, byte[]>();
+
+	/**
+	 * Constructs a snapshot of the given number of record slots.
+	 * 
+	 * @param slotCount
+	 *            the number of record slots at the time of the snapshot
+	 */
+	DBSnapshot(int slotCount) {
+		this.slotCount = slotCount;
+	}
+
+	/**
+	 * Returns the number of record slots belonging to the snapshot.
+	 * 
+	 * @return the number of record slots
+	 */
+	int getSlotCount() {
+		return slotCount;
+	}
+
+	/**
+	 * Indicates if the image of the given slot has to be preserved before the
+	 * slot is modified, i.e.: if it belongs to the snapshot and has not been
+	 * preserved yet.
+	 * 
+	 * @param slot
+	 *            the slot about to be modified
+	 * @return <code>true</code> if the image has to be preserved
+	 */
+	synchronized boolean needsPreImage(int slot) {
+		return slot < slotCount && !preImages.containsKey(slot);
+	}
+
+	/**
+	 * Preserves the given image of the given slot as it has been at the time
+	 * of the snapshot.
+	 * 
+	 * @param slot
+	 *            the slot about to be modified
+	 * @param image
+	 *            the current image of the slot; it is not copied
+	 */
+	synchronized void preserve(int slot, byte[] image) {
+		preImages.put(slot, image);
+	}
+
+	/**
+	 * Replaces the images of all slots in the given chunk modified since the
+	 * snapshot was taken by their preserved images.
+	 * 
+	 * @param firstSlot
+	 *            the slot of the first record image in the chunk
+	 * @param count
+	 *            the number of record images in the chunk
+	 * @param chunk
+	 *            the buffer holding the consecutive record images
+	 * @param recordLength
+	 *            the length of one record image
+	 */
+	synchronized void applyPreImages(int firstSlot, int count, byte[] chunk,
+			int recordLength) {
+		if (preImages.isEmpty()) {
+			return;
+		}
+		for (int i = 0; i < count; i++) {
+			byte[] image = preImages.get(firstSlot + i);
+			if (image != null) {
+				System.arraycopy(image, 0, chunk, i * recordLength,
+						recordLength);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+package suncertify.db;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The <code>DBTimingWheel</code> class schedules items for a point in time
+ * with a resolution of one tick. The items are kept in a circular array of
+ * buckets, one bucket per tick, so scheduling an item and advancing the wheel
+ * by one tick take constant time regardless of the number of scheduled items.
+ * Items due more than one revolution ahead stay in their bucket until their
+ * revolution has come. <br>
+ * The wheel is used to expire the leases of record locks.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ * @param <T>
+ *            the type of the scheduled items
+ */
+class DBTimingWheel<T> {
+
+	/** The length of one tick in nanoseconds */
+	private final long tickNanos;
+
+	/** The mask mapping a tick to its bucket; the number of buckets is a
+	 * power of two */
+	private final int mask;
+
+	/** The buckets of the wheel, one per tick of a revolution */
+	private final List<List<Entry<T>>> buckets;
+
+	/** The point in time of tick <code>0</code> */
+	private final long origin;
+
+	/** The last tick whose bucket has been processed */
+	private long lastTick;
+
+	/** The number of items currently scheduled */
+	private int size;
+
+	/**
+	 * Constructs an empty wheel.
+	 * 
+	 * @param tickNanos
+	 *            the length of one tick in nanoseconds
+	 * @param bucketCount
+	 *            the number of ticks of one revolution; rounded up to a power
+	 *            of two
+	 */
+	DBTimingWheel(long tickNanos, int bucketCount) {
+		int count = Integer.highestOneBit(Math.max(bucketCount - 1, 1)) << 1;
+		this.tickNanos = tickNanos;
+		mask = count - 1;
+		buckets = new ArrayList<List<Entry<T>>>(count);
+		for (int i = 0; i < count; i++) {
+			buckets.add(new ArrayList<Entry<T>>(2));
+		}
+		origin = System.nanoTime();
+	}
+
+	/**
+	 * Schedules the given item for the given point in time. The item is
+	 * returned by the first call of {@link #advance(long)} passing a point in
+	 * time not earlier than the end of the tick containing the given one.
+	 * 
+	 * @param item
+	 *            the item to schedule
+	 * @param deadline
+	 *            the point in time as given by <code>System.nanoTime()</code>
+	 */
+	synchronized void schedule(T item, long deadline) {
+		long tick = Math.max((deadline - origin + tickNanos - 1) / tickNanos,
+				lastTick + 1);
+		buckets.get((int) (tick & mask)).add(new Entry<T>(item, tick));
+		size++;
+	}
+
+	/**
+	 * Advances the wheel up to the given point in time and removes all items
+	 * due until then. Each tick passed since the last call costs constant time
+	 * plus the time for the items of its bucket.
+	 * 
+	 * @param now
+	 *            the current point in time as given by
+	 *            <code>System.nanoTime()</code>
+	 * @return the items due, in no particular order
+	 */
+	synchronized List<T> advance(long now) {
+		List<T> due = new ArrayList<T>();
+		long currentTick = (now - origin) / tickNanos;
+		long firstTick = Math.max(lastTick + 1, currentTick - mask);
+		for (long tick = firstTick; tick <= currentTick && size > 0; tick++) {
+			Iterator<Entry<T>> entries = buckets.get((int) (tick & mask))
+					.iterator();
+			while (entries.hasNext()) {
+				Entry<T> entry = entries.next();
+				if (entry.tick <= currentTick) {
+					entries.remove();
+					due.add(entry.item);
+					size--;
+				}
+			}
+		}
+		lastTick = Math.max(lastTick, currentTick);
+		return due;
+	}
+
+	/**
+	 * Returns the number of items currently scheduled.
+	 * 
+	 * @return the number of scheduled items
+	 */
+	synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * An item scheduled for a tick.
+	 * 
+	 * @param <T>
+	 *            the type of the item
+	 */
+	private static class Entry<T> {
+
+		/** The scheduled item */
+		private final T item;
+
+		/** The tick the item is due at */
+		private final long tick;
+
+		/**
+		 * Constructs an entry.
+		 * 
+		 * @param item
+		 *            the scheduled item
+		 * @param tick
+		 *            the tick the item is due at
+		 */
+		Entry(T item, long tick) {
+			this.item = item;
+			this.tick = tick;
+		}
+	}
+
+}
@@ -1,20 +1,77 @@
 package suncertify.db;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * Implementation class of the DBMain interface. <br>
+ * Implementation class of the DBMain interface and its extension
+ * DBCookieMain. <br>
  * The <code>Data</code> class is the <code>public</code> known access class of
  * the database layer. It manages a thread-safe communication to a file based
- * database and provides a locking mechanism.
+ * database and provides a locking mechanism. <br>
+ * The database is guarded by a read-write lock: Reading methods like
+ * {@link #read(int)} and {@link #find(String[])} share its read lock and run
+ * concurrently, while modifying methods acquire its write lock exclusively.
+ * The record locks of the clients are managed separately (see
+ * {@link DBLockManager}), so waiting for a record lock does not block the
+ * database. A released record lock is handed over to the thread waiting
+ * longest for it. A record lock is owned either by the locking thread (see
+ * {@link #lock(int)}) or by the lock cookie returned to the client (see
+ * {@link #lockRecord(int, long)}). Record locks can be leased for a limited
+ * time (see {@link #setLockLeaseTime(long)}), so a lock of a client which
+ * has died is released automatically. Several records can be locked at once
+ * without the risk of a deadlock (see {@link #lockAll(int[], long)}). <br>
+ * Alternatively a record can be updated optimistically without locking it:
+ * Each record carries a version stamp changing with every modification (see
+ * {@link #readRecord(int)}), and
+ * {@link #compareAndUpdate(int, long, String[])} updates the record only if
+ * its version stamp is still the one read before. <br>
+ * All modifications are protected by a write-ahead journal. A modifying method
+ * returns after its modification has become durable in the journal, which is
+ * done outside the database lock so that concurrent modifications share
+ * their forced writes. A background task regularly checkpoints the journaled
+ * records into the database file. <br>
+ * Recently read records are kept in a size-bounded cache which is updated
+ * whenever a record is created, updated or deleted, so reading them again does
+ * not access the database file. <br>
+ * Depending on its {@link StorageMode} the whole data section can be held in
+ * memory, so that searches do not access the database file either. In the
+ * write-behind mode a modifying method does not wait for its modification to
+ * become durable, which is done by the next background checkpoint instead.
+ * <br>
+ * The database file can be compacted while it is in use (see
+ * {@link #compact()}). Large amounts of records can be imported from comma
+ * separated values or another database file by a bulk load (see
+ * {@link #importCsv(Reader)} and {@link #importDatabase(File)}) and all
+ * records can be exported while the database is in use (see
+ * {@link #export(Writer, ExportFormat)}). <br>
+ * How often modifications are forced to disk is defined by the durability
+ * mode (see {@link #setDurabilityMode(DurabilityMode)}). A database which is
+ * not used anymore has to be closed (see {@link #close()}) to stop its
+ * background tasks and release its files.
  * 
  * @author Jochen R. Meyer
  * 
  */
-public class Data implements DBMain {
+public class Data implements DBCookieMain {
 
 	/** Standard error message for database access errors */
 	private static final String ERROR_MESSAGE_DB_ACCESS = "Database file "
@@ -22,15 +79,93 @@ public class Data implements DBMain {
 
 	/** Standard error message if a modification on a locked record is not done
 	 * by the real lock owner */
-	private static final String ERROR_MESSAGE_NOT_LOCK_OWNER = "The Thread "
+	private static final String ERROR_MESSAGE_NOT_LOCK_OWNER = "The client "
 			+ "trying to modify record '%d' does not own the lock "
 			+ "of this record";
 
+	/** Standard error message if the locks of several records could not be
+	 * acquired in time */
+	private static final String ERROR_MESSAGE_RECORDS_BUSY = "Records %s are "
+			+ "not all released by other clients within %d ms";
+
+	/** Standard error message if a record lock could not be acquired in time */
+	private static final String ERROR_MESSAGE_RECORD_BUSY = "Record '%d' is "
+			+ "locked by another client and has not been released within "
+			+ "%d ms";
+
+	/** The default maximum number of records kept in the record cache */
+	public static final int DEFAULT_CACHE_CAPACITY = 1024;
+
+	/** The size of the chunks read and written by an export in bytes */
+	private static final int EXPORT_CHUNK_SIZE = 256 * 1024;
+
+	/** The interval between two checkpoints in milliseconds */
+	private static final long CHECKPOINT_INTERVAL = 1000;
+
+	/** The default interval in which the journal is forced in the periodic
+	 * durability mode in milliseconds */
+	public static final long DEFAULT_FORCE_INTERVAL = 100;
+
+	/** The default number of modifications after which the journal is forced
+	 * in the periodic durability mode */
+	public static final int DEFAULT_FORCE_COMMITS = 64;
+
+	/** The logger of the database layer */
+	private static final Logger LOGGER = Logger.getLogger(Data.class
+			.getName());
+
 	/** Reference to the underlying class actually performing real file access */
 	private DBFileAccess database;
 
-	/** A map containing all currently locked recNo's and their lock owners */
-	private Map<Integer, Long> locks;
+	/** Indicates if modifying methods return before their modification is
+	 * durable */
+	private boolean writeBehind;
+
+	/** Defines when modifications are forced to disk */
+	private volatile DurabilityMode durabilityMode = DurabilityMode.STRICT;
+
+	/** The number of modifications after which the journal is forced in the
+	 * periodic durability mode */
+	private volatile int maxUnforcedCommits;
+
+	/** The number of modifications not yet forced in the periodic durability
+	 * mode */
+	private final AtomicInteger unforcedCommits = new AtomicInteger();
+
+	/** The timer running the background tasks of the database */
+	private Timer maintenanceTimer;
+
+	/** Indicates the database has been closed; guarded by the database lock,
+	 * which lets a background task blocked by <code>close</code> notice */
+	private boolean closed;
+
+	/** The task forcing the journal in the periodic durability mode or
+	 * <code>null</code> */
+	private TimerTask periodicForceTask;
+
+	/** Ensures that only one compaction is running at a time */
+	private final Object compactionLock = new Object();
+
+	/** The cache of recently used records */
+	private DBRecordCache cache;
+
+	/** Guards the database: Reading methods share the read lock, modifying
+	 * methods acquire the write lock exclusively */
+	private final ReentrantReadWriteLock databaseLock =
+			new ReentrantReadWriteLock();
+
+	/** The shared lock of the database held by reading methods */
+	private final Lock readLock = databaseLock.readLock();
+
+	/** The exclusive lock of the database held by modifying methods */
+	private final Lock writeLock = databaseLock.writeLock();
+
+	/** Manages the record locks and the threads waiting for them */
+	private DBLockManager lockManager;
+
+	/** The source of the lock cookies; each lock gets a new one */
+	private final AtomicLong lockCookies = new AtomicLong(
+			new Random().nextLong());
 
 	/**
 	 * Constructs the <code>Data</code> class and takes a <code>File</code>
@@ -40,12 +175,85 @@ public class Data implements DBMain {
 	 * @param dbFile
 	 *            the database file to use
 	 * @throws IOException
-	 *             if the given file cannot be accessed or is no valid database
-	 *             file
+	 *             if the given file cannot be accessed, is no valid database
+	 *             file or is in use by another <code>Data</code> object
 	 */
 	public Data(File dbFile) throws IOException {
-		database = new DBFileAccess(dbFile);
-		locks = new HashMap<Integer, Long>();
+		this(dbFile, DEFAULT_CACHE_CAPACITY);
+	}
+
+	/**
+	 * Constructs the <code>Data</code> class for the given database file and
+	 * caches at most the given number of records.
+	 * 
+	 * @param dbFile
+	 *            the database file to use
+	 * @param cacheCapacity
+	 *            the maximum number of cached records; <code>0</code>
+	 *            disables the cache
+	 * @throws IOException
+	 *             if the given file cannot be accessed, is no valid database
+	 *             file or is in use by another <code>Data</code> object
+	 */
+	public Data(File dbFile, int cacheCapacity) throws IOException {
+		this(dbFile, StorageMode.FILE, cacheCapacity);
+	}
+
+	/**
+	 * Constructs the <code>Data</code> class for the given database file using
+	 * the given storage mode.
+	 * 
+	 * @param dbFile
+	 *            the database file to use
+	 * @param storageMode
+	 *            defines if the records are held in memory and if
+	 *            modifications are written in the background
+	 * @throws IOException
+	 *             if the given file cannot be accessed, is no valid database
+	 *             file or is in use by another <code>Data</code> object
+	 */
+	public Data(File dbFile, StorageMode storageMode) throws IOException {
+		this(dbFile, storageMode, DEFAULT_CACHE_CAPACITY);
+	}
+
+	/**
+	 * Constructs the <code>Data</code> class for the given database file using
+	 * the given storage mode and caching at most the given number of records.
+	 * 
+	 * @param dbFile
+	 *            the database file to use
+	 * @param storageMode
+	 *            defines if the records are held in memory and if
+	 *            modifications are written in the background
+	 * @param cacheCapacity
+	 *            the maximum number of cached records; <code>0</code>
+	 *            disables the cache
+	 * @throws IOException
+	 *             if the given file cannot be accessed, is no valid database
+	 *             file or is in use by another <code>Data</code> object
+	 */
+	public Data(File dbFile, StorageMode storageMode, int cacheCapacity)
+			throws IOException {
+		cache = new DBRecordCache(cacheCapacity);
+		database = new DBFileAccess(dbFile, true, storageMode
+				.isMemoryResident());
+		writeBehind = storageMode.isWriteBehind();
+		lockManager = new DBLockManager();
+
+		maintenanceTimer = new Timer("Database maintenance", true);
+		maintenanceTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				checkpoint(writeBehind
+						|| durabilityMode != DurabilityMode.ASYNC);
+			}
+		}, CHECKPOINT_INTERVAL, CHECKPOINT_INTERVAL);
+		maintenanceTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				lockManager.expireLeases();
+			}
+		}, DBLockManager.LEASE_TICK_MILLIS, DBLockManager.LEASE_TICK_MILLIS);
 	}
 
 	/**
@@ -53,12 +261,21 @@ public class Data implements DBMain {
 	 */
 	@Override
 	public int create(String[] data) throws DuplicateKeyException {
-		synchronized (database) {
+		try {
+			int recNo;
+			long commitTicket;
+			writeLock.lock();
 			try {
-				return database.create(data);
-			} catch (IOException ioe) {
-				throw new DuplicateKeyException(ERROR_MESSAGE_DB_ACCESS, ioe);
+				recNo = database.create(data);
+				cache.put(recNo, database.getStoredValues(data));
+				commitTicket = database.getCommitTicket();
+			} finally {
+				writeLock.unlock();
 			}
+			commit(commitTicket);
+			return recNo;
+		} catch (IOException ioe) {
+			throw new DuplicateKeyException(ERROR_MESSAGE_DB_ACCESS, ioe);
 		}
 	}
 
@@ -67,18 +284,45 @@ public class Data implements DBMain {
 	 */
 	@Override
 	public void delete(int recNo) throws RecordNotFoundException {
-		synchronized (database) {
+		delete(recNo, Thread.currentThread());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void delete(int recNo, long lockCookie)
+			throws RecordNotFoundException {
+		delete(recNo, Long.valueOf(lockCookie));
+	}
+
+	/**
+	 * Deletes the given record if it is locked by the given owner.
+	 * 
+	 * @param recNo
+	 *            the number of the record to delete
+	 * @param owner
+	 *            the owner of the record lock: a thread or a lock cookie
+	 * @throws RecordNotFoundException
+	 *             if the record does not exist or is not locked by the given
+	 *             owner
+	 */
+	private void delete(int recNo, Object owner)
+			throws RecordNotFoundException {
+		try {
+			long commitTicket;
+			writeLock.lock();
 			try {
-				if (isCurrentThreadOwnsLock(recNo)) {
-					database.delete(recNo);
-				} else {
-					throw new RecordNotFoundException(
-							formatNotLockOwnerMessage(recNo));
-				}
-			} catch (IOException ioe) {
-				throw new RecordNotFoundException(formatDBAccessMessage(recNo),
-						ioe);
+				checkLockOwner(recNo, owner);
+				database.delete(recNo);
+				cache.remove(recNo);
+				commitTicket = database.getCommitTicket();
+			} finally {
+				writeLock.unlock();
 			}
+			commit(commitTicket);
+		} catch (IOException ioe) {
+			throw new RecordNotFoundException(formatDBAccessMessage(recNo), ioe);
 		}
 	}
 
@@ -87,24 +331,96 @@ public class Data implements DBMain {
 	 */
 	@Override
 	public int[] find(String[] criteria) throws RecordNotFoundException {
-		synchronized (database) {
-			try {
-				return database.find(criteria);
-			} catch (IOException ioe) {
-				throw new RecordNotFoundException(formatDBAccessMessage(null),
-						ioe);
-			}
+		readLock.lock();
+		try {
+			return database.find(criteria);
+		} catch (IOException ioe) {
+			throw new RecordNotFoundException(formatDBAccessMessage(null), ioe);
+		} finally {
+			readLock.unlock();
 		}
 	}
 
+	/**
+	 * Returns an array of record numbers of all records whose fields equal the
+	 * given criteria exactly. In contrast to {@link #find(String[])} a field
+	 * value must match its criterion completely and not just start with it.
+	 * <code>null</code> or empty criteria are ignored; if all criteria are
+	 * empty, all records are found. Depending on <code>matchAll</code> a
+	 * record must match all given criteria or at least one of them. <br>
+	 * The name and location are looked up in hash indexes, so a search on them
+	 * reads no record at all.
+	 * 
+	 * @param criteria
+	 *            an array containing the values to search for in the order of
+	 *            the database fields
+	 * @param matchAll
+	 *            <code>true</code> to combine the criteria with 'and',
+	 *            <code>false</code> to combine them with 'or'
+	 * @return an array containing the record numbers of the found records in
+	 *         ascending order
+	 * @throws RecordNotFoundException
+	 *             if the database cannot be accessed properly during the
+	 *             search
+	 */
+	public int[] findExact(String[] criteria, boolean matchAll)
+			throws RecordNotFoundException {
+		readLock.lock();
+		try {
+			return database.findExact(criteria, matchAll);
+		} catch (IOException ioe) {
+			throw new RecordNotFoundException(formatDBAccessMessage(null), ioe);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns a cursor streaming all records matching the given criteria in
+	 * the order of their record numbers. A record matches if each of its
+	 * fields starts with the corresponding criterion, just like in
+	 * {@link #find(String[])}. In contrast to a search followed by reading
+	 * each found record, the records are found and read in one pass and in
+	 * small batches, so large results are never held in memory as a whole.
+	 * The cursor is weakly consistent, i.e.: it reflects modifications made
+	 * during the iteration only partially. <br>
+	 * If the database cannot be accessed properly during the iteration, the
+	 * cursor throws an <code>IllegalStateException</code>.
+	 * 
+	 * @param criteria
+	 *            an array containing the values to search for in the order of
+	 *            the database fields; <code>null</code> or empty values match
+	 *            any field value
+	 * @return a cursor over the matching records
+	 */
+	public Iterator<DBRecord> cursor(String[] criteria) {
+		return createCursor(criteria, false, true);
+	}
+
+	/**
+	 * Returns a cursor streaming all records whose fields equal the given
+	 * criteria exactly, in the order of their record numbers. The criteria
+	 * are treated like in {@link #findExact(String[], boolean)}, the cursor
+	 * behaves like the one returned by {@link #cursor(String[])}.
+	 * 
+	 * @param criteria
+	 *            an array containing the values to search for in the order of
+	 *            the database fields
+	 * @param matchAll
+	 *            <code>true</code> to combine the criteria with 'and',
+	 *            <code>false</code> to combine them with 'or'
+	 * @return a cursor over the matching records
+	 */
+	public Iterator<DBRecord> cursorExact(String[] criteria, boolean matchAll) {
+		return createCursor(criteria, true, matchAll);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public boolean isLocked(int recNo) throws RecordNotFoundException {
-		synchronized (database) {
-			return isRecordLocked(recNo);
-		}
+		return lockManager.isLocked(recNo);
 	}
 
 	/**
@@ -112,49 +428,535 @@ public class Data implements DBMain {
 	 */
 	@Override
 	public void lock(int recNo) throws RecordNotFoundException {
-		synchronized (database) {
-			
-			/*
-			 * Wait until a present lock is released. Also wait if the same
-			 * Thread is trying to acquire a lock on the same record id twice by
-			 * mistake.
-			 */
-			while (isLocked(recNo) && !isCurrentThreadOwnsLock(recNo)) {
+
+		/*
+		 * Wait until a present lock is handed over. A Thread trying to acquire
+		 * a lock on the same record id twice by mistake keeps its lock.
+		 */
+		try {
+			lockManager.lock(recNo);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		keepLockIfValid(recNo, Thread.currentThread());
+	}
+
+	/**
+	 * Locks the given record like {@link #lock(int)}, but waits at most the
+	 * given time for a lock held by another client. So a client which does
+	 * not release its lock cannot block the calling thread forever.
+	 * 
+	 * @param recNo
+	 *            the number of the record to lock
+	 * @param timeoutMillis
+	 *            the maximum time to wait for the lock in milliseconds
+	 * @throws RecordNotFoundException
+	 *             if the record does not exist or is marked as deleted
+	 * @throws RecordBusyException
+	 *             if the lock could not be acquired in time or the current
+	 *             thread has been interrupted while waiting for it
+	 */
+	public void tryLock(int recNo, long timeoutMillis)
+			throws RecordNotFoundException, RecordBusyException {
+		lock(recNo, Thread.currentThread(), timeoutMillis);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long lockRecord(int recNo, long timeoutMillis)
+			throws RecordNotFoundException, RecordBusyException {
+		long lockCookie = lockCookies.incrementAndGet();
+		lock(recNo, Long.valueOf(lockCookie), timeoutMillis);
+		return lockCookie;
+	}
+
+	/**
+	 * Locks all given records for the current thread, waiting at most the
+	 * given time for all of them together. The records are locked in
+	 * ascending order of their numbers, so clients locking overlapping sets
+	 * of records cannot deadlock each other. Either all records are locked or
+	 * none: If a lock cannot be acquired in time, the locks acquired so far
+	 * are released again. Locks the current thread holds already are kept.
+	 * 
+	 * @param recNos
+	 *            the numbers of the records to lock
+	 * @param timeoutMillis
+	 *            the maximum time to wait for all locks in milliseconds
+	 * @throws RecordNotFoundException
+	 *             if one of the records does not exist or is marked as
+	 *             deleted; the locks acquired by this call are released then
+	 * @throws RecordBusyException
+	 *             if the locks could not be acquired in time or the current
+	 *             thread has been interrupted while waiting for them
+	 */
+	public void lockAll(int[] recNos, long timeoutMillis)
+			throws RecordNotFoundException, RecordBusyException {
+		lockAll(recNos, Thread.currentThread(), timeoutMillis);
+	}
+
+	/**
+	 * Locks all given records like {@link #lockAll(int[], long)}, but the
+	 * locks are owned by the returned lock cookie instead of the current
+	 * thread (see {@link #lockRecord(int, long)}).
+	 * 
+	 * @param recNos
+	 *            the numbers of the records to lock
+	 * @param timeoutMillis
+	 *            the maximum time to wait for all locks in milliseconds
+	 * @return the lock cookie to pass when updating, deleting or unlocking the
+	 *         records
+	 * @throws RecordNotFoundException
+	 *             if one of the records does not exist or is marked as
+	 *             deleted; the locks acquired by this call are released then
+	 * @throws RecordBusyException
+	 *             if the locks could not be acquired in time or the current
+	 *             thread has been interrupted while waiting for them
+	 */
+	public long lockAllRecords(int[] recNos, long timeoutMillis)
+			throws RecordNotFoundException, RecordBusyException {
+		long lockCookie = lockCookies.incrementAndGet();
+		lockAll(recNos, Long.valueOf(lockCookie), timeoutMillis);
+		return lockCookie;
+	}
+
+	/**
+	 * Releases the locks of all given records held by the current thread.
+	 * 
+	 * @param recNos
+	 *            the numbers of the records to unlock
+	 */
+	public void unlockAll(int[] recNos) {
+		lockManager.unlockAll(recNos, Thread.currentThread());
+	}
+
+	/**
+	 * Releases the locks of all given records held with the given lock
+	 * cookie.
+	 * 
+	 * @param recNos
+	 *            the numbers of the records to unlock
+	 * @param lockCookie
+	 *            the cookie returned when locking the records
+	 */
+	public void unlockAll(int[] recNos, long lockCookie) {
+		lockManager.unlockAll(recNos, Long.valueOf(lockCookie));
+	}
+
+	/**
+	 * Sets when modifications are forced to disk (see {@link DurabilityMode}).
+	 * In the periodic mode the journal is forced every
+	 * {@link #DEFAULT_FORCE_INTERVAL} milliseconds and after
+	 * {@link #DEFAULT_FORCE_COMMITS} modifications. The default mode is
+	 * {@link DurabilityMode#STRICT}.
+	 * 
+	 * @param mode
+	 *            the durability mode to use
+	 */
+	public void setDurabilityMode(DurabilityMode mode) {
+		setDurabilityMode(mode, DEFAULT_FORCE_INTERVAL, DEFAULT_FORCE_COMMITS);
+	}
+
+	/**
+	 * Sets when modifications are forced to disk (see {@link DurabilityMode}).
+	 * The interval and the number of modifications only apply to the
+	 * periodic mode: The journal is forced when the interval has elapsed or
+	 * the number of modifications has been made since it has been forced the
+	 * last time, whichever comes first.
+	 * 
+	 * @param mode
+	 *            the durability mode to use
+	 * @param forceIntervalMillis
+	 *            the interval in which the journal is forced in milliseconds
+	 * @param forceCommits
+	 *            the number of modifications after which the journal is
+	 *            forced
+	 */
+	public synchronized void setDurabilityMode(DurabilityMode mode,
+			long forceIntervalMillis, int forceCommits) {
+		if (forceIntervalMillis <= 0 || forceCommits <= 0) {
+			throw new IllegalArgumentException("The force interval and the "
+					+ "number of modifications must be positive");
+		}
+		if (periodicForceTask != null) {
+			periodicForceTask.cancel();
+			periodicForceTask = null;
+		}
+		maxUnforcedCommits = forceCommits;
+		durabilityMode = mode;
+		if (mode == DurabilityMode.PERIODIC) {
+			periodicForceTask = new TimerTask() {
+				@Override
+				public void run() {
+					forceUnforcedCommits();
+				}
+			};
+			maintenanceTimer.schedule(periodicForceTask, forceIntervalMillis,
+					forceIntervalMillis);
+		}
+
+		// modifications made in the previous mode become durable now
+		unforcedCommits.set(0);
+		checkpoint(true);
+	}
+
+	/**
+	 * Indicates if all modifications made so far have been forced to disk.
+	 * 
+	 * @return <code>true</code> if all modifications are durable
+	 */
+	boolean isDurable() {
+		readLock.lock();
+		try {
+			return database.isDurable(database.getCommitTicket());
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Closes the database: The background tasks are stopped, all journaled
+	 * modifications are checkpointed into the database file and the database
+	 * file and its journal are closed. The <code>Data</code> object must not
+	 * be used afterwards. A background task already running when the timer is
+	 * stopped skips its work afterwards. Closing the database again does
+	 * nothing.
+	 * 
+	 * @throws IOException
+	 *             if the final checkpoint fails or the files cannot be closed
+	 *             properly
+	 */
+	public void close() throws IOException {
+		maintenanceTimer.cancel();
+		writeLock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			database.close();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the time record locks are leased for. A lock whose lease has
+	 * expired is released and handed over to the next waiting client; its
+	 * former owner can neither modify nor unlock the record anymore. The
+	 * owner of a lock can extend its lease by renewing it (see
+	 * {@link #renewLock(int)} and {@link #renewLock(int, long)}). <br>
+	 * The new lease time applies to locks acquired from now on. Leases expire
+	 * with a resolution of a tenth of a second.
+	 * 
+	 * @param leaseMillis
+	 *            the lease time in milliseconds; <code>0</code> if locks shall
+	 *            never expire, which is the default
+	 */
+	public void setLockLeaseTime(long leaseMillis) {
+		lockManager.setLeaseTime(leaseMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Renews the lease of the given record's lock held by the current thread,
+	 * i.e.: the lease time starts again.
+	 * 
+	 * @param recNo
+	 *            the number of the locked record
+	 * @return <code>true</code> if the lease has been renewed,
+	 *         <code>false</code> if the current thread does not hold the
+	 *         lock (anymore)
+	 */
+	public boolean renewLock(int recNo) {
+		return lockManager.renew(recNo, Thread.currentThread());
+	}
+
+	/**
+	 * Renews the lease of the given record's lock held with the given lock
+	 * cookie, i.e.: the lease time starts again.
+	 * 
+	 * @param recNo
+	 *            the number of the locked record
+	 * @param lockCookie
+	 *            the cookie returned when locking the record
+	 * @return <code>true</code> if the lease has been renewed,
+	 *         <code>false</code> if the lock is not held with the given
+	 *         cookie (anymore)
+	 */
+	public boolean renewLock(int recNo, long lockCookie) {
+		return lockManager.renew(recNo, Long.valueOf(lockCookie));
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of the record locks, e.g.: the
+	 * number of expired leases.
+	 * 
+	 * @return the current statistics of the record locks
+	 */
+	public LockStatistics getLockStatistics() {
+		return lockManager.getStatistics();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String[] read(int recNo) throws RecordNotFoundException {
+		readLock.lock();
+		try {
+			return readValues(recNo);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Reads a record together with its version stamp. The version stamp
+	 * changes with each modification of the record, so passing it to
+	 * {@link #compareAndUpdate(int, long, String[])} updates the record only
+	 * if it has not been modified in the meantime.
+	 * 
+	 * @param recNo
+	 *            the number of the record to read
+	 * @return the record with its values and its version stamp
+	 * @throws RecordNotFoundException
+	 *             if the given record number could not be found on the database
+	 */
+	public DBRecord readRecord(int recNo) throws RecordNotFoundException {
+		readLock.lock();
+		try {
+			return new DBRecord(recNo, readValues(recNo), database
+					.getVersion(recNo));
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Updates a record only if its version stamp is still the expected one,
+	 * i.e.: if it has not been modified since it has been read by
+	 * {@link #readRecord(int)}. Checking the version and updating the record
+	 * is done in one step while holding the database exclusively, so no
+	 * record lock is needed. <br>
+	 * A record locked by a client is never updated by this method, because
+	 * the lock owner expects it to remain unchanged until it is unlocked.
+	 * 
+	 * @param recNo
+	 *            the number of the record to update
+	 * @param expectedVersion
+	 *            the version stamp the record must still have
+	 * @param data
+	 *            the new data of the record
+	 * @return <code>true</code> if the record has been updated,
+	 *         <code>false</code> if it has been modified meanwhile or is
+	 *         locked by a client
+	 * @throws RecordNotFoundException
+	 *             if the given record number could not be found on the database
+	 */
+	public boolean compareAndUpdate(int recNo, long expectedVersion,
+			String[] data) throws RecordNotFoundException {
+		try {
+			long commitTicket;
+			writeLock.lock();
+			try {
+				if (database.getVersion(recNo) != expectedVersion
+						|| lockManager.isLocked(recNo)) {
+					return false;
+				}
+				database.update(recNo, data);
+				cache.put(recNo, database.getStoredValues(data));
+				commitTicket = database.getCommitTicket();
+			} finally {
+				writeLock.unlock();
+			}
+			commit(commitTicket);
+			return true;
+		} catch (IOException ioe) {
+			throw new RecordNotFoundException(formatDBAccessMessage(recNo), ioe);
+		}
+	}
+
+	/**
+	 * Imports the records given as comma separated values into the database.
+	 * Each line holds the values of one record in the order of the database
+	 * columns; an optional first line naming the columns is skipped. Records
+	 * already present are skipped. The records are appended to the database
+	 * file in large sequential writes, see
+	 * {@link DBFileAccess#appendAll(DBRecordSource)}. The reader is closed
+	 * afterwards.
+	 * 
+	 * @param reader
+	 *            the reader delivering the comma separated values
+	 * @return the numbers of imported and skipped records
+	 * @throws IOException
+	 *             if the input or the database file cannot be accessed
+	 *             properly or the input contains an invalid record
+	 */
+	public BulkLoadResult importCsv(Reader reader) throws IOException {
+		synchronized (compactionLock) {
+			writeLock.lock();
+			try {
+				DBRecordSource source = new DBCsvRecordSource(reader,
+						database.getColumnNames());
 				try {
-					database.wait();
-				} catch (InterruptedException ie) {
-					Thread.currentThread().interrupt();
-					return;
+					return database.appendAll(source);
+				} finally {
+					source.close();
 				}
+			} finally {
+				writeLock.unlock();
 			}
+		}
+	}
+
+	/**
+	 * Imports the valid records of another database file having the same
+	 * fields into the database. Records already present are skipped. The
+	 * source file is read and the records are appended to the database file
+	 * in large sequential chunks, see
+	 * {@link DBFileAccess#appendAll(DBRecordSource)}.
+	 * 
+	 * @param sourceFile
+	 *            the database file to import
+	 * @return the numbers of imported and skipped records
+	 * @throws IOException
+	 *             if one of the files cannot be accessed properly or the
+	 *             source file has different fields
+	 */
+	public BulkLoadResult importDatabase(File sourceFile) throws IOException {
+		synchronized (compactionLock) {
+			writeLock.lock();
 			try {
-				
-				// lock the record if it is still a valid one
-				if (database.isValidRecord(recNo)) {
-					lockRecord(recNo);
-				} else {
-					throw new RecordNotFoundException(
-							"Unable to lock not existing record '" + recNo
-									+ "'");
+				DBRecordSource source = new DBFileRecordSource(sourceFile,
+						database.getHeader(), database.getCodec());
+				try {
+					return database.appendAll(source);
+				} finally {
+					source.close();
 				}
-			} catch (IOException io) {
-				throw new RecordNotFoundException(io.getMessage(), io);
+			} finally {
+				writeLock.unlock();
 			}
 		}
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Exports all valid records to the given writer in the given format. The
+	 * export shows the records as they have been when it started, even if
+	 * they are modified meanwhile. It reads the database file sequentially in
+	 * large chunks and needs exclusive access to the database only to take
+	 * and to release the snapshot of the records, so other clients are not
+	 * blocked while the records are written. The memory needed does not
+	 * depend on the size of the database file. <br>
+	 * The writer is flushed, but not closed afterwards. The database file
+	 * cannot be compacted during the export.
+	 * 
+	 * @param writer
+	 *            the writer to write the records to
+	 * @param format
+	 *            the format to write the records in
+	 * @return the number of exported records
+	 * @throws IOException
+	 *             if the database file cannot be read or the records cannot
+	 *             be written
 	 */
-	@Override
-	public String[] read(int recNo) throws RecordNotFoundException {
-		synchronized (database) {
+	public int export(Writer writer, ExportFormat format) throws IOException {
+		synchronized (compactionLock) {
+			DBSnapshot snapshot;
+			writeLock.lock();
 			try {
-				return database.read(recNo);
+				snapshot = database.openSnapshot();
+			} finally {
+				writeLock.unlock();
+			}
+			try {
+				String[] columnNames = database.getColumnNames();
+				DBRecordCodec codec = database.getCodec();
+				int recordLength = codec.getRecordLength();
+				ByteBuffer chunk = ByteBuffer.allocate(EXPORT_CHUNK_SIZE
+						- EXPORT_CHUNK_SIZE % recordLength);
+				Writer out = new BufferedWriter(writer, EXPORT_CHUNK_SIZE);
+				format.writeHeader(out, columnNames);
+
+				int exported = 0;
+				int slot = 0;
+				int count;
+				while ((count = database.readSnapshot(snapshot, slot,
+						chunk)) > 0) {
+					byte[] buf = chunk.array();
+					for (int offset = 0; offset < count * recordLength;
+							offset += recordLength) {
+						if (buf[offset] == DBFileAccess.RECORD_VALID) {
+							format.writeRecord(out, columnNames, codec.decode(
+									buf, offset));
+							exported++;
+						}
+					}
+					slot += count;
+				}
+				out.flush();
+				return exported;
+			} finally {
+				writeLock.lock();
+				try {
+					database.closeSnapshot(snapshot);
+				} finally {
+					writeLock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the given records at once, i.e.: with one shared access to the
+	 * database. Records found in the cache are taken from there. The others
+	 * are read in the order of their positions in the database file, and
+	 * records lying close to each other are fetched by one read operation.
+	 * 
+	 * @param recNos
+	 *            the numbers of the records to read, in any order
+	 * @return the data of the records in the order of the given record
+	 *         numbers; <code>null</code> for each record not existing or
+	 *         marked as deleted
+	 * @throws RecordNotFoundException
+	 *             if the database cannot be accessed properly
+	 */
+	public String[][] readAll(int[] recNos) throws RecordNotFoundException {
+		readLock.lock();
+		try {
+			String[][] records = new String[recNos.length][];
+			int[] missing = new int[recNos.length];
+			int[] missingIndexes = new int[recNos.length];
+			int missingCount = 0;
+			for (int i = 0; i < recNos.length; i++) {
+				records[i] = cache.get(recNos[i]);
+				if (records[i] == null) {
+					missing[missingCount] = recNos[i];
+					missingIndexes[missingCount++] = i;
+				}
+			}
+			if (missingCount == 0) {
+				return records;
+			}
+
+			try {
+				String[][] read = database.readAll(Arrays.copyOf(missing,
+						missingCount));
+				for (int i = 0; i < missingCount; i++) {
+					if (read[i] != null) {
+						cache.put(missing[i], read[i]);
+						records[missingIndexes[i]] = read[i];
+					}
+				}
+				return records;
 			} catch (IOException ioe) {
-				throw new RecordNotFoundException(formatDBAccessMessage(recNo),
+				throw new RecordNotFoundException(formatDBAccessMessage(null),
 						ioe);
 			}
+		} finally {
+			readLock.unlock();
 		}
 	}
 
@@ -163,44 +965,284 @@ public class Data implements DBMain {
 	 */
 	@Override
 	public void unlock(int recNo) throws RecordNotFoundException {
-		synchronized (database) {
-			
-			/*
-			 * The lock must be released in any case - no matter if the record
-			 * is valid or not.
-			 */
+
+		/*
+		 * The lock must be released in any case - no matter if the record is
+		 * valid or not. It is handed over to the next waiting Thread.
+		 */
+		lockManager.unlock(recNo);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void unlock(int recNo, long lockCookie)
+			throws RecordNotFoundException {
+		lockManager.unlock(recNo, Long.valueOf(lockCookie));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void update(int recNo, String[] data) throws RecordNotFoundException {
+		update(recNo, data, Thread.currentThread());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void update(int recNo, String[] data, long lockCookie)
+			throws RecordNotFoundException {
+		update(recNo, data, Long.valueOf(lockCookie));
+	}
+
+	/**
+	 * Updates the given record if it is locked by the given owner.
+	 * 
+	 * @param recNo
+	 *            the number of the record to update
+	 * @param data
+	 *            the new data of the record
+	 * @param owner
+	 *            the owner of the record lock: a thread or a lock cookie
+	 * @throws RecordNotFoundException
+	 *             if the record does not exist or is not locked by the given
+	 *             owner
+	 */
+	private void update(int recNo, String[] data, Object owner)
+			throws RecordNotFoundException {
+		try {
+			long commitTicket;
+			writeLock.lock();
 			try {
-				if (isLocked(recNo) && isCurrentThreadOwnsLock(recNo)) {
-					unlockRecord(recNo);
-				}
-				
-			/*
-			 * Finally needed to be sure all waiting Threads are notified
-			 * even if an Exception occurs.
-			 */
+				checkLockOwner(recNo, owner);
+				database.update(recNo, data);
+				cache.put(recNo, database.getStoredValues(data));
+				commitTicket = database.getCommitTicket();
 			} finally {
-				database.notifyAll();
+				writeLock.unlock();
 			}
+			commit(commitTicket);
+		} catch (IOException ioe) {
+			throw new RecordNotFoundException(formatDBAccessMessage(recNo), ioe);
 		}
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Compacts the database file, i.e.: removes all deleted records from it.
+	 * The valid records are copied into a new file which replaces the
+	 * database file afterwards. Clients may continue to use the database
+	 * meanwhile: Only the start and the final swap of the files need
+	 * exclusive access, while the bulk of the records is copied without it.
+	 * Records modified during the copy are copied again before the swap. <br>
+	 * The record numbers do not change. Until the database file is opened the
+	 * next time, the records are mapped to their new positions internally.
+	 * 
+	 * @return the number of bytes reclaimed and the duration of the
+	 *         compaction
+	 * @throws IOException
+	 *             if the database file or its copy cannot be accessed
+	 *             properly; the database file is left untouched in this case
 	 */
-	@Override
-	public void update(int recNo, String[] data) throws RecordNotFoundException {
-		synchronized (database) {
+	public CompactionResult compact() throws IOException {
+		synchronized (compactionLock) {
+			long start = System.currentTimeMillis();
+			writeLock.lock();
+			try {
+				database.beginCompaction();
+			} finally {
+				writeLock.unlock();
+			}
+			boolean finished = false;
 			try {
-				if (isCurrentThreadOwnsLock(recNo)) {
-					database.update(recNo, data);
-				} else {
-					throw new RecordNotFoundException(
-							formatNotLockOwnerMessage(recNo));
+				database.copyCompactedRecords();
+				long reclaimedBytes;
+				writeLock.lock();
+				try {
+					reclaimedBytes = database.finishCompaction();
+				} finally {
+					writeLock.unlock();
 				}
-			} catch (IOException ioe) {
-				throw new RecordNotFoundException(formatDBAccessMessage(recNo),
-						ioe);
+				finished = true;
+				CompactionResult result = new CompactionResult(reclaimedBytes,
+						System.currentTimeMillis() - start);
+				LOGGER.info(result.toString());
+				return result;
+			} finally {
+				if (!finished) {
+					writeLock.lock();
+					try {
+						database.abortCompaction();
+					} finally {
+						writeLock.unlock();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the record cache's counters. It shows how often
+	 * reads have been answered from the cache and how many records had to be
+	 * evicted, which helps to choose the cache capacity.
+	 * 
+	 * @return the current statistics of the record cache
+	 */
+	public RecordCacheStatistics getCacheStatistics() {
+		return cache.getStatistics();
+	}
+
+	/**
+	 * Makes the modifications up to the given commit ticket durable. In the
+	 * write-behind mode nothing is done here because the next checkpoint
+	 * takes care of it.
+	 * 
+	 * @param commitTicket
+	 *            the ticket taken after the modification
+	 * @throws IOException
+	 *             if the journal cannot be written properly
+	 */
+	private void commit(long commitTicket) throws IOException {
+		if (writeBehind) {
+			return;
+		}
+		switch (durabilityMode) {
+		case ASYNC:
+			database.commit(commitTicket, false);
+			break;
+		case PERIODIC:
+			boolean force = unforcedCommits.incrementAndGet()
+					>= maxUnforcedCommits;
+			if (force) {
+				unforcedCommits.set(0);
+			}
+			database.commit(commitTicket, force);
+			break;
+		default:
+			database.commit(commitTicket, true);
+		}
+	}
+
+	/**
+	 * Forces all modifications made so far to disk if some of them have not
+	 * been forced yet. Runs periodically in the periodic durability mode. The
+	 * read lock keeps the database from being closed meanwhile.
+	 */
+	private void forceUnforcedCommits() {
+		if (unforcedCommits.getAndSet(0) == 0) {
+			return;
+		}
+		readLock.lock();
+		try {
+			if (!closed) {
+				database.commit(database.getCommitTicket(), true);
+			}
+		} catch (IOException ioe) {
+			LOGGER.log(Level.WARNING, "Forcing the database journal failed",
+					ioe);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Creates a cursor over the records matching the given criteria.
+	 * 
+	 * @param criteria
+	 *            an array containing the values to search for
+	 * @param exact
+	 *            <code>true</code> if a value must equal its criterion
+	 * @param matchAll
+	 *            <code>true</code> if a record must match all criteria
+	 * @return the cursor
+	 */
+	private Iterator<DBRecord> createCursor(String[] criteria, boolean exact,
+			boolean matchAll) {
+		readLock.lock();
+		try {
+			DBQuery query = database.createQuery(criteria, exact, matchAll);
+			return new DBRecordCursor(this, query, database
+					.getCandidates(query));
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Reads the next batch of records for a cursor. See
+	 * {@link DBFileAccess#readMatching(DBQuery, BitSet, int, int, List)}.
+	 * 
+	 * @param query
+	 *            the query to match
+	 * @param candidates
+	 *            the candidate records or <code>null</code> for all records
+	 * @param fromRecNo
+	 *            the record number to start at
+	 * @param maxRecords
+	 *            the maximum number of records to add
+	 * @param records
+	 *            the list to add the matching records to
+	 * @return the record number to continue at or <code>-1</code> if all
+	 *         candidates have been read
+	 */
+	int readMatching(DBQuery query, BitSet candidates, int fromRecNo,
+			int maxRecords, List<DBRecord> records) {
+		readLock.lock();
+		try {
+			return database.readMatching(query, candidates, fromRecNo,
+					maxRecords, records);
+		} catch (IOException ioe) {
+			throw new IllegalStateException(formatDBAccessMessage(null), ioe);
+		} catch (RecordNotFoundException rnfe) {
+			throw new IllegalStateException(formatDBAccessMessage(null), rnfe);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes all journaled records to the database file. This method is
+	 * executed regularly by a background task. A failed checkpoint is just
+	 * logged because the records remain safe in the journal and the next
+	 * checkpoint tries again. Once the database has been closed nothing is
+	 * done.
+	 * 
+	 * @param force
+	 *            <code>true</code> if the records must be forced to disk
+	 */
+	private void checkpoint(boolean force) {
+		writeLock.lock();
+		try {
+			if (!closed) {
+				database.checkpoint(force);
 			}
+		} catch (IOException ioe) {
+			LOGGER.log(Level.WARNING, "Database checkpoint failed", ioe);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Checks that the given owner holds the lock of the given record. The
+	 * check must be made while holding the write lock of the database: A
+	 * lease expiring afterwards cannot let another client modify the record
+	 * before the modification of the checking owner is done.
+	 * 
+	 * @param recNo
+	 *            the number of the record to modify
+	 * @param owner
+	 *            the owner of the record lock: a thread or a lock cookie
+	 * @throws RecordNotFoundException
+	 *             if the given owner does not hold the lock (anymore)
+	 */
+	private void checkLockOwner(int recNo, Object owner)
+			throws RecordNotFoundException {
+		if (!lockManager.isOwnedBy(recNo, owner)) {
+			throw new RecordNotFoundException(formatNotLockOwnerMessage(recNo));
 		}
 	}
 
@@ -229,48 +1271,146 @@ public class Data implements DBMain {
 	}
 
 	/**
-	 * Checks if the current thread does own the lock of the given record.
+	 * Locks the given record for the given owner, waiting at most the given
+	 * time for a lock held by another owner.
 	 * 
 	 * @param recNo
-	 *            the number of the record to check
-	 * @return <code>true</code> if the current thread owns the lock,
-	 *         <code>false</code> otherwise
+	 *            the number of the record to lock
+	 * @param owner
+	 *            the owner of the lock: a thread or a lock cookie
+	 * @param timeoutMillis
+	 *            the maximum time to wait for the lock in milliseconds
+	 * @throws RecordNotFoundException
+	 *             if the record does not exist or is marked as deleted
+	 * @throws RecordBusyException
+	 *             if the lock could not be acquired in time or the current
+	 *             thread has been interrupted while waiting for it
 	 */
-	private boolean isCurrentThreadOwnsLock(int recNo) {
-		Long currentThreadId = Thread.currentThread().getId();
-		return currentThreadId.equals(locks.get(recNo));
+	private void lock(int recNo, Object owner, long timeoutMillis)
+			throws RecordNotFoundException, RecordBusyException {
+		try {
+			if (!lockManager.tryLock(recNo, owner, timeoutMillis,
+					TimeUnit.MILLISECONDS)) {
+				throw new RecordBusyException(String.format(
+						ERROR_MESSAGE_RECORD_BUSY, recNo, timeoutMillis));
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new RecordBusyException("Interrupted while waiting for the "
+					+ "lock of record '" + recNo + "'", ie);
+		}
+		keepLockIfValid(recNo, owner);
 	}
 
 	/**
-	 * Checks if the given record is locked.
+	 * Locks all given records for the given owner, waiting at most the given
+	 * time for all of them together. The locks are only kept if all records
+	 * are valid ones. Otherwise only the locks acquired by this call are
+	 * released; locks the owner has held before are kept.
 	 * 
-	 * @param recNo
-	 *            the number of the record to check
-	 * @return <code>true</code> if the record is locked, <code>false</code>
-	 *         otherwise
+	 * @param recNos
+	 *            the numbers of the records to lock
+	 * @param owner
+	 *            the owner of the locks: a thread or a lock cookie
+	 * @param timeoutMillis
+	 *            the maximum time to wait for all locks in milliseconds
+	 * @throws RecordNotFoundException
+	 *             if one of the records does not exist or is marked as
+	 *             deleted
+	 * @throws RecordBusyException
+	 *             if the locks could not be acquired in time or the current
+	 *             thread has been interrupted while waiting for them
 	 */
-	private boolean isRecordLocked(int recNo) {
-		return locks.containsKey(recNo);
+	private void lockAll(int[] recNos, Object owner, long timeoutMillis)
+			throws RecordNotFoundException, RecordBusyException {
+		int[] newLocks = new int[recNos.length];
+		int newLockCount = 0;
+		for (int recNo : recNos) {
+			if (!lockManager.isOwnedBy(recNo, owner)) {
+				newLocks[newLockCount++] = recNo;
+			}
+		}
+		try {
+			if (!lockManager.tryLockAll(recNos, owner, timeoutMillis,
+					TimeUnit.MILLISECONDS)) {
+				throw new RecordBusyException(String.format(
+						ERROR_MESSAGE_RECORDS_BUSY, Arrays.toString(recNos),
+						timeoutMillis));
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new RecordBusyException("Interrupted while waiting for the "
+					+ "locks of records " + Arrays.toString(recNos), ie);
+		}
+		for (int recNo : recNos) {
+			if (!isValidRecord(recNo)) {
+				lockManager.unlockAll(Arrays.copyOf(newLocks, newLockCount),
+						owner);
+				throw new RecordNotFoundException(
+						"Unable to lock not existing record '" + recNo + "'");
+			}
+		}
 	}
 
 	/**
-	 * Locks a record.
+	 * Keeps the lock of the given record just acquired only if the record is
+	 * still a valid one.
 	 * 
 	 * @param recNo
-	 *            the number of the record to lock
+	 *            the number of the locked record
+	 * @param owner
+	 *            the owner of the lock: a thread or a lock cookie
+	 * @throws RecordNotFoundException
+	 *             if the record does not exist or is marked as deleted; the
+	 *             lock has been released then
 	 */
-	private void lockRecord(int recNo) {
-		locks.put(recNo, Thread.currentThread().getId());
+	private void keepLockIfValid(int recNo, Object owner)
+			throws RecordNotFoundException {
+		if (!isValidRecord(recNo)) {
+			lockManager.unlock(recNo, owner);
+			throw new RecordNotFoundException(
+					"Unable to lock not existing record '" + recNo + "'");
+		}
 	}
 
 	/**
-	 * Releases the lock from a record.
+	 * Reads the values of a record from the cache or, if not cached, from the
+	 * database. The read or the write lock of the database must be held.
 	 * 
 	 * @param recNo
-	 *            the number of the record to unlock
+	 *            the number of the record to read
+	 * @return the values of the record
+	 * @throws RecordNotFoundException
+	 *             if the record does not exist or cannot be read
 	 */
-	private void unlockRecord(int recNo) {
-		locks.remove(recNo);
+	private String[] readValues(int recNo) throws RecordNotFoundException {
+		String[] record = cache.get(recNo);
+		if (record != null) {
+			return record;
+		}
+		try {
+			record = database.read(recNo);
+			cache.put(recNo, record);
+			return record;
+		} catch (IOException ioe) {
+			throw new RecordNotFoundException(formatDBAccessMessage(recNo), ioe);
+		}
 	}
 
+	/**
+	 * Checks if the given record is a valid one, i.e.: exists and is not
+	 * marked as deleted.
+	 * 
+	 * @param recNo
+	 *            the number of the record to check
+	 * @return <code>true</code> if the record is valid
+	 */
+	private boolean isValidRecord(int recNo) {
+		readLock.lock();
+		try {
+			return database.isValidRecord(recNo);
+		} finally {
+			readLock.unlock();
+		}
+	}
 }
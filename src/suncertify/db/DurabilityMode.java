@@ -0,0 +1,35 @@
+package suncertify.db;
+
+/**
+ * The <code>DurabilityMode</code> enumeration defines when a modification
+ * made by <code>Data</code> is forced to disk, i.e.: survives a power loss.
+ * Each modification is written to the write-ahead journal in any case; the
+ * modes differ in how often the journal is forced, which trades throughput
+ * against the modifications a power loss may take. The background
+ * checkpoints, which copy the journaled modifications into the database
+ * file, force them to disk unless the mode is <code>ASYNC</code>. <br>
+ * The mode does not apply to the write-behind storage mode (see
+ * {@link StorageMode#MEMORY_WRITE_BEHIND}), where modifications are written
+ * by the background checkpoints only.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+public enum DurabilityMode {
+
+	/** A modification returns after it has been written to the journal file,
+	 * which is flushed to disk by the operating system, as is the database
+	 * file after a checkpoint. It survives a crash of the application, but a
+	 * power loss may take it or leave the record half written. Switching to
+	 * another mode forces all modifications to disk. */
+	ASYNC,
+
+	/** Like <code>ASYNC</code>, but the journal is forced to disk
+	 * periodically and after a number of modifications, which limits the
+	 * modifications a power loss may take. */
+	PERIODIC,
+
+	/** A modification returns after it has been forced to disk. Modifications
+	 * committing at the same time share one forced write. */
+	STRICT;
+}
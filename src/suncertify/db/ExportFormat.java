@@ -0,0 +1,125 @@
+package suncertify.db;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The <code>ExportFormat</code> enumeration defines the formats the records
+ * of the database can be exported in by
+ * {@link Data#export(Writer, ExportFormat)}.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+public enum ExportFormat {
+
+	/** Comma separated values, one record per line, preceded by a line naming
+	 * the columns. Values containing commas, quotes or line breaks are
+	 * enclosed in double quotes. The output can be imported again by
+	 * {@link Data#importCsv(java.io.Reader)}. */
+	CSV {
+		@Override
+		void writeHeader(Writer out, String[] columnNames) throws IOException {
+			writeRecord(out, columnNames, columnNames);
+		}
+
+		@Override
+		void writeRecord(Writer out, String[] columnNames, String[] values)
+				throws IOException {
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) {
+					out.write(',');
+				}
+				String value = values[i];
+				if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+						&& value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+					out.write(value);
+				} else {
+					out.write('"');
+					out.write(value.replace("\"", "\"\""));
+					out.write('"');
+				}
+			}
+			out.write("\r\n");
+		}
+	},
+
+	/** JSON Lines, i.e.: one JSON object per line mapping the column names to
+	 * the values of one record. */
+	JSON_LINES {
+		@Override
+		void writeHeader(Writer out, String[] columnNames) {
+			// every line names its columns
+		}
+
+		@Override
+		void writeRecord(Writer out, String[] columnNames, String[] values)
+				throws IOException {
+			out.write('{');
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) {
+					out.write(',');
+				}
+				writeString(out, columnNames[i]);
+				out.write(':');
+				writeString(out, values[i]);
+			}
+			out.write("}\n");
+		}
+
+		/**
+		 * Writes the given value as JSON string.
+		 * 
+		 * @param out
+		 *            the writer to write to
+		 * @param value
+		 *            the value to write
+		 * @throws IOException
+		 *             if the value cannot be written
+		 */
+		private void writeString(Writer out, String value) throws IOException {
+			out.write('"');
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == '"' || c == '\\') {
+					out.write('\\');
+					out.write(c);
+				} else if (c < ' ') {
+					out.write(String.format("\\u%04x", (int) c));
+				} else {
+					out.write(c);
+				}
+			}
+			out.write('"');
+		}
+	};
+
+	/**
+	 * Writes the part of the output preceding the records.
+	 * 
+	 * @param out
+	 *            the writer to write to
+	 * @param columnNames
+	 *            the names of the database columns
+	 * @throws IOException
+	 *             if the output cannot be written
+	 */
+	abstract void writeHeader(Writer out, String[] columnNames)
+			throws IOException;
+
+	/**
+	 * Writes the given record.
+	 * 
+	 * @param out
+	 *            the writer to write to
+	 * @param columnNames
+	 *            the names of the database columns
+	 * @param values
+	 *            the values of the record in the order of the columns
+	 * @throws IOException
+	 *             if the output cannot be written
+	 */
+	abstract void writeRecord(Writer out, String[] columnNames,
+			String[] values) throws IOException;
+
+}
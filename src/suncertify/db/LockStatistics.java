@@ -0,0 +1,93 @@
+package suncertify.db;
+
+/**
+ * An immutable snapshot of the counters of the record locks managed by
+ * <code>Data</code>. Expired leases indicate clients which have not released
+ * their locks in time, e.g.: because they have died while holding them.
+ *
+ * @author Jochen R. Meyer
+ *
+ */
+public final class LockStatistics {
+
+	/** The number of records locked at the time of the snapshot */
+	private final int lockedCount;
+
+	/** The number of clients waiting for a lock at the time of the snapshot */
+	private final int waitingCount;
+
+	/** The number of locks released because their lease has expired */
+	private final long expiredCount;
+
+	/** The number of leases renewed by their owners */
+	private final long renewedCount;
+
+	/**
+	 * Constructs the snapshot with the given counter values.
+	 *
+	 * @param lockedCount
+	 *            the number of locked records
+	 * @param waitingCount
+	 *            the number of waiting clients
+	 * @param expiredCount
+	 *            the number of expired leases
+	 * @param renewedCount
+	 *            the number of renewed leases
+	 */
+	LockStatistics(int lockedCount, int waitingCount, long expiredCount,
+			long renewedCount) {
+		this.lockedCount = lockedCount;
+		this.waitingCount = waitingCount;
+		this.expiredCount = expiredCount;
+		this.renewedCount = renewedCount;
+	}
+
+	/**
+	 * Returns the number of records locked at the time of the snapshot.
+	 *
+	 * @return the number of locked records
+	 */
+	public int getLockedCount() {
+		return lockedCount;
+	}
+
+	/**
+	 * Returns the number of clients waiting for a record lock at the time of
+	 * the snapshot.
+	 *
+	 * @return the number of waiting clients
+	 */
+	public int getWaitingCount() {
+		return waitingCount;
+	}
+
+	/**
+	 * Returns the number of locks released because their owners have not
+	 * renewed their leases in time.
+	 *
+	 * @return the number of expired leases
+	 */
+	public long getExpiredCount() {
+		return expiredCount;
+	}
+
+	/**
+	 * Returns the number of leases renewed by the owners of the locks.
+	 *
+	 * @return the number of renewed leases
+	 */
+	public long getRenewedCount() {
+		return renewedCount;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return String.format("Record locks: %d locked, %d waiting, "
+				+ "%d leases expired, %d leases renewed", lockedCount,
+				waitingCount, expiredCount, renewedCount);
+	}
+
+}
@@ -0,0 +1,45 @@
+package suncertify.db;
+
+/**
+ * This exception is thrown by the database layer if the lock of a record could
+ * not be acquired in time because another client holds it.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+public class RecordBusyException extends Exception {
+
+	/** The serial version of this class */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs the exception without any arguments.
+	 */
+	public RecordBusyException() {
+		super();
+	}
+
+	/**
+	 * Constructs the exception with a detail message.
+	 * 
+	 * @param message
+	 *            a detail message about the reason for the exception's throwing
+	 */
+	public RecordBusyException(String message) {
+		super(message);
+	}
+
+	/**
+	 * Constructs the exception with a detail message and the cause for throwing
+	 * it.
+	 * 
+	 * @param message
+	 *            a detail message about the reason for the exception's throwing
+	 * @param cause
+	 *            the cause for throwing this exception
+	 */
+	public RecordBusyException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
@@ -0,0 +1,118 @@
+package suncertify.db;
+
+/**
+ * An immutable snapshot of the counters of the record cache used by
+ * <code>Data</code>. It helps to decide whether the cache is sized properly:
+ * Many evictions together with a low hit rate indicate a cache too small for
+ * the records in use.
+ *
+ * @author Jochen R. Meyer
+ *
+ */
+public final class RecordCacheStatistics {
+
+	/** The maximum number of cached records */
+	private final int capacity;
+
+	/** The number of records cached at the time of the snapshot */
+	private final int size;
+
+	/** The number of successful lookups */
+	private final long hitCount;
+
+	/** The number of failed lookups */
+	private final long missCount;
+
+	/** The number of records evicted because the cache was full */
+	private final long evictionCount;
+
+	/**
+	 * Constructs the snapshot with the given counter values.
+	 *
+	 * @param capacity
+	 *            the maximum number of cached records
+	 * @param size
+	 *            the number of cached records
+	 * @param hitCount
+	 *            the number of successful lookups
+	 * @param missCount
+	 *            the number of failed lookups
+	 * @param evictionCount
+	 *            the number of evicted records
+	 */
+	RecordCacheStatistics(int capacity, int size, long hitCount,
+			long missCount, long evictionCount) {
+		this.capacity = capacity;
+		this.size = size;
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+	}
+
+	/**
+	 * Returns the maximum number of cached records.
+	 *
+	 * @return the capacity of the cache
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of records cached at the time of the snapshot.
+	 *
+	 * @return the number of cached records
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of lookups answered by the cache.
+	 *
+	 * @return the number of cache hits
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of lookups which had to read the database file.
+	 *
+	 * @return the number of cache misses
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the number of records removed from the cache to make room for
+	 * others.
+	 *
+	 * @return the number of evictions
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Returns the share of lookups answered by the cache.
+	 *
+	 * @return the hit rate between <code>0</code> and <code>1</code>
+	 */
+	public double getHitRate() {
+		long lookups = hitCount + missCount;
+		return lookups == 0 ? 0 : (double) hitCount / lookups;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return String.format("Record cache: %d/%d records, %d hits, "
+				+ "%d misses, %d evictions (hit rate %.1f%%)", size, capacity,
+				hitCount, missCount, evictionCount, getHitRate() * 100);
+	}
+
+}
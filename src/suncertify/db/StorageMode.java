@@ -0,0 +1,67 @@
+package suncertify.db;
+
+/**
+ * The <code>StorageMode</code> enumeration defines how <code>Data</code> holds
+ * the records of its database file. <br>
+ * In the memory-resident modes the whole data section is loaded into memory
+ * when the database file is opened. All reads and searches are served from
+ * memory then, while modifications are still written to the database file.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+public enum StorageMode {
+
+	/** Records are read from the database file when they are needed. */
+	FILE(false, false),
+
+	/** Records are held in memory. A modification returns after it has been
+	 * written durably. */
+	MEMORY_WRITE_THROUGH(true, false),
+
+	/** Records are held in memory. A modification returns immediately and is
+	 * written durably by the next background checkpoint, i.e.: a crash may
+	 * lose the modifications of the last checkpoint interval. */
+	MEMORY_WRITE_BEHIND(true, true);
+
+	/** Indicates if the records are held in memory */
+	private final boolean memoryResident;
+
+	/** Indicates if modifications are written in the background */
+	private final boolean writeBehind;
+
+	/**
+	 * Constructs a storage mode.
+	 * 
+	 * @param memoryResident
+	 *            <code>true</code> if the records are held in memory
+	 * @param writeBehind
+	 *            <code>true</code> if modifications are written in the
+	 *            background
+	 */
+	private StorageMode(boolean memoryResident, boolean writeBehind) {
+		this.memoryResident = memoryResident;
+		this.writeBehind = writeBehind;
+	}
+
+	/**
+	 * Indicates if the records are held in memory.
+	 * 
+	 * @return <code>true</code> if the records are held in memory,
+	 *         <code>false</code> if they are read from the database file
+	 */
+	public boolean isMemoryResident() {
+		return memoryResident;
+	}
+
+	/**
+	 * Indicates if modifications are written durably in the background.
+	 * 
+	 * @return <code>true</code> if a modification returns before it is
+	 *         durable, <code>false</code> otherwise
+	 */
+	public boolean isWriteBehind() {
+		return writeBehind;
+	}
+
+}
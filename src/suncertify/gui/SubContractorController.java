@@ -15,6 +15,7 @@ import suncertify.domain.SubContractorHandler;
 import suncertify.service.SearchCriteria;
 import suncertify.service.ServiceFactory;
 import suncertify.service.SubContractorAlreadyBookedException;
+import suncertify.service.SubContractorBusyException;
 import suncertify.service.SubContractorNotFoundException;
 import suncertify.service.SubContractorService;
 
@@ -179,6 +180,9 @@ public class SubContractorController {
 				} catch (SubContractorAlreadyBookedException sabe) {
 					handleBookException(sabe, subContractor.getRecNo());
 					return;
+				} catch (SubContractorBusyException sbe) {
+					handleBookException(sbe, subContractor.getRecNo());
+					return;
 				} catch (SubContractorNotFoundException snfe) {
 					handleBookException(snfe, subContractor.getRecNo());
 					return;
@@ -234,7 +238,8 @@ public class SubContractorController {
 			return;
 		} catch (Exception e) {
 			if (e instanceof SubContractorNotFoundException
-					|| e instanceof SubContractorAlreadyBookedException) {
+					|| e instanceof SubContractorAlreadyBookedException
+					|| e instanceof SubContractorBusyException) {
 				LOGGER.warning("Error while clearing " + "SubContractor "
 						+ "booking: " + e.getMessage());
 				fireStateChangedStatusInfo("");
@@ -0,0 +1,31 @@
+package suncertify.service;
+
+import java.io.IOException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * The receiver of an export made by the server (see
+ * {@link SubContractorServer#export(ExportSink, suncertify.db.ExportFormat)}).
+ * The exporting client provides it as a remote object, so the server can
+ * stream the exported records to the client chunk by chunk while reading
+ * them.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+public interface ExportSink extends Remote {
+
+	/**
+	 * Receives the next chunk of the exported records.
+	 * 
+	 * @param chunk
+	 *            the next characters of the export
+	 * @throws RemoteException
+	 *             if a server-client communication error occurs
+	 * @throws IOException
+	 *             if the chunk cannot be written on the client side
+	 */
+	public void write(String chunk) throws RemoteException, IOException;
+
+}
@@ -0,0 +1,56 @@
+package suncertify.service;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A <code>Writer</code> passing everything written to it to an
+ * <code>ExportSink</code> of a client. It is used on the server side to
+ * export the records to a client, so each write is a remote call: The writer
+ * is expected to be buffered by its user.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+class ExportSinkWriter extends Writer {
+
+	/** The sink of the client receiving the export */
+	private ExportSink sink;
+
+	/**
+	 * Constructs the writer for the given sink.
+	 * 
+	 * @param sink
+	 *            the sink of the client to write to
+	 */
+	ExportSinkWriter(ExportSink sink) {
+		this.sink = sink;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		if (len > 0) {
+			sink.write(new String(cbuf, off, len));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void flush() {
+		// every write is passed to the sink immediately
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		// the sink is owned by the client
+	}
+
+}
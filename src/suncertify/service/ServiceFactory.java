@@ -2,8 +2,12 @@ package suncertify.service;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.net.InetAddress;
+import java.net.MalformedURLException;
 import java.net.UnknownHostException;
+import java.rmi.Naming;
+import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
@@ -18,6 +22,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import suncertify.PropertyManager;
 import suncertify.Util;
 import suncertify.db.Data;
+import suncertify.db.ExportFormat;
 
 /**
  * The <code>ServiceFactory</code> class is a Singleton and provides data access
@@ -62,6 +67,10 @@ public final class ServiceFactory {
 		return servFac;
 	}
 
+	/** The service of the standalone client currently connected to its
+	 * database file; <code>null</code> if there is none */
+	private SubContractorServiceLocal localService;
+
 	/** Constructs the object without any arguments */
 	private ServiceFactory() {
 	}
@@ -76,13 +85,15 @@ public final class ServiceFactory {
 	 */
 	public SubContractorService getLocalService() {
 		File dbFile = getDBFileFromUser(true);
-		return new SubContractorServiceLocal(dbFile);
+		return openLocalService(dbFile);
 	}
 
 	/**
 	 * Returns a newly created <code>SubContractorService</code> implementation
 	 * for the standalone client. This method is used when the users changes the
-	 * database file.
+	 * database file. The database file of the previous service is closed
+	 * before the new one is opened, i.e.: the previous service must not be
+	 * used afterwards.
 	 * 
 	 * @return the new <code>SubContractorService</code> implementation for the
 	 *         standalone client
@@ -92,8 +103,31 @@ public final class ServiceFactory {
 		if (dbFile == null) { // Input canceled
 			return null;
 		} else {
-			return new SubContractorServiceLocal(dbFile);
+			return openLocalService(dbFile);
+		}
+	}
+
+	/**
+	 * Closes the database file of the current standalone service, if there is
+	 * one, and opens a new service on the given database file.
+	 * 
+	 * @param dbFile
+	 *            the database file to connect to
+	 * @return the new service of the standalone client
+	 */
+	private synchronized SubContractorService openLocalService(File dbFile) {
+		if (localService != null) {
+			try {
+				localService.close();
+			} catch (IOException ioe) {
+				LOGGER.warning("Could not close the database file '"
+						+ localService.dbFile + "' properly: "
+						+ ioe.getMessage());
+			}
+			localService = null;
 		}
+		localService = new SubContractorServiceLocal(dbFile);
+		return localService;
 	}
 
 	/**
@@ -171,6 +205,46 @@ public final class ServiceFactory {
 		LOGGER.info("Database file : " + dbFile.getAbsolutePath());
 	}
 
+	/**
+	 * Exports all valid records of the database of a running RMI server to
+	 * the given writer. The server streams the records to this client while
+	 * it keeps serving the other clients. The writer is not closed.
+	 * 
+	 * @param connection
+	 *            the server to connect to as <code>server:port</code>
+	 * @param writer
+	 *            the writer to write the records to
+	 * @param format
+	 *            the format to write the records in
+	 * @return the number of exported records
+	 * @throws IOException
+	 *             if the server cannot be reached, its database cannot be
+	 *             read or the records cannot be written
+	 */
+	public int exportFromServer(String connection, Writer writer,
+			ExportFormat format) throws IOException {
+		String connectionUrl = "//" + connection + "/" + RMI_SERVER_NAME;
+		SubContractorServer server;
+		try {
+			server = (SubContractorServer) Naming.lookup(connectionUrl);
+		} catch (MalformedURLException mue) {
+			throw new RemoteException("The URL '" + connectionUrl
+					+ "' is malformed", mue);
+		} catch (NotBoundException nbe) {
+			throw new RemoteException("The URL '" + connectionUrl
+					+ "' is not bound", nbe);
+		}
+
+		WriterExportSink sink = new WriterExportSink(writer);
+		ExportSink stub = (ExportSink) UnicastRemoteObject.exportObject(sink,
+				0);
+		try {
+			return server.export(stub, format);
+		} finally {
+			UnicastRemoteObject.unexportObject(sink, true);
+		}
+	}
+
 	/**
 	 * Displays a <code>JFileChooser</code> in which the user can specify a file
 	 * to be used as the application's database. If the input is invalid, the
@@ -400,7 +474,9 @@ public final class ServiceFactory {
 	}
 
 	/**
-	 * Indicates if the specified file is a valid database file.
+	 * Indicates if the specified file is a valid database file. The file
+	 * currently opened by the standalone client is valid without opening it
+	 * a second time, which its lock would not allow.
 	 * 
 	 * @param dbFile
 	 *            the file to be checked
@@ -409,7 +485,13 @@ public final class ServiceFactory {
 	 */
 	private boolean isValidDBFile(File dbFile) {
 		try {
-			new Data(dbFile);
+			synchronized (this) {
+				if (localService != null && localService.dbFile
+						.getCanonicalFile().equals(dbFile.getCanonicalFile())) {
+					return true;
+				}
+			}
+			new Data(dbFile).close();
 			return true;
 		} catch (Exception e) {
 			return false;
@@ -0,0 +1,46 @@
+package suncertify.service;
+
+/**
+ * This exception is thrown if a subcontractor cannot be booked or cleared at
+ * the moment because another client is modifying it and does not finish in
+ * time. The operation may be tried again later.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+public class SubContractorBusyException extends Exception {
+
+	/** The serial version of this class */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs the exception without any arguments.
+	 */
+	public SubContractorBusyException() {
+		super();
+	}
+
+	/**
+	 * Constructs the exception with a detail message.
+	 * 
+	 * @param message
+	 *            a detail message about the reason for the exception's throwing
+	 */
+	public SubContractorBusyException(String message) {
+		super(message);
+	}
+
+	/**
+	 * Constructs the exception with a detail message and the cause for throwing
+	 * it.
+	 * 
+	 * @param message
+	 *            a detail message about the reason for the exception's throwing
+	 * @param cause
+	 *            the cause for throwing this exception
+	 */
+	public SubContractorBusyException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
@@ -1,9 +1,11 @@
 package suncertify.service;
 
+import java.io.IOException;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
 
+import suncertify.db.ExportFormat;
 import suncertify.domain.SubContractor;
 
 /**
@@ -33,10 +35,14 @@ public interface SubContractorServer extends Remote {
 	 * @throws SubContractorAlreadyBookedException
 	 *             if the specified subcontractor is already booked by another
 	 *             customer
+	 * @throws SubContractorBusyException
+	 *             if the specified subcontractor is locked by another client
+	 *             which does not release it in time
 	 */
 	public void book(SubContractor subContractor, String customer)
 			throws RemoteException, SubContractorNotFoundException,
-			SubContractorAlreadyBookedException;
+			SubContractorAlreadyBookedException,
+			SubContractorBusyException;
 
 	/**
 	 * Clears the booking of the specified subcontractor
@@ -51,10 +57,14 @@ public interface SubContractorServer extends Remote {
 	 * @throws SubContractorAlreadyBookedException
 	 *             if the specified subcontractor has been booked by another
 	 *             customer in the meantime
+	 * @throws SubContractorBusyException
+	 *             if the specified subcontractor is locked by another client
+	 *             which does not release it in time
 	 */
 	public void clearBooking(SubContractor subContractor)
 			throws RemoteException, SubContractorNotFoundException,
-			SubContractorAlreadyBookedException;
+			SubContractorAlreadyBookedException,
+			SubContractorBusyException;
 
 	/**
 	 * Retrieves the record with the specified record number from the database.
@@ -72,6 +82,23 @@ public interface SubContractorServer extends Remote {
 	public SubContractor getSubContractorByRecNo(int recNo)
 			throws RemoteException, SubContractorNotFoundException;
 
+	/**
+	 * Retrieves the records with the specified record numbers from the
+	 * database at once. This is much faster than retrieving them one by one.
+	 * 
+	 * @param recNos
+	 *            the numbers of the records to retrieve from the database
+	 * @return a <code>List</code> containing a <code>SubContractor</code>
+	 *         object for each existing record in the order of the given
+	 *         record numbers; records not existing anymore are left out
+	 * @throws RemoteException
+	 *             if a server-client communication error occurs
+	 * @throws SubContractorNotFoundException
+	 *             if the database cannot be accessed properly
+	 */
+	public List<SubContractor> getSubContractorsByRecNos(int[] recNos)
+			throws RemoteException, SubContractorNotFoundException;
+
 	/**
 	 * Searches in the database for subcontractors matching the given
 	 * <code>SearchCriteria</code>.
@@ -89,4 +116,24 @@ public interface SubContractorServer extends Remote {
 	public List<SubContractor> search(SearchCriteria searchCriteria)
 			throws RemoteException, SubContractorNotFoundException;
 
+	/**
+	 * Exports all valid records of the database in the given format to the
+	 * given sink of the client. The export shows a consistent snapshot of the
+	 * records while the server keeps serving the other clients, see
+	 * {@link suncertify.db.Data#export(java.io.Writer, ExportFormat)}.
+	 * 
+	 * @param sink
+	 *            the remote sink of the client receiving the records
+	 * @param format
+	 *            the format to write the records in
+	 * @return the number of exported records
+	 * @throws RemoteException
+	 *             if a server-client communication error occurs
+	 * @throws IOException
+	 *             if the database cannot be read or the sink cannot write
+	 *             the records
+	 */
+	public int export(ExportSink sink, ExportFormat format)
+			throws RemoteException, IOException;
+
 }
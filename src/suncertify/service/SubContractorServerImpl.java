@@ -1,9 +1,11 @@
 package suncertify.service;
 
 import java.io.File;
+import java.io.IOException;
 import java.rmi.RemoteException;
 import java.util.List;
 
+import suncertify.db.ExportFormat;
 import suncertify.domain.SubContractor;
 
 /**
@@ -36,7 +38,8 @@ public class SubContractorServerImpl implements SubContractorServer {
 	@Override
 	public void book(SubContractor subContractor, String customer)
 			throws RemoteException, SubContractorNotFoundException,
-			SubContractorAlreadyBookedException {
+			SubContractorAlreadyBookedException,
+			SubContractorBusyException {
 		worker.book(subContractor, customer);
 	}
 
@@ -46,7 +49,8 @@ public class SubContractorServerImpl implements SubContractorServer {
 	@Override
 	public void clearBooking(SubContractor subContractor)
 			throws RemoteException, SubContractorNotFoundException,
-			SubContractorAlreadyBookedException {
+			SubContractorAlreadyBookedException,
+			SubContractorBusyException {
 		worker.clearBooking(subContractor);
 	}
 
@@ -59,6 +63,15 @@ public class SubContractorServerImpl implements SubContractorServer {
 		return worker.getSubContractorByRecNo(recNo);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<SubContractor> getSubContractorsByRecNos(int[] recNos)
+			throws RemoteException, SubContractorNotFoundException {
+		return worker.getSubContractorsByRecNos(recNos);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -68,4 +81,13 @@ public class SubContractorServerImpl implements SubContractorServer {
 		return worker.search(searchCriteria);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int export(ExportSink sink, ExportFormat format)
+			throws RemoteException, IOException {
+		return worker.export(new ExportSinkWriter(sink), format);
+	}
+
 }
@@ -31,10 +31,14 @@ public interface SubContractorService {
 	 * @throws SubContractorAlreadyBookedException
 	 *             if the specified subcontractor is already booked by another
 	 *             customer
+	 * @throws SubContractorBusyException
+	 *             if the specified subcontractor is locked by another client
+	 *             which does not release it in time
 	 */
 	public void book(SubContractor subContractor, String customer)
 			throws SubContractorNotFoundException,
-			SubContractorAlreadyBookedException;
+			SubContractorAlreadyBookedException,
+			SubContractorBusyException;
 
 	/**
 	 * Clears the booking of the specified subcontractor
@@ -47,10 +51,14 @@ public interface SubContractorService {
 	 * @throws SubContractorAlreadyBookedException
 	 *             if the specified subcontractor has been booked by another
 	 *             customer in the meantime
+	 * @throws SubContractorBusyException
+	 *             if the specified subcontractor is locked by another client
+	 *             which does not release it in time
 	 */
 	public void clearBooking(SubContractor subContractor)
 			throws SubContractorNotFoundException,
-			SubContractorAlreadyBookedException;
+			SubContractorAlreadyBookedException,
+			SubContractorBusyException;
 
 	/**
 	 * Provides a connection info <code>String</code> indicating the connection
@@ -75,6 +83,21 @@ public interface SubContractorService {
 	public SubContractor getSubContractorByRecNo(int recNo)
 			throws SubContractorNotFoundException;
 
+	/**
+	 * Retrieves the records with the specified record numbers from the
+	 * database at once. This is much faster than retrieving them one by one.
+	 * 
+	 * @param recNos
+	 *            the numbers of the records to retrieve from the database
+	 * @return a <code>List</code> containing a <code>SubContractor</code>
+	 *         object for each existing record in the order of the given
+	 *         record numbers; records not existing anymore are left out
+	 * @throws SubContractorNotFoundException
+	 *             if the database cannot be accessed properly
+	 */
+	public List<SubContractor> getSubContractorsByRecNos(int[] recNos)
+			throws SubContractorNotFoundException;
+
 	/**
 	 * Searches in the database for subcontractors matching the given
 	 * <code>SearchCriteria</code>.
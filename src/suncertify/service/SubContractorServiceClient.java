@@ -62,7 +62,8 @@ public class SubContractorServiceClient implements SubContractorService {
 	@Override
 	public void book(SubContractor subContractor, String customer)
 			throws SubContractorNotFoundException,
-			SubContractorAlreadyBookedException {
+			SubContractorAlreadyBookedException,
+			SubContractorBusyException {
 		try {
 			server.book(subContractor, customer);
 		} catch (RemoteException e) {
@@ -76,7 +77,8 @@ public class SubContractorServiceClient implements SubContractorService {
 	@Override
 	public void clearBooking(SubContractor subContractor)
 			throws SubContractorNotFoundException,
-			SubContractorAlreadyBookedException {
+			SubContractorAlreadyBookedException,
+			SubContractorBusyException {
 		try {
 			server.clearBooking(subContractor);
 		} catch (RemoteException e) {
@@ -104,6 +106,19 @@ public class SubContractorServiceClient implements SubContractorService {
 			throw new SubContractorNotFoundException(CONNECTION_ERROR, e);
 		}
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<SubContractor> getSubContractorsByRecNos(int[] recNos)
+			throws SubContractorNotFoundException {
+		try {
+			return server.getSubContractorsByRecNos(recNos);
+		} catch (RemoteException e) {
+			throw new SubContractorNotFoundException(CONNECTION_ERROR, e);
+		}
+	}
 	
 	/**
 	 * {@inheritDoc}
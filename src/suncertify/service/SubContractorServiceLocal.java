@@ -32,7 +32,8 @@ public class SubContractorServiceLocal extends Worker implements
 	@Override
 	public void book(SubContractor subContractor, String customer)
 			throws SubContractorNotFoundException,
-			SubContractorAlreadyBookedException {
+			SubContractorAlreadyBookedException,
+			SubContractorBusyException {
 		super.book(subContractor, customer);
 	}
 
@@ -42,7 +43,8 @@ public class SubContractorServiceLocal extends Worker implements
 	@Override
 	public void clearBooking(SubContractor subContractor)
 			throws SubContractorNotFoundException,
-			SubContractorAlreadyBookedException {
+			SubContractorAlreadyBookedException,
+			SubContractorBusyException {
 		super.clearBooking(subContractor);
 	}
 
@@ -62,6 +64,15 @@ public class SubContractorServiceLocal extends Worker implements
 			throws SubContractorNotFoundException {
 		return super.getSubContractorByRecNo(recNo);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<SubContractor> getSubContractorsByRecNos(int[] recNos)
+			throws SubContractorNotFoundException {
+		return super.getSubContractorsByRecNos(recNos);
+	}
 	
 	/**
 	 * {@inheritDoc}
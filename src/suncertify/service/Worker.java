@@ -2,13 +2,20 @@ package suncertify.service;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
+import suncertify.PropertyManager;
 import suncertify.Util;
-import suncertify.db.DBMain;
+import suncertify.db.DBRecord;
 import suncertify.db.Data;
+import suncertify.db.DurabilityMode;
+import suncertify.db.ExportFormat;
+import suncertify.db.RecordBusyException;
 import suncertify.db.RecordNotFoundException;
+import suncertify.db.StorageMode;
 import suncertify.domain.SubContractor;
 import suncertify.domain.SubContractorHandler;
 
@@ -29,11 +36,31 @@ class Worker {
 	private static final String SC_NOT_FOUND = "Could not find SubContractor "
 			+ "in database";
 
+	/** A standard error message if a subcontractor is locked by another
+	 * client for too long. */
+	private static final String SC_BUSY = "The SubContractor is being "
+			+ "modified by another client at the moment. Please try again "
+			+ "later.";
+
+	/** The time to wait for a record lock held by another client in
+	 * milliseconds if the properties do not define it */
+	private static final long DEFAULT_LOCK_TIMEOUT = 5000;
+
+	/** The time a record lock is leased for in milliseconds if the properties
+	 * do not define it */
+	private static final long DEFAULT_LOCK_LEASE = 60000;
+
+	/** The number of optimistic updates tried before a record is locked */
+	private static final int OPTIMISTIC_ATTEMPTS = 3;
+
 	/** The database file to connecto to */
 	protected File dbFile;
 
 	/** The database object to use */
-	private DBMain db;
+	private Data db;
+
+	/** The maximum time to wait for a record lock in milliseconds */
+	private long lockTimeout;
 
 	/** The handler class create <code>SubContractor</code> objects and provide
 	 * more information of them. */
@@ -42,13 +69,22 @@ class Worker {
 	/**
 	 * Constructs the object using the specified database file and initializes
 	 * the <code>DBMain</code> implementation instance <code>db</code> with it.
+	 * The storage and durability modes of the database, the time to wait for
+	 * record locks and the time record locks are leased for are taken from the
+	 * properties file.
 	 * 
 	 * @param dbFile
 	 *            the database file to connect to
 	 */
 	protected Worker(File dbFile) {
 		try {
-			db = new Data(dbFile);
+			db = new Data(dbFile, getStorageMode());
+			db.setDurabilityMode(getDurabilityMode());
+			lockTimeout = getMillisProperty(
+					PropertyManager.PROPERTY_DB_LOCK_TIMEOUT,
+					DEFAULT_LOCK_TIMEOUT);
+			db.setLockLeaseTime(getMillisProperty(
+					PropertyManager.PROPERTY_DB_LOCK_LEASE, DEFAULT_LOCK_LEASE));
 			this.dbFile = dbFile;
 			scHandler = new SubContractorHandler();
 		} catch (IOException ioe) {
@@ -65,6 +101,11 @@ class Worker {
 
 	/**
 	 * Books the specified subcontractor for the specified customer (owner).
+	 * <br>
+	 * The record is updated optimistically first: It is read together with
+	 * its version stamp and only updated if it has not been modified
+	 * meanwhile. If the record keeps being modified by other clients, it is
+	 * locked, checked and updated instead.
 	 * 
 	 * @param subContractor
 	 *            the subcontractor to book
@@ -76,40 +117,42 @@ class Worker {
 	 * @throws SubContractorAlreadyBookedException
 	 *             if the specified subcontractor is already booked by another
 	 *             customer
+	 * @throws SubContractorBusyException
+	 *             if the specified subcontractor is locked by another client
+	 *             which does not release it in time
 	 */
 	protected void book(SubContractor subContractor, String customer)
 			throws SubContractorNotFoundException,
-			SubContractorAlreadyBookedException {
+			SubContractorAlreadyBookedException,
+			SubContractorBusyException {
 		int recNo = subContractor.getRecNo();
 
+		/*
+		 * Check if the record is bookable (has no customer) and the given
+		 * customer value is valid. If yes, update the database. If no, throw
+		 * a case-dependent exception.
+		 */
 		try {
-
-			/*
-			 * Lock the record, check if it is bookable (has no customer) and
-			 * the given customer value is valid. If yes, update the database.
-			 * If no, throw a case-dependent exception.
-			 */
-			db.lock(recNo);
-
-			SubContractor scFromDb =
-					getSubContractorByRecNo(subContractor.getRecNo());
-
-			if (scHandler.isSubContractorBooked(scFromDb)) {
-				throw new SubContractorAlreadyBookedException("The "
-						+ "SubContractor is already booked by a another "
-						+ "customer");
-			}
-
-			if (scHandler.isValidCustomer(customer)) {
-				scFromDb.setCustomer(customer);
-			} else {
-				throw new IllegalArgumentException("Please enter a valid "
-						+ "customer id, consisting of "
-						+ scHandler.getValidCustomerInfo() + "!");
+			for (int i = 0; i < OPTIMISTIC_ATTEMPTS; i++) {
+				DBRecord record = db.readRecord(recNo);
+				SubContractor scFromDb = scHandler.createSubContractor(recNo,
+						record.getValues());
+				prepareBooking(scFromDb, customer);
+				if (db.compareAndUpdate(recNo, record.getVersion(), scHandler
+						.transformSubContractorToArray(scFromDb))) {
+					return;
+				}
 			}
+		} catch (RecordNotFoundException rnfe) {
+			throw new SubContractorNotFoundException(SC_NOT_FOUND, rnfe);
+		}
 
-			db.update(recNo, scHandler.transformSubContractorToArray(scFromDb));
-
+		long lockCookie = lockRecord(recNo);
+		try {
+			SubContractor scFromDb = getSubContractorByRecNo(recNo);
+			prepareBooking(scFromDb, customer);
+			db.update(recNo, scHandler.transformSubContractorToArray(scFromDb),
+					lockCookie);
 		} catch (RecordNotFoundException rnfe) {
 			throw new SubContractorNotFoundException(SC_NOT_FOUND, rnfe);
 		} finally {
@@ -119,7 +162,7 @@ class Worker {
 				 * Try to unlock the record again, no matter if a problem
 				 * occurred above
 				 */
-				db.unlock(subContractor.getRecNo());
+				db.unlock(recNo, lockCookie);
 			} catch (RecordNotFoundException rnfe) {
 				throw new SubContractorNotFoundException(SC_NOT_FOUND, rnfe);
 			}
@@ -127,7 +170,10 @@ class Worker {
 	}
 
 	/**
-	 * Clears the booking of the specified subcontractor
+	 * Clears the booking of the specified subcontractor. Like
+	 * {@link #book(SubContractor, String)} the record is updated
+	 * optimistically first and locked only if it keeps being modified by
+	 * other clients.
 	 * 
 	 * @param subContractor
 	 *            the subcontractor whose booking shall be cleard
@@ -137,33 +183,41 @@ class Worker {
 	 * @throws SubContractorAlreadyBookedException
 	 *             if the specified subcontractor has been booked by another
 	 *             customer in the meantime
+	 * @throws SubContractorBusyException
+	 *             if the specified subcontractor is locked by another client
+	 *             which does not release it in time
 	 */
 	protected void clearBooking(SubContractor subContractor)
 			throws SubContractorNotFoundException,
-			SubContractorAlreadyBookedException {
+			SubContractorAlreadyBookedException,
+			SubContractorBusyException {
 		int recNo = subContractor.getRecNo();
-		try {
-			
-			/*
-			 * Lock the record and clear it. Don't care if it is already cleared
-			 * or not. But throw an exception if the SubContractor's customer
-			 * has changed.
-			 */
-			db.lock(recNo);
-
-			SubContractor scFromDb = 
-					getSubContractorByRecNo(subContractor.getRecNo());
 
-			if (scHandler.isSubContractorBooked(scFromDb)
-					&& !scFromDb.getCustomer()
-							.equals(subContractor.getCustomer())) {
-				throw new SubContractorAlreadyBookedException("The "
-						+ "SubContractor seems to be booked by another "
-						+ "customer now.");
+		/*
+		 * Clear the record. Don't care if it is already cleared or not. But
+		 * throw an exception if the SubContractor's customer has changed.
+		 */
+		try {
+			for (int i = 0; i < OPTIMISTIC_ATTEMPTS; i++) {
+				DBRecord record = db.readRecord(recNo);
+				SubContractor scFromDb = scHandler.createSubContractor(recNo,
+						record.getValues());
+				prepareClearing(scFromDb, subContractor);
+				if (db.compareAndUpdate(recNo, record.getVersion(), scHandler
+						.transformSubContractorToArray(scFromDb))) {
+					return;
+				}
 			}
+		} catch (RecordNotFoundException rnfe) {
+			throw new SubContractorNotFoundException(SC_NOT_FOUND, rnfe);
+		}
 
-			scFromDb.setCustomer(null);
-			db.update(recNo, scHandler.transformSubContractorToArray(scFromDb));
+		long lockCookie = lockRecord(recNo);
+		try {
+			SubContractor scFromDb = getSubContractorByRecNo(recNo);
+			prepareClearing(scFromDb, subContractor);
+			db.update(recNo, scHandler.transformSubContractorToArray(scFromDb),
+					lockCookie);
 		} catch (RecordNotFoundException rnfe) {
 			throw new SubContractorNotFoundException(SC_NOT_FOUND, rnfe);
 		} finally {
@@ -172,13 +226,95 @@ class Worker {
 				 * Try to unlock the record again, no matter if a problem
 				 * occurred above
 				 */
-				db.unlock(subContractor.getRecNo());
+				db.unlock(recNo, lockCookie);
 			} catch (RecordNotFoundException rnfe) {
 				throw new SubContractorNotFoundException(SC_NOT_FOUND, rnfe);
 			}
 		}
 	}
 
+	/**
+	 * Checks if the given subcontractor read from the database is bookable
+	 * (has no customer) and the given customer value is valid. If yes, the
+	 * customer is set.
+	 * 
+	 * @param scFromDb
+	 *            the subcontractor as read from the database
+	 * @param customer
+	 *            the customer who books the subcontractor
+	 * @throws SubContractorAlreadyBookedException
+	 *             if the subcontractor is already booked by another customer
+	 */
+	private void prepareBooking(SubContractor scFromDb, String customer)
+			throws SubContractorAlreadyBookedException {
+		if (scHandler.isSubContractorBooked(scFromDb)) {
+			throw new SubContractorAlreadyBookedException("The "
+					+ "SubContractor is already booked by a another "
+					+ "customer");
+		}
+
+		if (scHandler.isValidCustomer(customer)) {
+			scFromDb.setCustomer(customer);
+		} else {
+			throw new IllegalArgumentException("Please enter a valid "
+					+ "customer id, consisting of "
+					+ scHandler.getValidCustomerInfo() + "!");
+		}
+	}
+
+	/**
+	 * Checks if the booking of the given subcontractor read from the database
+	 * may be cleared, i.e.: if it is not booked by another customer than the
+	 * one the client knows. If yes, the customer is removed.
+	 * 
+	 * @param scFromDb
+	 *            the subcontractor as read from the database
+	 * @param subContractor
+	 *            the subcontractor as known by the client
+	 * @throws SubContractorAlreadyBookedException
+	 *             if the subcontractor has been booked by another customer in
+	 *             the meantime
+	 */
+	private void prepareClearing(SubContractor scFromDb,
+			SubContractor subContractor)
+			throws SubContractorAlreadyBookedException {
+		if (scHandler.isSubContractorBooked(scFromDb)
+				&& !scFromDb.getCustomer().equals(subContractor.getCustomer())) {
+			throw new SubContractorAlreadyBookedException("The "
+					+ "SubContractor seems to be booked by another "
+					+ "customer now.");
+		}
+
+		scFromDb.setCustomer(null);
+	}
+
+	/**
+	 * Locks the record with the specified record number, waiting at most the
+	 * configured lock timeout. The lock is owned by the returned lock cookie
+	 * rather than by the current thread, so the record may be updated and
+	 * unlocked by any thread.
+	 * 
+	 * @param recNo
+	 *            the number of the record to lock
+	 * @return the lock cookie of the record lock
+	 * @throws SubContractorNotFoundException
+	 *             if the specified subcontractor could not be found in the
+	 *             database
+	 * @throws SubContractorBusyException
+	 *             if the record is locked by another client which does not
+	 *             release it in time
+	 */
+	private long lockRecord(int recNo) throws SubContractorNotFoundException,
+			SubContractorBusyException {
+		try {
+			return db.lockRecord(recNo, lockTimeout);
+		} catch (RecordNotFoundException rnfe) {
+			throw new SubContractorNotFoundException(SC_NOT_FOUND, rnfe);
+		} catch (RecordBusyException rbe) {
+			throw new SubContractorBusyException(SC_BUSY, rbe);
+		}
+	}
+
 	/**
 	 * Retrieves the record with the specified record number from the database.
 	 * 
@@ -200,6 +336,36 @@ class Worker {
 		}
 	}
 	
+	/**
+	 * Retrieves the records with the specified record numbers from the
+	 * database at once.
+	 * 
+	 * @param recNos
+	 *            the numbers of the records to retrieve from the database
+	 * @return a <code>List</code> containing a <code>SubContractor</code>
+	 *         object for each existing record in the order of the given
+	 *         record numbers
+	 * @throws SubContractorNotFoundException
+	 *             if the database cannot be accessed properly
+	 */
+	protected List<SubContractor> getSubContractorsByRecNos(int[] recNos)
+			throws SubContractorNotFoundException {
+		try {
+			String[][] records = db.readAll(recNos);
+			List<SubContractor> subContractors = new ArrayList<SubContractor>(
+					records.length);
+			for (int i = 0; i < records.length; i++) {
+				if (records[i] != null) {
+					subContractors.add(scHandler.createSubContractor(
+							recNos[i], records[i]));
+				}
+			}
+			return subContractors;
+		} catch (RecordNotFoundException rnfe) {
+			throw new SubContractorNotFoundException(SC_NOT_FOUND, rnfe);
+		}
+	}
+
 	/**
 	 * Searches in the database for subcontractors matching the criteria
 	 * specified in the given argument.
@@ -216,87 +382,128 @@ class Worker {
 			throws SubContractorNotFoundException {
 
 		/*
-		 * Because the an empty search criteria shall be ignored, the search for
-		 * the GUI is a bit more complicated than the search defined by DBMain.
-		 * But the inline comments should guide through this method properly.
-		 */		
-		Util util = Util.getInstance();
-		List<SubContractor> resultList = new ArrayList<SubContractor>();		
-
-		// Search for all subcontractors
-		if (util.isStringEmptyOrNull(searchCriteria.getName())
-				&& util.isStringEmptyOrNull(searchCriteria.getLocation())) {
-			return getAllDbElements();
-
-		} else if // Search just for one field
-		(util.isStringEmptyOrNull(searchCriteria.getName())
-				|| util.isStringEmptyOrNull(searchCriteria.getLocation())) {
-
-			if (util.isStringEmptyOrNull(searchCriteria.getLocation())) {
-
-				// Get field name's matchings
-				for (SubContractor sc : getAllDbElements()) {
-					if (searchCriteria.getName().equals(sc.getName())) {
-						resultList.add(sc);
-					}
-				}
-			} else {
-
-				// Get field location's matchings
-				for (SubContractor sc : getAllDbElements()) {
-					if (searchCriteria.getLocation().equals(sc.getLocation())) {
-						resultList.add(sc);
-					}
-				}
+		 * Because an empty search criteria shall be ignored, the search for
+		 * the GUI uses the exact-match search of Data instead of the search
+		 * defined by DBMain. Empty criteria are ignored there as well, the
+		 * others are combined by 'and' or 'or' as requested. The matching
+		 * records are streamed by a cursor, i.e.: found and read in one pass.
+		 */
+		List<SubContractor> resultList = new ArrayList<SubContractor>();
+		try {
+			Iterator<DBRecord> cursor = db.cursorExact(searchCriteria
+					.getCriteria(), searchCriteria.isSearchAnd());
+			while (cursor.hasNext()) {
+				DBRecord record = cursor.next();
+				resultList.add(scHandler.createSubContractor(record
+						.getRecNo(), record.getValues()));
 			}
+		} catch (IllegalStateException ise) {
+			throw new SubContractorNotFoundException(SC_NOT_FOUND, ise);
+		}
+		return resultList;
+	}
 
-		} else { // Search for both fields
+	/**
+	 * Exports all valid records of the database to the given writer in the
+	 * given format while the database stays in use.
+	 * 
+	 * @param writer
+	 *            the writer to write the records to
+	 * @param format
+	 *            the format to write the records in
+	 * @return the number of exported records
+	 * @throws IOException
+	 *             if the database cannot be read or the records cannot be
+	 *             written
+	 */
+	protected int export(Writer writer, ExportFormat format)
+			throws IOException {
+		return db.export(writer, format);
+	}
 
-			if (searchCriteria.isSearchAnd()) {
-				for (SubContractor sc : getAllDbElements()) {
-					if (searchCriteria.getName().equals(sc.getName())
-							&& searchCriteria.getLocation().equals(
-									sc.getLocation())) {
-						resultList.add(sc);
-					}
-				}
-			} else {
-				for (SubContractor sc : getAllDbElements()) {
-					if (searchCriteria.getName().equals(sc.getName())
-							|| searchCriteria.getLocation().equals(
-									sc.getLocation())) {
-						resultList.add(sc);
-					}
-				}
-			}
+	/**
+	 * Closes the database: All modifications are written to the database
+	 * file and the file is released. The object must not be used afterwards.
+	 * 
+	 * @throws IOException
+	 *             if the database file cannot be written or closed properly
+	 */
+	protected void close() throws IOException {
+		db.close();
+	}
 
+	/**
+	 * Returns the database storage mode configured in the properties file. If
+	 * none or an unknown mode is configured, the records are read from the
+	 * database file.
+	 * 
+	 * @return the configured storage mode
+	 */
+	private StorageMode getStorageMode() {
+		String mode = PropertyManager.getInstance().getProperty(
+				PropertyManager.PROPERTY_DB_STORAGE_MODE);
+		if (Util.getInstance().isStringEmptyOrNull(mode)) {
+			return StorageMode.FILE;
 		}
+		try {
+			return StorageMode.valueOf(mode.trim());
+		} catch (IllegalArgumentException iae) {
+			Util.getInstance().getStdLogger().warning("Unknown database "
+					+ "storage mode '" + mode + "', using " + StorageMode.FILE);
+			return StorageMode.FILE;
+		}
+	}
 
-		return resultList;
+	/**
+	 * Returns the database durability mode configured in the properties file.
+	 * If none or an unknown mode is configured, each modification is forced
+	 * to disk before it returns.
+	 * 
+	 * @return the configured durability mode
+	 */
+	private DurabilityMode getDurabilityMode() {
+		String mode = PropertyManager.getInstance().getProperty(
+				PropertyManager.PROPERTY_DB_DURABILITY);
+		if (Util.getInstance().isStringEmptyOrNull(mode)) {
+			return DurabilityMode.STRICT;
+		}
+		try {
+			return DurabilityMode.valueOf(mode.trim());
+		} catch (IllegalArgumentException iae) {
+			Util.getInstance().getStdLogger().warning("Unknown database "
+					+ "durability mode '" + mode + "', using "
+					+ DurabilityMode.STRICT);
+			return DurabilityMode.STRICT;
+		}
 	}
 
 	/**
-	 * Gets all available elements from the db.
+	 * Reads a time in milliseconds like the lock timeout from the properties.
+	 * If the property is missing or invalid, the given default is used.
 	 * 
-	 * @return a <code>List</code> of all subcontractors 
-	 * @throws SubContractorNotFoundException
-	 *             if the specified subcontractor could not be found in the
-	 *             database
+	 * @param key
+	 *            the key of the property
+	 * @param defaultMillis
+	 *            the time to use if the property is missing or invalid
+	 * @return the time in milliseconds
 	 */
-	private ArrayList<SubContractor> getAllDbElements()
-			throws SubContractorNotFoundException {
-		ArrayList<SubContractor> recList = new ArrayList<SubContractor>();
-		
-		// An empty criteria array means all elements
-		String[] empyCriteria  = new SearchCriteria().getCriteria();
+	private long getMillisProperty(String key, long defaultMillis) {
+		String millis = PropertyManager.getInstance().getProperty(key);
+		if (Util.getInstance().isStringEmptyOrNull(millis)) {
+			return defaultMillis;
+		}
 		try {
-			for (int recNo : db.find(empyCriteria)) {
-				recList.add(getSubContractorByRecNo(recNo));
+			long value = Long.parseLong(millis.trim());
+			if (value >= 0) {
+				return value;
 			}
-		} catch (RecordNotFoundException rnfe) {
-			throw new SubContractorNotFoundException(SC_NOT_FOUND, rnfe);
+		} catch (NumberFormatException nfe) {
+			// handled below
 		}
-		return recList;
+		Util.getInstance().getStdLogger().warning("Invalid value '" + millis
+				+ "' of property '" + key + "', using " + defaultMillis
+				+ " ms");
+		return defaultMillis;
 	}
 
 }
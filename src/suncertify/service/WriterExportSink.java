@@ -0,0 +1,36 @@
+package suncertify.service;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The client side <code>ExportSink</code> writing the records exported by the
+ * server to a local <code>Writer</code>.
+ * 
+ * @author Jochen R. Meyer
+ * 
+ */
+class WriterExportSink implements ExportSink {
+
+	/** The writer receiving the export */
+	private Writer writer;
+
+	/**
+	 * Constructs the sink for the given writer.
+	 * 
+	 * @param writer
+	 *            the writer to write the exported records to
+	 */
+	WriterExportSink(Writer writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(String chunk) throws IOException {
+		writer.write(chunk);
+	}
+
+}
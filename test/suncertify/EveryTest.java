@@ -12,8 +12,15 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import suncertify.db.AsyncDataTest;
 import suncertify.db.ConcurrentAccessTest;
+import suncertify.db.DBColumnIndexTest;
+import suncertify.db.DBCsvRecordSourceTest;
 import suncertify.db.DBFileAccessTest;
+import suncertify.db.DBJournalTest;
+import suncertify.db.DBLockManagerTest;
+import suncertify.db.DBRecordCacheTest;
+import suncertify.db.DBRecordCodecTest;
 import suncertify.db.DataTest;
 import suncertify.domain.SubContractorTest;
 import suncertify.service.SubContractorServiceLocalTest;
@@ -22,7 +29,14 @@ import suncertify.util.PropertyManagerTest;
 @RunWith(Suite.class)
 @SuiteClasses({
 	DBFileAccessTest.class,
+	DBRecordCodecTest.class,
+	DBRecordCacheTest.class,
+	DBColumnIndexTest.class,
+	DBCsvRecordSourceTest.class,
+	DBJournalTest.class,
+	DBLockManagerTest.class,
 	DataTest.class,
+	AsyncDataTest.class,
 	SubContractorTest.class,
 	SubContractorServiceLocalTest.class,
 	PropertyManagerTest.class,
@@ -60,6 +74,8 @@ public class EveryTest {
 			fis.read(stdContent);
 			
 			dbFile.delete();
+			new File(dbFile.getPath() + ".journal").delete();
+			new File(dbFile.getPath() + ".slots").delete();
 			FileOutputStream fos = new FileOutputStream(dbFile, false);
 			fos.write(stdContent);
 		} catch (Exception e) {
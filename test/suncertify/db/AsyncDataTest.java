@@ -0,0 +1,130 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import suncertify.EveryTest;
+
+public class AsyncDataTest {
+
+    private Data data;
+
+    private AsyncData asyncData;
+
+    @Before
+    public void setUp() throws Exception {
+        EveryTest.writeStdContent();
+        data = new Data(EveryTest.getDBFile(), 0);
+        asyncData = new AsyncData(data);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        asyncData.shutdown();
+        data.close();
+    }
+
+    @Test
+    public void testReadsPendingMeanwhileAreCompleted() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Future<String[]> first = asyncData.read(0, new DBCallback<String[]>() {
+            @Override
+            public void completed(String[] result) {
+                try {
+                    release.await(); // keeps the I/O thread busy
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void failed(Exception cause) {
+            }
+        });
+        List<Future<String[]>> reads = new ArrayList<Future<String[]>>();
+        for (int recNo = 1; recNo <= 10; recNo++) {
+            reads.add(asyncData.read(recNo, null));
+        }
+        release.countDown();
+
+        assertArrayEquals(data.read(0), first.get(5, TimeUnit.SECONDS));
+        for (int i = 0; i < reads.size(); i++) {
+            assertArrayEquals(data.read(i + 1), reads.get(i).get(5,
+                    TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testReadOfMissingRecordFails() throws Exception {
+        final Exception[] failure = new Exception[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        Future<String[]> read = asyncData.read(Integer.MAX_VALUE,
+                new DBCallback<String[]>() {
+                    @Override
+                    public void completed(String[] result) {
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void failed(Exception cause) {
+                        failure[0] = cause;
+                        done.countDown();
+                    }
+                });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(failure[0] instanceof RecordNotFoundException);
+        try {
+            read.get();
+            fail("ExecutionException expected");
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof RecordNotFoundException);
+        }
+    }
+
+    @Test
+    public void testReadsAfterShutdownFail() throws Exception {
+        asyncData.shutdown();
+        for (int i = 0; i < 2; i++) {
+            try {
+                asyncData.read(0, null).get(5, TimeUnit.SECONDS);
+                fail("ExecutionException expected");
+            } catch (ExecutionException ee) {
+                assertTrue(ee.getCause() instanceof RejectedExecutionException);
+            }
+        }
+    }
+
+    @Test
+    public void testFindAndCompareAndUpdate() throws Exception {
+        String[] criteria = new String[] { "Bitter", null, null, null, null,
+                null };
+        int[] found = asyncData.find(criteria, null).get(5, TimeUnit.SECONDS);
+        assertArrayEquals(data.find(criteria), found);
+        assertTrue(found.length > 0);
+
+        DBRecord record = asyncData.readRecord(found[0], null).get(5,
+                TimeUnit.SECONDS);
+        String[] values = record.getValues();
+        values[5] = "12345678";
+        assertTrue(asyncData.compareAndUpdate(found[0], record.getVersion(),
+                values, null).get(5, TimeUnit.SECONDS));
+        assertEquals(Boolean.FALSE, asyncData.compareAndUpdate(found[0],
+                record.getVersion(), values, null).get(5, TimeUnit.SECONDS));
+        assertEquals("12345678", data.read(found[0])[5]);
+    }
+
+}
@@ -0,0 +1,79 @@
+package suncertify.db;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+/**
+ * Benchmark comparing the latency of an uncontended booking done with a
+ * record lock (lock, read, update, unlock) and done optimistically (read with
+ * version, compare-and-update). The optimistic booking acquires the database
+ * lock twice instead of four times and checks the record's validity only
+ * once.
+ */
+public class BookingLatencyBenchmark {
+
+    private static final File STD_FILE = new File(
+            "files/db-files/stdContent.db");
+
+    private static final int BOOKINGS = 200000;
+
+    public static void main(String[] args) throws Exception {
+        File dbFile = File.createTempFile("bookingBenchmark", ".db");
+        dbFile.deleteOnExit();
+        new File(dbFile.getPath() + ".journal").deleteOnExit();
+        copy(STD_FILE, dbFile);
+        Data data = new Data(dbFile, StorageMode.MEMORY_WRITE_BEHIND);
+
+        for (int round = 0; round < 3; round++) { // the first is a warm-up
+            long locked = bookLocked(data, BOOKINGS);
+            long optimistic = bookOptimistic(data, BOOKINGS);
+            System.out.println(String.format("locked: %,6d ns/booking, "
+                    + "optimistic: %,6d ns/booking", locked / BOOKINGS,
+                    optimistic / BOOKINGS));
+        }
+    }
+
+    private static long bookLocked(Data data, int bookings)
+            throws Exception {
+        long start = System.nanoTime();
+        for (int n = 0; n < bookings; n++) {
+            int recNo = n % 16;
+            data.lock(recNo);
+            try {
+                String[] record = data.read(recNo);
+                record[5] = String.valueOf(n % 100);
+                data.update(recNo, record);
+            } finally {
+                data.unlock(recNo);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long bookOptimistic(Data data, int bookings)
+            throws Exception {
+        long start = System.nanoTime();
+        for (int n = 0; n < bookings; n++) {
+            int recNo = n % 16;
+            DBRecord record = data.readRecord(recNo);
+            String[] values = record.getValues();
+            values[5] = String.valueOf(n % 100);
+            if (!data.compareAndUpdate(recNo, record.getVersion(), values)) {
+                throw new IllegalStateException("Uncontended update failed");
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void copy(File from, File to) throws Exception {
+        FileInputStream fis = new FileInputStream(from);
+        byte[] content = new byte[(int) from.length()];
+        fis.read(content);
+        fis.close();
+        FileOutputStream fos = new FileOutputStream(to, false);
+        fos.write(content);
+        fos.close();
+    }
+
+}
@@ -1,6 +1,15 @@
 package suncertify.db;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.After;
+import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -13,7 +22,7 @@ import suncertify.EveryTest;
  */
 public class ConcurrentAccessTest {
 
-	private static DBMain data;
+	private static Data data;
 	private static String[] correctDataPara;
 	private static String[] correctDataHeavy;
 	@SuppressWarnings("unused")
@@ -35,6 +44,11 @@ public class ConcurrentAccessTest {
 		tooLongData = createTooLongData();
 	}
 
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+		data.close();
+	}
+
 	@Before
 	public void setUp() throws Exception {
 		EveryTest.writeStdContent();
@@ -207,6 +221,57 @@ public class ConcurrentAccessTest {
 		System.out.println("<Done with heavy load test>\n");
 	}
 
+	@Test
+	public void testGroupLockingUnderHeavyLoad() throws Exception {
+		System.out.println("<Running group locking test>");
+		final AtomicInteger busy = new AtomicInteger();
+
+		Runnable groupBooker = new Runnable() {
+
+			public void run() {
+				for (int i = 0; i < 20; i++) {
+					int[] ids = new int[2 + (int) (Math.random() * 3)];
+					for (int j = 0; j < ids.length; j++) {
+						ids[j] = (int) (Math.random() * 30);
+					}
+					try {
+						data.lockAll(ids, 30 * 1000);
+						try {
+							for (int id : ids) {
+								String[] dataString = data.read(id);
+								dataString[5] = Integer
+										.toString((int) (Math.random() * 100));
+								data.update(id, dataString);
+							}
+							System.out.println("Subcontractors "
+									+ Arrays.toString(ids) + " updated.");
+						} finally {
+							data.unlockAll(ids);
+						}
+					} catch (RecordBusyException rbe) {
+						busy.incrementAndGet();
+						System.out.println(rbe.getMessage());
+					} catch (Exception e) {
+						System.out.println(e.getMessage());
+					}
+				}
+			}
+		};
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 50; i++) {
+			Thread t = new Thread(groupBooker);
+			t.start();
+			threads.add(t);
+		}
+		for (Thread t : threads) {
+			t.join(2 * 60 * 1000);
+			assertFalse("Group locking deadlocked", t.isAlive());
+		}
+		assertEquals(0, busy.get());
+		System.out.println("<Done with group locking test>\n");
+	}
+
 	public static void main(String[] args) throws Exception {
 		ConcurrentAccessTest test = new ConcurrentAccessTest();
 		ConcurrentAccessTest.setUpClass();
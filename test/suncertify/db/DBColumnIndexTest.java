@@ -0,0 +1,79 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DBColumnIndexTest {
+
+    private DBColumnIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        index = new DBColumnIndex();
+        index.add("Smallville", 1);
+        index.add("Small", 4);
+        index.add("Smallville", 7);
+        index.add("Lendmarch", 2);
+        index.add("Snail", 3);
+    }
+
+    @Test
+    public void testFindPrefix() {
+        assertEquals(bits(1, 4, 7), index.findPrefix("Small"));
+        assertEquals(bits(1, 7), index.findPrefix("Smallv"));
+        assertEquals(bits(1, 3, 4, 7), index.findPrefix("S"));
+        assertEquals(bits(), index.findPrefix("X"));
+        assertEquals(bits(1, 2, 3, 4, 7), index.findPrefix(""));
+    }
+
+    @Test
+    public void testFindExact() {
+        assertEquals(bits(1, 7), index.findExact("Smallville"));
+        assertEquals(bits(4), index.findExact("Small"));
+        assertEquals(bits(), index.findExact("Smallvill"));
+        index.remove("Smallville", 7);
+        assertEquals(bits(1), index.findExact("Smallville"));
+        index.remove("Smallville", 1);
+        assertEquals(bits(), index.findExact("Smallville"));
+        assertEquals(bits(4), index.findPrefix("Small"));
+    }
+
+    @Test
+    public void testRemove() {
+        index.remove("Smallville", 1);
+        index.remove("Small", 4);
+        index.remove("Small", 99);
+        assertEquals(bits(7), index.findPrefix("Small"));
+    }
+
+    @Test
+    public void testRecNoSet() {
+        DBRecNoSet set = new DBRecNoSet();
+        assertTrue(set.add(5));
+        assertTrue(set.add(1));
+        assertTrue(set.add(9));
+        assertFalse(set.add(5));
+        assertArrayEquals(new int[] { 1, 5, 9 }, set.toArray());
+        assertTrue(set.remove(5));
+        assertFalse(set.remove(5));
+        assertFalse(set.contains(5));
+        assertTrue(set.contains(9));
+        assertEquals(2, set.size());
+    }
+
+    private static BitSet bits(int... recNos) {
+        BitSet bits = new BitSet();
+        for (int recNo : recNos) {
+            bits.set(recNo);
+        }
+        return bits;
+    }
+
+}
@@ -0,0 +1,54 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class DBCsvRecordSourceTest {
+
+    private static final String[] COLUMNS = new String[] { "name", "size" };
+
+    private DBCsvRecordSource source(String csv) {
+        return new DBCsvRecordSource(new StringReader(csv), COLUMNS);
+    }
+
+    @Test
+    public void testHeaderAndEmptyLinesAreSkipped() throws Exception {
+        DBCsvRecordSource source = source("Name,Size\n\nFred,4\r\nBob,\n");
+        assertArrayEquals(new String[] { "Fred", "4" }, source.nextRecord());
+        assertArrayEquals(new String[] { "Bob", "" }, source.nextRecord());
+        assertNull(source.nextRecord());
+    }
+
+    @Test
+    public void testQuotedValues() throws Exception {
+        DBCsvRecordSource source = source("\"Fred, \"\"the\"\"\nBuilder\",4");
+        assertArrayEquals(new String[] { "Fred, \"the\"\nBuilder", "4" },
+                source.nextRecord());
+        assertNull(source.nextRecord());
+    }
+
+    @Test
+    public void testInvalidLines() throws Exception {
+        try {
+            DBCsvRecordSource source = source("Fred,4\nBob\n");
+            source.nextRecord();
+            source.nextRecord();
+            fail("Wrong number of values not detected");
+        } catch (IOException ioe) {
+            // expected
+        }
+        try {
+            source("\"Fred,4\n").nextRecord();
+            fail("Unterminated quote not detected");
+        } catch (IOException ioe) {
+            // expected
+        }
+    }
+
+}
@@ -1,14 +1,21 @@
 package suncertify.db;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.List;
 
 import org.junit.After;
@@ -94,15 +101,28 @@ public class DBFileAccessTest {
         // 0 beginnend
     }
 
+    /**
+     * Counts the valid records by the record states held in memory.
+     */
+    private int countValidRecords() throws Exception {
+        Field vr = DBFileAccess.class.getDeclaredField("validRecords");
+        vr.setAccessible(true); // !!!
+        return ((BitSet) vr.get(dbFileAccess)).cardinality();
+    }
+
+    /**
+     * Counts the deleted records by the free slots held in memory.
+     */
+    private int countDeletedRecords() throws Exception {
+        Field fr = DBFileAccess.class.getDeclaredField("freeRecords");
+        fr.setAccessible(true); // !!!
+        return ((Collection<?>) fr.get(dbFileAccess)).size();
+    }
+
     @Test
     public void testGetAllValidRecords() {
-        Class<DBFileAccess> clazz = DBFileAccess.class;
         try {
-            Method gavr = clazz.getDeclaredMethod("getAllValidRecords",
-                    new Class<?>[] {});
-            gavr.setAccessible(true); // !!!
-            assertEquals(stdRecCount, ((ArrayList<?>) gavr.invoke(dbFileAccess,
-                    new Object[] {})).size());
+            assertEquals(stdRecCount, countValidRecords());
         } catch (Exception e) {
             e.printStackTrace();
             fail("An exception occurred.");
@@ -111,22 +131,15 @@ public class DBFileAccessTest {
 
     @Test
     public void testGetAllDeletedRecords() {
-        Class<DBFileAccess> clazz = DBFileAccess.class;
         try {
-            Method gavr = clazz.getDeclaredMethod("getAllDeletedRecords",
-                    new Class<?>[] {});
-            gavr.setAccessible(true); // !!!
-            assertEquals(0, ((ArrayList<?>) gavr.invoke(dbFileAccess,
-                    new Object[] {})).size());
+            assertEquals(0, countDeletedRecords());
 
             dbFileAccess.delete(2);
-            assertEquals(1, ((ArrayList<?>) gavr.invoke(dbFileAccess,
-                    new Object[] {})).size());
+            assertEquals(1, countDeletedRecords());
 
             dbFileAccess.delete(3);
             dbFileAccess.delete(18);
-            assertEquals(3, ((ArrayList<?>) gavr.invoke(dbFileAccess,
-                    new Object[] {})).size());
+            assertEquals(3, countDeletedRecords());
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -134,6 +147,22 @@ public class DBFileAccessTest {
         }
     }
 
+    @Test
+    public void testIsValidRecord() throws Exception {
+        assertTrue(dbFileAccess.isValidRecord(0));
+        assertTrue(dbFileAccess.isValidRecord(stdRecCount - 1));
+        assertFalse(dbFileAccess.isValidRecord(stdRecCount));
+        assertFalse(dbFileAccess.isValidRecord(-1));
+
+        dbFileAccess.delete(7);
+        assertFalse(dbFileAccess.isValidRecord(7));
+
+        int recNo = dbFileAccess.create(new String[] { "Valid again",
+                "New location", "New spec", "4", "$44", "" });
+        assertEquals(7, recNo);
+        assertTrue(dbFileAccess.isValidRecord(7));
+    }
+
     @Test
     public void testFind() {
         try {
@@ -216,18 +245,11 @@ public class DBFileAccessTest {
     @Test
     public void testDelete() {
         try {
-            Class<DBFileAccess> clazz = DBFileAccess.class;
-            Method gavr = clazz.getDeclaredMethod("getAllDeletedRecords",
-                    new Class<?>[] {});
-            gavr.setAccessible(true); // !!!
-
-            int diff = ((ArrayList<?>) gavr.invoke(dbFileAccess,
-                    new Object[] {})).size();
+            int diff = countDeletedRecords();
             dbFileAccess.delete(10);
             dbFileAccess.delete(11);
             dbFileAccess.delete(20);
-            diff = ((ArrayList<?>) gavr.invoke(dbFileAccess, new Object[] {}))
-                    .size() - diff;
+            diff = countDeletedRecords() - diff;
             assertEquals(3, diff);
         } catch (Exception e) {
             e.printStackTrace();
@@ -258,6 +280,27 @@ public class DBFileAccessTest {
         }
     }
 
+    @Test
+    public void testCreateReusesFreeSlotsOnly() throws Exception {
+        dbFileAccess.delete(3);
+        dbFileAccess.delete(9);
+
+        assertEquals(3, dbFileAccess.create(new String[] { "Reuse 1",
+                "New location", "New spec", "4", "$44", "" }));
+        assertEquals(9, dbFileAccess.create(new String[] { "Reuse 2",
+                "New location", "New spec", "4", "$44", "" }));
+        assertEquals(stdRecCount, dbFileAccess.create(new String[] {
+                "Append 1", "New location", "New spec", "4", "$44", "" }));
+        assertEquals(stdRecCount + 1, dbFileAccess.create(new String[] {
+                "Append 2", "New location", "New spec", "4", "$44", "" }));
+
+        // no live record has been overwritten
+        assertEquals("Bitter Homes & Gardens", dbFileAccess.read(32)[0]);
+        assertEquals("Append 1", dbFileAccess.read(stdRecCount)[0]);
+        assertEquals(stdRecCount + 2, dbFileAccess.find(new String[] { null,
+                null, null, null, null, null }).length);
+    }
+
     @Test
     public void testCreate() {
         try {
@@ -284,4 +327,380 @@ public class DBFileAccessTest {
         }
     }
 
+    @Test
+    public void testMemoryResidentReadsAndWritesThrough() throws Exception {
+        DBFileAccess memory = new DBFileAccess(dbFile, false, true);
+        for (int recNo = 0; recNo < stdRecCount; recNo++) {
+            assertEquals(dbFileAccess.isValidRecord(recNo), memory
+                    .isValidRecord(recNo));
+            if (memory.isValidRecord(recNo)) {
+                assertEquals(dbFileAccess.read(recNo)[0], memory.read(recNo)[0]);
+            }
+        }
+
+        memory.update(2, new String[] { "Memory name", "Smallville",
+                "Drywall", "9", "$85.00", "" });
+        int newRecNo = memory.create(new String[] { "Memory new",
+                "New location", "New spec", "4", "$44", "" });
+        assertEquals(stdRecCount, newRecNo);
+        assertEquals(1, memory.find(new String[] { "Memory na", null, null,
+                null, null, null }).length);
+
+        // the modifications have been written to the file as well
+        DBFileAccess reopened = new DBFileAccess(dbFile);
+        assertEquals("Memory name", reopened.read(2)[0]);
+        assertEquals("Memory new", reopened.read(newRecNo)[0]);
+    }
+
+    @Test
+    public void testFindUsesUpToDateIndexes() throws Exception {
+        String[] byName = new String[] { "Fred & N", null, null, null, null,
+                null };
+        int named = dbFileAccess.find(byName).length;
+
+        dbFileAccess.update(2, new String[] { "Renamed", "Smallville",
+                "Drywall", "9", "$85.00", "" });
+        assertEquals(named - 1, dbFileAccess.find(byName).length);
+        int[] renamed = dbFileAccess.find(new String[] { "Ren", "Small",
+                null, null, null, null });
+        assertEquals(1, renamed.length);
+        assertEquals(2, renamed[0]);
+        assertEquals(1, dbFileAccess.find(new String[] { "Ren", null,
+                "Dry", null, null, null }).length);
+        assertEquals(0, dbFileAccess.find(new String[] { "Ren", null,
+                "Roofing", null, null, null }).length);
+
+        dbFileAccess.delete(2);
+        assertEquals(0, dbFileAccess.find(new String[] { "Ren", null, null,
+                null, null, null }).length);
+        int recNo = dbFileAccess.create(new String[] { "Fred & Nobby",
+                "Elsewhere", "Drywall", "9", "$85.00", "" });
+        int[] found = dbFileAccess.find(byName);
+        assertEquals(named, found.length);
+        assertTrue(Arrays.binarySearch(found, recNo) >= 0);
+    }
+
+    @Test
+    public void testFindExact() throws Exception {
+        String[] name = new String[] { "Fred & Nobby", null, null, null, null,
+                null };
+        String[] location = new String[] { null, "Smallville", null, null,
+                null, null };
+        String[] both = new String[] { "Fred & Nobby", "Smallville", null,
+                null, null, null };
+        int names = dbFileAccess.findExact(name, true).length;
+        int locations = dbFileAccess.findExact(location, true).length;
+        int[] and = dbFileAccess.findExact(both, true);
+        int[] or = dbFileAccess.findExact(both, false);
+
+        assertTrue(Arrays.binarySearch(and, 2) >= 0);
+        assertEquals(names + locations - and.length, or.length);
+        assertEquals(0, dbFileAccess.findExact(new String[] { "Fred & Nob",
+                null, null, null, null, null }, true).length);
+        assertEquals(1, dbFileAccess.findExact(new String[] { "Fred & Nobby",
+                "Smallville", "Drywall", "9", null, null }, true).length);
+        assertEquals(dbFileAccess.find(new String[6]).length, dbFileAccess
+                .findExact(new String[6], false).length);
+    }
+
+    @Test
+    public void testCreateRejectsDuplicateKey() throws Exception {
+        String[] existing = dbFileAccess.read(2);
+        existing[5] = "12345678"; // the owner is not part of the key
+        try {
+            dbFileAccess.create(existing);
+            fail("Duplicate key not detected");
+        } catch (DuplicateKeyException dke) {
+            // expected
+        }
+
+        // a prefix of an existing value is a different key
+        existing[0] = existing[0].substring(0, 4);
+        int recNo = dbFileAccess.create(existing);
+
+        // the key of a deleted record can be used again
+        dbFileAccess.delete(recNo);
+        assertEquals(recNo, dbFileAccess.create(existing));
+
+        // the key of an updated record is replaced
+        existing[0] = "Updated name";
+        dbFileAccess.update(recNo, existing);
+        existing[0] = existing[0].substring(0, 4);
+        assertEquals(recNo + 1, dbFileAccess.create(existing));
+    }
+
+    @Test
+    public void testReadAll() throws Exception {
+        dbFileAccess.delete(3);
+        String[] updated = dbFileAccess.read(20);
+        updated[0] = "Journaled";
+        dbFileAccess.update(20, updated);
+
+        int[] recNos = new int[] { 31, 0, 3, 20, 1, 12, 99, 2 };
+        String[][] records = dbFileAccess.readAll(recNos);
+        assertEquals(recNos.length, records.length);
+        for (int i = 0; i < recNos.length; i++) {
+            if (recNos[i] == 3 || recNos[i] == 99) {
+                assertNull(records[i]);
+            } else {
+                assertArrayEquals(dbFileAccess.read(recNos[i]), records[i]);
+            }
+        }
+        assertEquals("Journaled", records[3][0]);
+        assertEquals(0, dbFileAccess.readAll(new int[0]).length);
+    }
+
+    @Test
+    public void testAppendAll() throws Exception {
+        final String[][] records = new String[][] {
+                { "Bulk A", "Trier", "Spec", "4", "$44", "" },
+                dbFileAccess.read(7),
+                { "Bulk B", "Trier", "Spec", "4", "$44", "" },
+                { "Bulk A", "Trier", "Spec", "4", "$44", "1234" } };
+        dbFileAccess.delete(2);
+        int recordCount = dbFileAccess.find(new String[6]).length + 1;
+
+        BulkLoadResult result = dbFileAccess.appendAll(new DBRecordSource() {
+            private int next = 0;
+
+            public String[] nextRecord() {
+                return next < records.length ? records[next++] : null;
+            }
+
+            public void close() {
+            }
+        });
+        assertEquals(2, result.getImportedCount());
+        assertEquals(2, result.getDuplicateCount());
+
+        // the records are appended, the free slot is left
+        assertFalse(dbFileAccess.isValidRecord(2));
+        assertArrayEquals(records[0], dbFileAccess.read(recordCount));
+        assertArrayEquals(records[2], dbFileAccess.read(recordCount + 1));
+        assertEquals(2, new DBFileAccess(dbFile).find(new String[] { "Bulk",
+                null, null, null, null, null }).length);
+    }
+
+    @Test
+    public void testSnapshotIgnoresLaterModifications() throws Exception {
+        DBFileAccess journaled = new DBFileAccess(dbFile, true);
+        String[] original = journaled.read(3);
+        DBSnapshot snapshot = journaled.openSnapshot();
+        String[] updated = original.clone();
+        updated[0] = "Updated";
+        journaled.update(3, updated);
+        journaled.delete(4);
+        journaled.create(new String[] { "Created", "Trier", "Spec", "4",
+                "$44", "" });
+        journaled.checkpoint();
+
+        ByteBuffer chunk = ByteBuffer.allocate(10 * 183);
+        assertEquals(10, journaled.readSnapshot(snapshot, 0, chunk));
+        assertArrayEquals(original, journaled.getCodec().decode(
+                chunk.array(), 3 * 183));
+        assertEquals(DBFileAccess.RECORD_VALID, chunk.get(4 * 183));
+
+        // the created record is not part of the snapshot
+        int slots = snapshot.getSlotCount();
+        assertEquals(slots % 10, journaled.readSnapshot(snapshot, slots
+                - slots % 10, chunk));
+        assertEquals(0, journaled.readSnapshot(snapshot, slots, chunk));
+        journaled.closeSnapshot(snapshot);
+        assertEquals("Updated", journaled.read(3)[0]);
+        journaled.close();
+    }
+
+    @Test
+    public void testCompactionKeepsRecordNumbers() throws Exception {
+        compactAndVerify(dbFileAccess);
+    }
+
+    @Test
+    public void testCompactionOfMemoryResidentRecords() throws Exception {
+        DBFileAccess memory = new DBFileAccess(dbFile, true, true);
+        compactAndVerify(memory);
+        memory.close();
+    }
+
+    private void compactAndVerify(DBFileAccess access) throws Exception {
+        String[] newRecord = new String[] { "Compacted", "Nowhere", "Spec",
+                "4", "$44", "" };
+        for (int recNo = 0; recNo < 20; recNo += 2) {
+            access.delete(recNo);
+        }
+        long lengthBefore = dbFile.length();
+
+        access.beginCompaction();
+        access.copyCompactedRecords();
+
+        // modifications while the records are copied
+        access.update(5, newRecord);
+        access.delete(7);
+        newRecord[0] = "Created";
+        int created = access.create(newRecord);
+        assertEquals(0, created);
+        newRecord[0] = "Also created";
+        int alsoCreated = access.create(newRecord);
+        assertEquals(2, alsoCreated);
+
+        assertTrue(access.finishCompaction() > 0);
+        assertTrue(dbFile.length() < lengthBefore);
+
+        // the record numbers are unchanged
+        assertEquals("Compacted", access.read(5)[0]);
+        assertEquals("Created", access.read(created)[0]);
+        assertEquals("Also created", access.read(alsoCreated)[0]);
+        assertFalse(access.isValidRecord(7));
+        assertFalse(access.isValidRecord(4));
+        assertEquals("Bitter Homes & Gardens", access.read(32)[0]);
+
+        // deleted records are reused after the compaction
+        newRecord[0] = "Reused";
+        assertEquals(4, access.create(newRecord));
+        assertEquals("Reused", access.read(4)[0]);
+        access.checkpoint();
+
+        // the compacted file contains exactly the valid records
+        int valid = access.find(new String[6]).length;
+        DBFileAccess reopened = new DBFileAccess(dbFile);
+        assertEquals(valid, reopened.find(new String[6]).length);
+        assertEquals(1, reopened.find(new String[] { "Compacted", null, null,
+                null, null, null }).length);
+        assertEquals(1, reopened.find(new String[] { "Reused", null, null,
+                null, null, null }).length);
+
+        // the record numbers survive reopening the file
+        assertEquals("Compacted", reopened.read(5)[0]);
+        assertEquals("Created", reopened.read(created)[0]);
+        assertEquals("Also created", reopened.read(alsoCreated)[0]);
+        assertEquals("Reused", reopened.read(4)[0]);
+        assertFalse(reopened.isValidRecord(7));
+        assertEquals("Bitter Homes & Gardens", reopened.read(32)[0]);
+    }
+
+    @Test
+    public void testRecordNumbersAfterCompactionSurviveReopening()
+            throws Exception {
+        for (int recNo = 0; recNo < 10; recNo++) {
+            dbFileAccess.delete(recNo);
+        }
+        dbFileAccess.beginCompaction();
+        dbFileAccess.copyCompactedRecords();
+        dbFileAccess.finishCompaction();
+
+        // reuses the records deleted before the compaction, then appends
+        int[] created = new int[12];
+        for (int i = 0; i < created.length; i++) {
+            created[i] = dbFileAccess.create(new String[] { "New " + i,
+                    "Nowhere", "Spec", "4", "$44", "" });
+        }
+        assertEquals(stdRecCount + 1, created[11]);
+        dbFileAccess.delete(created[3]);
+
+        DBFileAccess reopened = new DBFileAccess(dbFile);
+        for (int i = 0; i < created.length; i++) {
+            assertEquals(i != 3, reopened.isValidRecord(created[i]));
+            if (i != 3) {
+                assertEquals("New " + i, reopened.read(created[i])[0]);
+            }
+        }
+        assertEquals("Bitter Homes & Gardens", reopened.read(32)[0]);
+
+        // the deleted record is reused after reopening as well
+        assertEquals(created[3], reopened.create(new String[] { "Again",
+                "Nowhere", "Spec", "4", "$44", "" }));
+    }
+
+    @Test
+    public void testCompactionReplacesDatabaseFile() throws Exception {
+        Field dsl = DBFileAccess.class.getDeclaredField("dataSetLength");
+        dsl.setAccessible(true); // !!!
+        long recordLength = dsl.getInt(dbFileAccess);
+        long lengthBefore = dbFile.length();
+        dbFileAccess.delete(0);
+        dbFileAccess.delete(1);
+        dbFileAccess.beginCompaction();
+        dbFileAccess.copyCompactedRecords();
+        assertEquals(2 * recordLength, dbFileAccess.finishCompaction());
+
+        assertEquals(lengthBefore - 2 * recordLength, dbFile.length());
+        assertFalse(new File(dbFile.getPath() + ".compact").exists());
+        assertFalse(new File(dbFile.getPath() + ".slots.tmp").exists());
+        assertTrue(new File(dbFile.getPath() + ".slots").exists());
+        assertEquals("Bitter Homes & Gardens", dbFileAccess.read(32)[0]);
+    }
+
+    @Test
+    public void testInterruptedReplacementIsCompletedOnOpening()
+            throws Exception {
+        File copy = new File(dbFile.getPath() + ".compact");
+        File slotsFile = new File(dbFile.getPath() + ".slots");
+        File slotsTempFile = new File(dbFile.getPath() + ".slots.tmp");
+        dbFileAccess.delete(0);
+        dbFileAccess.beginCompaction();
+        dbFileAccess.copyCompactedRecords();
+        dbFileAccess.finishCompaction();
+        long compactedLength = dbFile.length();
+
+        // the database file has been deleted, the copy not yet renamed
+        assertTrue(dbFile.renameTo(copy));
+        assertTrue(slotsFile.renameTo(slotsTempFile));
+
+        DBFileAccess reopened = new DBFileAccess(dbFile);
+        assertEquals(compactedLength, dbFile.length());
+        assertFalse(copy.exists());
+        assertFalse(slotsTempFile.exists());
+        assertFalse(reopened.isValidRecord(0));
+        assertEquals("Bitter Homes & Gardens", reopened.read(32)[0]);
+        assertEquals(stdRecCount - 1, reopened.find(new String[6]).length);
+    }
+
+    @Test
+    public void testInterruptedReplacementIsRolledBackOnOpening()
+            throws Exception {
+        File copy = new File(dbFile.getPath() + ".compact");
+        File slotsFile = new File(dbFile.getPath() + ".slots");
+        File slotsTempFile = new File(dbFile.getPath() + ".slots.tmp");
+        dbFileAccess.delete(0);
+        byte[] uncompacted = Files.readAllBytes(dbFile.toPath());
+        dbFileAccess.beginCompaction();
+        dbFileAccess.copyCompactedRecords();
+        dbFileAccess.finishCompaction();
+
+        // the copy and its slot map are written, the database file untouched
+        assertTrue(dbFile.renameTo(copy));
+        assertTrue(slotsFile.renameTo(slotsTempFile));
+        Files.write(dbFile.toPath(), uncompacted);
+
+        DBFileAccess reopened = new DBFileAccess(dbFile);
+        assertEquals(uncompacted.length, dbFile.length());
+        assertFalse(copy.exists());
+        assertFalse(slotsTempFile.exists());
+        assertFalse(slotsFile.exists());
+        assertFalse(reopened.isValidRecord(0));
+        assertEquals("Bitter Homes & Gardens", reopened.read(32)[0]);
+        assertEquals(stdRecCount - 1, reopened.find(new String[6]).length);
+    }
+
+    @Test
+    public void testInterruptedCompactionIsCompletedOnOpening()
+            throws Exception {
+        dbFileAccess.delete(0);
+        dbFileAccess.beginCompaction();
+        dbFileAccess.copyCompactedRecords();
+        dbFileAccess.finishCompaction();
+
+        // the database file has been replaced, the slot map not yet
+        File slotsFile = new File(dbFile.getPath() + ".slots");
+        File slotsTempFile = new File(dbFile.getPath() + ".slots.tmp");
+        assertTrue(slotsFile.renameTo(slotsTempFile));
+
+        DBFileAccess reopened = new DBFileAccess(dbFile);
+        assertTrue(slotsFile.exists());
+        assertFalse(slotsTempFile.exists());
+        assertFalse(reopened.isValidRecord(0));
+        assertEquals("Bitter Homes & Gardens", reopened.read(32)[0]);
+        assertEquals(stdRecCount - 1, reopened.find(new String[6]).length);
+    }
+
 }
@@ -3,7 +3,7 @@ package suncertify.db;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.RandomAccessFile;
+import java.io.IOException;
 
 public class DBFileCreator {
 
@@ -22,63 +22,49 @@ public class DBFileCreator {
 	return input;
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
 	writeGenericFile(100000);
 	DbFilePrinter.printFile(dbFile, false);
     }
 
-    public static void writeGenericFile(int additionalEntries) {
+    public static void writeGenericFile(int additionalEntries)
+	    throws IOException {
 	try {
 	    File stdFile = new File("files/db-files/stdContent.db");
 	    FileInputStream fis = new FileInputStream(stdFile);
 	    byte[] stdContent = new byte[(int) stdFile.length()];
 	    fis.read(stdContent);
+	    fis.close();
 	    if (dbFile.exists()) {
 		dbFile.delete();
 	    }
 	    FileOutputStream fos = new FileOutputStream(dbFile, false);
 	    fos.write(stdContent);
 	    fos.close();
-	    long startTime = System.currentTimeMillis();
-	    for (int i = 1; i <= additionalEntries; i++) {
-		create(i + 32, getGenericData(i, ((int) (Math.random() * 10))));
-		if (i % 50 == 0) {
-		    long time = System.currentTimeMillis() - startTime;
-		    System.out.println(String.format(
-			    "Eintrag %5d erstellt (%2dh %2dm %2ds)", i,
-			    (time % (24 * 60 * 60 * 1000)) / (60 * 60 * 1000),
-			    (time % (60 * 60 * 1000)) / (60 * 1000),
-			    (time % (60 * 1000)) / 1000));
-		}
-	    }
-	} catch (Exception e) {
-	    System.err.println("Could not write standard file content");
-	}
-    }
+	    DBFileAccess dbFileAccess = new DBFileAccess(dbFile);
+	    try {
+		final int entries = additionalEntries;
+		BulkLoadResult result = dbFileAccess
+			.appendAll(new DBRecordSource() {
+			    private int nr = 0;
 
-    private static void create(int recNo, String[] data) {
-	int dataSectionStart = 54;
-	int dataSetLength = 183;
-	try {
-	    RandomAccessFile raf = new RandomAccessFile(dbFile, "rw");
-	    int writePos = dataSectionStart + (dataSetLength * recNo);
-	    raf.seek(writePos);
-	    byte[] buf = { 00 };
-	    raf.write(buf);
-	    writePos += 1;
-	    int[] colLengths = new int[] { 32, 64, 64, 6, 8, 8 };
-	    for (int i = 0; i < colLengths.length; i++) {
-		String str = data[i];
-		raf.seek(writePos);
-		// data is padded right (i.e.: left-justified)
-		str = String.format("%1$-" + colLengths[i] + "s",
-			(str != null ? str : ""));
-		buf = str.getBytes();
-		raf.write(buf);
-		writePos += colLengths[i];
+			    public String[] nextRecord() {
+				nr++;
+				return nr <= entries ? getGenericData(nr,
+					((int) (Math.random() * 10))) : null;
+			    }
+
+			    public void close() {
+			    }
+			});
+		System.out.println(result);
+	    } finally {
+		dbFileAccess.close();
 	    }
-	} catch (Exception e) {
-	    e.printStackTrace();
+	} catch (IOException ioe) {
+	    System.err.println("Could not write generic file content");
+	    ioe.printStackTrace();
+	    throw ioe;
 	}
     }
 
@@ -0,0 +1,170 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.util.Timer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import suncertify.EveryTest;
+
+public class DBJournalTest {
+
+    private static File dbFile = EveryTest.getDBFile();
+
+    private static File journalFile = new File(dbFile.getPath() + ".journal");
+
+    private DBFileAccess dbFileAccess;
+
+    @Before
+    public void setUp() throws Exception {
+        EveryTest.writeStdContent();
+        dbFileAccess = new DBFileAccess(dbFile, true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dbFileAccess.release();
+    }
+
+    /**
+     * Stops the given database like a crash of the application, i.e.: without
+     * a final checkpoint.
+     */
+    private static void crash(Data data) throws Exception {
+        Field timer = Data.class.getDeclaredField("maintenanceTimer");
+        timer.setAccessible(true); // !!!
+        ((Timer) timer.get(data)).cancel();
+        Field database = Data.class.getDeclaredField("database");
+        database.setAccessible(true); // !!!
+        ((DBFileAccess) database.get(data)).release();
+    }
+
+    @Test
+    public void testCommittedUpdateIsRecoveredAfterCrash() throws Exception {
+        String[] rec = dbFileAccess.read(3);
+        rec[5] = "12345678";
+        dbFileAccess.update(3, rec);
+        dbFileAccess.delete(4);
+        dbFileAccess.commit(dbFileAccess.getCommitTicket());
+
+        // Not yet checkpointed: the database file is still unchanged
+        DBFileAccess plain = new DBFileAccess(dbFile);
+        assertEquals("", plain.read(3)[5]);
+        assertEquals(true, plain.isValidRecord(4));
+
+        // Reopening after a crash replays the journal
+        dbFileAccess.release();
+        DBFileAccess recovered = new DBFileAccess(dbFile, true);
+        assertEquals("12345678", recovered.read(3)[5]);
+        assertEquals(false, recovered.isValidRecord(4));
+        assertEquals(8, journalFile.length());
+        recovered.release();
+    }
+
+    @Test
+    public void testUnforcedCommitIsWrittenToJournal() throws Exception {
+        String[] rec = dbFileAccess.read(3);
+        rec[5] = "87654321";
+        dbFileAccess.update(3, rec);
+        assertEquals(8, journalFile.length()); // only buffered so far
+        dbFileAccess.commit(dbFileAccess.getCommitTicket(), false);
+        assertEquals(true, journalFile.length() > 8);
+
+        // A crash of the application does not lose the update
+        dbFileAccess.release();
+        DBFileAccess recovered = new DBFileAccess(dbFile, true);
+        assertEquals("87654321", recovered.read(3)[5]);
+        recovered.release();
+    }
+
+    @Test
+    public void testCheckpointWritesDatabaseFile() throws Exception {
+        int recNo = dbFileAccess.create(new String[] { "Journaled",
+                "Trier", "Everything", "4", "$44", "" });
+        dbFileAccess.commit(dbFileAccess.getCommitTicket());
+        dbFileAccess.checkpoint();
+
+        assertEquals(8, journalFile.length());
+        assertEquals("Journaled", new DBFileAccess(dbFile).read(recNo)[0]);
+    }
+
+    @Test
+    public void testCloseWritesDatabaseFile() throws Exception {
+        String[] rec = dbFileAccess.read(3);
+        rec[5] = "12345678";
+        dbFileAccess.update(3, rec);
+        dbFileAccess.commit(dbFileAccess.getCommitTicket());
+        dbFileAccess.close();
+
+        assertEquals(8, journalFile.length());
+        assertEquals("12345678", new DBFileAccess(dbFile).read(3)[5]);
+    }
+
+    @Test
+    public void testTornEntryIsIgnored() throws Exception {
+        String name5 = dbFileAccess.read(5)[0];
+        String[] rec = dbFileAccess.read(3);
+        rec[5] = "87654321";
+        dbFileAccess.update(3, rec);
+        dbFileAccess.commit(dbFileAccess.getCommitTicket());
+
+        // Simulate an entry whose writing was interrupted
+        RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+        raf.seek(raf.length());
+        raf.write(new byte[] { 0, 0, 0, 5, 0, 'X', 'Y' });
+        raf.close();
+
+        dbFileAccess.release();
+        DBFileAccess recovered = new DBFileAccess(dbFile, true);
+        assertEquals("87654321", recovered.read(3)[5]);
+        assertEquals(name5, recovered.read(5)[0]);
+        recovered.release();
+    }
+
+    @Test(expected = IOException.class)
+    public void testJournalInUseCannotBeOpened() throws Exception {
+        new DBFileAccess(dbFile, true);
+    }
+
+    @Test
+    public void testConcurrentCommits() throws Exception {
+        dbFileAccess.release();
+        final Data data = new Data(dbFile);
+        Thread[] threads = new Thread[10];
+        for (int i = 0; i < threads.length; i++) {
+            final int recNo = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        String[] rec = data.read(recNo);
+                        rec[5] = "1000000" + recNo;
+                        data.lock(recNo);
+                        data.update(recNo, rec);
+                        data.unlock(recNo);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        crash(data);
+        DBFileAccess recovered = new DBFileAccess(dbFile, true);
+        for (int i = 0; i < threads.length; i++) {
+            assertEquals("1000000" + i, recovered.read(i)[5]);
+        }
+        recovered.release();
+    }
+
+}
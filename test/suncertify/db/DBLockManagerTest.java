@@ -0,0 +1,329 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DBLockManagerTest {
+
+    private DBLockManager lockManager;
+
+    @Before
+    public void setUp() throws Exception {
+        lockManager = new DBLockManager();
+    }
+
+    @Test
+    public void testLockAndUnlock() throws Exception {
+        lockManager.lock(3);
+        lockManager.lock(3); // locking twice keeps the lock
+        assertTrue(lockManager.isLocked(3));
+        assertTrue(lockManager.isOwnedByCurrentThread(3));
+        assertFalse(lockManager.isLocked(19)); // same stripe as 3
+
+        assertTrue(lockManager.unlock(3));
+        assertFalse(lockManager.isLocked(3));
+        assertFalse(lockManager.unlock(3));
+    }
+
+    @Test
+    public void testUnlockByOtherThreadIsIgnored() throws Exception {
+        lockManager.lock(5);
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                lockManager.unlock(5);
+            }
+        };
+        other.start();
+        other.join();
+        assertTrue(lockManager.isOwnedByCurrentThread(5));
+    }
+
+    @Test
+    public void testLockOwnedByCookieIsNotBoundToThread() throws Exception {
+        final Long cookie = Long.valueOf(42);
+        assertTrue(lockManager.tryLock(6, cookie, 0, TimeUnit.MILLISECONDS));
+        assertFalse(lockManager.isOwnedByCurrentThread(6));
+        assertFalse(lockManager.unlock(6)); // the thread is not the owner
+
+        final boolean[] released = new boolean[1];
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                released[0] = lockManager.isOwnedBy(6, Long.valueOf(42))
+                        && lockManager.unlock(6, Long.valueOf(42));
+            }
+        };
+        other.start();
+        other.join();
+        assertTrue(released[0]);
+        assertFalse(lockManager.isLocked(6));
+    }
+
+    @Test
+    public void testLockIsHandedOverInArrivalOrder() throws Exception {
+        final List<Integer> order = Collections
+                .synchronizedList(new ArrayList<Integer>());
+        lockManager.lock(7);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 5; i++) {
+            final int nr = i;
+            Thread waiter = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        lockManager.lock(7);
+                        order.add(nr);
+                        lockManager.unlock(7);
+                    } catch (InterruptedException ie) {
+                        // ends the thread
+                    }
+                }
+            };
+            waiter.start();
+            threads.add(waiter);
+            waitUntilWaiting(waiter);
+        }
+        lockManager.unlock(7);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(5, order.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, order.get(i).intValue());
+        }
+        assertFalse(lockManager.isLocked(7));
+    }
+
+    @Test
+    public void testInterruptedWaiterLeavesQueue() throws Exception {
+        lockManager.lock(9);
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    lockManager.lock(9);
+                } catch (InterruptedException ie) {
+                    // expected
+                }
+            }
+        };
+        waiter.start();
+        waitUntilWaiting(waiter);
+        waiter.interrupt();
+        waiter.join();
+
+        lockManager.unlock(9);
+        assertFalse(lockManager.isLocked(9));
+    }
+
+    @Test
+    public void testTryLockTimesOut() throws Exception {
+        lockManager.lock(11);
+        final boolean[] acquired = new boolean[2];
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    acquired[0] = lockManager.tryLock(11, 20,
+                            TimeUnit.MILLISECONDS);
+                    acquired[1] = lockManager.tryLock(12, 20,
+                            TimeUnit.MILLISECONDS);
+                    lockManager.unlock(12);
+                } catch (InterruptedException ie) {
+                    // ends the thread
+                }
+            }
+        };
+        other.start();
+        other.join();
+        assertFalse(acquired[0]);
+        assertTrue(acquired[1]);
+
+        // the timed out waiter has left the queue
+        lockManager.unlock(11);
+        assertFalse(lockManager.isLocked(11));
+    }
+
+    @Test
+    public void testExpiredLeaseIsHandedOver() throws Exception {
+        lockManager.setLeaseTime(50, TimeUnit.MILLISECONDS);
+        lockManager.lock(13);
+        final boolean[] acquired = new boolean[1];
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    lockManager.lock(13);
+                    acquired[0] = lockManager.isOwnedByCurrentThread(13);
+                    lockManager.unlock(13);
+                } catch (InterruptedException ie) {
+                    // ends the thread
+                }
+            }
+        };
+        waiter.start();
+        waitUntilWaiting(waiter);
+
+        Thread.sleep(3 * DBLockManager.LEASE_TICK_MILLIS);
+        assertEquals(1, lockManager.expireLeases());
+        waiter.join();
+        assertTrue(acquired[0]);
+        assertFalse(lockManager.unlock(13)); // the lease has been lost
+        assertEquals(1, lockManager.getStatistics().getExpiredCount());
+    }
+
+    @Test
+    public void testExpiredLeaseIsNotOwnedBeforeRelease() throws Exception {
+        lockManager.setLeaseTime(50, TimeUnit.MILLISECONDS);
+        lockManager.lock(15);
+        assertTrue(lockManager.isOwnedByCurrentThread(15));
+        Thread.sleep(100);
+
+        // not released yet, but the owner must not modify the record anymore
+        assertFalse(lockManager.isLocked(15));
+        assertFalse(lockManager.isOwnedByCurrentThread(15));
+        assertEquals(1, lockManager.expireLeases());
+    }
+
+    @Test
+    public void testRelockAfterExpiredLeaseStartsNewLease() throws Exception {
+        lockManager.setLeaseTime(50, TimeUnit.MILLISECONDS);
+        lockManager.lock(16);
+        Thread.sleep(100);
+
+        // the expired lock is acquired anew before it has been released
+        assertTrue(lockManager.tryLock(16, 0, TimeUnit.MILLISECONDS));
+        assertTrue(lockManager.isOwnedByCurrentThread(16));
+        assertTrue(lockManager.isLocked(16));
+        assertEquals(0, lockManager.expireLeases());
+        assertEquals(1, lockManager.getStatistics().getExpiredCount());
+        assertTrue(lockManager.unlock(16));
+    }
+
+    @Test
+    public void testRenewedLeaseDoesNotExpire() throws Exception {
+        lockManager.setLeaseTime(1000, TimeUnit.MILLISECONDS);
+        lockManager.lock(14);
+        Thread.sleep(600);
+        assertTrue(lockManager.renew(14, Thread.currentThread()));
+        Thread.sleep(600);
+        assertEquals(0, lockManager.expireLeases());
+        assertTrue(lockManager.isOwnedByCurrentThread(14));
+
+        Thread.sleep(600);
+        assertEquals(1, lockManager.expireLeases());
+        assertFalse(lockManager.isLocked(14));
+        assertFalse(lockManager.renew(14, Thread.currentThread()));
+        LockStatistics statistics = lockManager.getStatistics();
+        assertEquals(1, statistics.getRenewedCount());
+        assertEquals(1, statistics.getExpiredCount());
+        assertEquals(0, statistics.getLockedCount());
+    }
+
+    @Test
+    public void testLockAllIsAllOrNothing() throws Exception {
+        final Thread holder = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    lockManager.lock(5);
+                } catch (InterruptedException ie) {
+                    // ends the thread
+                }
+            }
+        };
+        holder.start();
+        holder.join();
+
+        Object owner = Long.valueOf(1);
+        assertFalse(lockManager.tryLockAll(new int[] { 8, 5, 2 }, owner, 20,
+                TimeUnit.MILLISECONDS));
+        assertFalse(lockManager.isLocked(2));
+        assertFalse(lockManager.isLocked(8));
+
+        assertTrue(lockManager.unlock(5, holder));
+        assertTrue(lockManager.tryLockAll(new int[] { 8, 5, 2, 8 }, owner, 20,
+                TimeUnit.MILLISECONDS));
+        assertTrue(lockManager.isOwnedBy(2, owner));
+        assertTrue(lockManager.isOwnedBy(5, owner));
+        assertTrue(lockManager.isOwnedBy(8, owner));
+        assertEquals(3, lockManager.unlockAll(new int[] { 2, 5, 8 }, owner));
+    }
+
+    @Test
+    public void testLockAllUnderContentionDoesNotDeadlock() throws Exception {
+        final int records = 10;
+        final AtomicIntegerArray holders = new AtomicIntegerArray(records);
+        final AtomicInteger violations = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 16; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random();
+                    for (int j = 0; j < 300; j++) {
+                        int[] recNos = new int[1 + random.nextInt(4)];
+                        for (int k = 0; k < recNos.length; k++) {
+                            recNos[k] = random.nextInt(records);
+                        }
+                        try {
+                            lockManager.tryLockAll(recNos, this,
+                                    Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                        } catch (InterruptedException ie) {
+                            return;
+                        }
+                        for (int recNo : distinct(recNos)) {
+                            if (holders.incrementAndGet(recNo) != 1) {
+                                violations.incrementAndGet();
+                            }
+                        }
+                        Thread.yield();
+                        for (int recNo : distinct(recNos)) {
+                            holders.decrementAndGet(recNo);
+                        }
+                        lockManager.unlockAll(recNos, this);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join(60000);
+            assertFalse("Deadlock", thread.isAlive());
+        }
+        assertEquals(0, violations.get());
+        assertEquals(0, lockManager.getStatistics().getLockedCount());
+    }
+
+    private static Set<Integer> distinct(int[] recNos) {
+        Set<Integer> distinct = new HashSet<Integer>();
+        for (int recNo : recNos) {
+            distinct.add(recNo);
+        }
+        return distinct;
+    }
+
+    private static void waitUntilWaiting(Thread thread) throws Exception {
+        while (thread.getState() != Thread.State.WAITING
+                && thread.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DBRecordCacheTest {
+
+    private DBRecordCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new DBRecordCache(2);
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        assertNull(cache.get(1));
+        cache.put(1, new String[] { "a", "b" });
+        assertArrayEquals(new String[] { "a", "b" }, cache.get(1));
+
+        RecordCacheStatistics stats = cache.getStatistics();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(0.5, stats.getHitRate(), 0.0);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        cache.put(1, new String[] { "1" });
+        cache.put(2, new String[] { "2" });
+        cache.get(1);
+        cache.put(3, new String[] { "3" });
+
+        assertNull(cache.get(2));
+        assertArrayEquals(new String[] { "1" }, cache.get(1));
+        assertArrayEquals(new String[] { "3" }, cache.get(3));
+        assertEquals(1, cache.getStatistics().getEvictionCount());
+        assertEquals(2, cache.getStatistics().getSize());
+    }
+
+    @Test
+    public void testReturnsCopies() {
+        String[] values = new String[] { "a" };
+        cache.put(1, values);
+        values[0] = "changed";
+        String[] cached = cache.get(1);
+        cached[0] = "changed too";
+        assertArrayEquals(new String[] { "a" }, cache.get(1));
+    }
+
+    @Test
+    public void testRemove() {
+        cache.put(1, new String[] { "a" });
+        cache.remove(1);
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    public void testZeroCapacityDisablesCaching() {
+        cache = new DBRecordCache(0);
+        cache.put(1, new String[] { "a" });
+        assertNull(cache.get(1));
+        assertEquals(0, cache.getStatistics().getSize());
+    }
+
+}
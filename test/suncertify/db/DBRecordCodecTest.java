@@ -0,0 +1,61 @@
+package suncertify.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DBRecordCodecTest {
+
+    private DBRecordCodec codec;
+
+    @Before
+    public void setUp() throws Exception {
+        List<DBColumn> columns = new ArrayList<DBColumn>();
+        int[] lengths = new int[] { 8, 4, 6 };
+        for (int i = 0; i < lengths.length; i++) {
+            DBColumn dbCol = new DBColumn();
+            dbCol.setName("col" + i);
+            dbCol.setLength(lengths[i]);
+            dbCol.setNumber(i);
+            columns.add(dbCol);
+        }
+        codec = new DBRecordCodec(columns);
+    }
+
+    @Test
+    public void testRecordLength() {
+        assertEquals(19, codec.getRecordLength());
+    }
+
+    @Test
+    public void testDecodePaddedValues() {
+        byte[] buf = ("\0" + "Fred    " + "  ab" + "\0\0\0\0\0\0")
+                .getBytes();
+        assertArrayEquals(new String[] { "Fred", "ab", "" },
+                codec.decode(buf, 0));
+    }
+
+    @Test
+    public void testDecodeFullLengthValuesAtOffset() {
+        byte[] buf = ("xyz" + "\0" + "12345678" + "abcd" + "Null\0\0")
+                .getBytes();
+        assertArrayEquals(new String[] { "12345678", "abcd", "Null" },
+                codec.decode(buf, 3));
+    }
+
+    @Test
+    public void testEncodePadsAndRoundTrips() {
+        byte[] buf = new byte[codec.getRecordLength()];
+        codec.encode((byte) 0, new String[] { "Fred", null, "ab\u00e9" }, buf,
+                0);
+        assertEquals("\0Fred        ab?   ", new String(buf));
+        assertArrayEquals(new String[] { "Fred", "", "ab?" },
+                codec.decode(buf, 0));
+    }
+
+}
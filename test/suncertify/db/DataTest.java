@@ -1,10 +1,18 @@
 package suncertify.db;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Assert;
 
@@ -21,25 +29,27 @@ import suncertify.EveryTest;
  */
 public class DataTest {
 
-	private static DBMain data;
 	private static String[] correctData;
 
+	private Data data;
+
 	public DataTest() {
 	}
 
 	@BeforeClass
 	public static void setUpClass() throws Exception {
-		data = new Data(EveryTest.getDBFile());
 		correctData = createCorrectData();
 	}
 
 	@Before
 	public void setUp() throws Exception {
 		EveryTest.writeStdContent();
+		data = new Data(EveryTest.getDBFile(), 0);
 	}
 
 	@After
 	public void tearDown() throws Exception {
+		data.close();
 	}
 
 	private static String[] createCorrectData() {
@@ -159,4 +169,327 @@ public class DataTest {
 		Assert.assertTrue(result.length > 0);
 	}
 
+	@Test
+	public void testConcurrentCreateOfSameKey() throws Exception {
+		final String[] record = createCorrectData();
+		record[0] = "Concurrent Contractor";
+		final AtomicInteger created = new AtomicInteger();
+		final AtomicInteger duplicates = new AtomicInteger();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						data.create(record);
+						created.incrementAndGet();
+					} catch (DuplicateKeyException dke) {
+						duplicates.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(1, created.get());
+		assertEquals(threads.length - 1, duplicates.get());
+	}
+
+	@Test
+	public void testTryLockFailsFastOnBusyRecord() throws Exception {
+		final Exception[] failure = new Exception[1];
+		Thread holder = new Thread() {
+			@Override
+			public void run() {
+				try {
+					data.tryLock(1, 0);
+				} catch (Exception e) {
+					failure[0] = e;
+				}
+			}
+		};
+		holder.start();
+		holder.join();
+		assertEquals(null, failure[0]);
+
+		long start = System.currentTimeMillis();
+		try {
+			data.tryLock(1, 50);
+			fail("RecordBusyException expected");
+		} catch (RecordBusyException rbe) {
+			// expected
+		}
+		assertTrue(System.currentTimeMillis() - start < 5000);
+
+		// other records are not affected
+		data.tryLock(2, 0);
+		data.unlock(2);
+	}
+
+	@Test
+	public void testLockCookieAcrossThreads() throws Exception {
+		final long cookie = data.lockRecord(1, 0);
+		final String[] record = data.read(1);
+		record[5] = "12345678";
+
+		try {
+			data.update(1, record, cookie + 1);
+			fail("RecordNotFoundException expected");
+		} catch (RecordNotFoundException rnfe) {
+			// expected: wrong cookie
+		}
+		try {
+			data.update(1, record);
+			fail("RecordNotFoundException expected");
+		} catch (RecordNotFoundException rnfe) {
+			// expected: the thread does not own the lock
+		}
+
+		final Exception[] failure = new Exception[1];
+		Thread other = new Thread() {
+			@Override
+			public void run() {
+				try {
+					data.update(1, record, cookie);
+					data.unlock(1, cookie);
+				} catch (Exception e) {
+					failure[0] = e;
+				}
+			}
+		};
+		other.start();
+		other.join();
+		assertEquals(null, failure[0]);
+		assertFalse(data.isLocked(1));
+		assertEquals("12345678", data.read(1)[5]);
+	}
+
+	@Test
+	public void testExpiredLockOwnerCannotModify() throws Exception {
+		data.setLockLeaseTime(50);
+		long cookie = data.lockRecord(1, 0);
+		String[] record = data.read(1);
+		record[5] = "12345678";
+		Thread.sleep(100);
+		try {
+			data.update(1, record, cookie);
+			fail("RecordNotFoundException expected");
+		} catch (RecordNotFoundException rnfe) {
+			// expected: the lease has expired
+		}
+		assertEquals("", data.read(1)[5]);
+	}
+
+	@Test
+	public void testLockAllKeepsLocksHeldBefore() throws Exception {
+		data.lock(2);
+		try {
+			data.lockAll(new int[] { 2, 3, 999 }, 0);
+			fail("RecordNotFoundException expected");
+		} catch (RecordNotFoundException rnfe) {
+			// expected: record 999 does not exist
+		}
+		assertTrue(data.isLocked(2));
+		assertFalse(data.isLocked(3));
+		data.unlock(2);
+	}
+
+	@Test
+	public void testCompareAndUpdate() throws Exception {
+		DBRecord record = data.readRecord(1);
+		String[] values = record.getValues();
+		values[5] = "12345678";
+		assertTrue(data.compareAndUpdate(1, record.getVersion(), values));
+		assertEquals("12345678", data.read(1)[5]);
+
+		// the version read before is outdated now
+		values[5] = "87654321";
+		assertFalse(data.compareAndUpdate(1, record.getVersion(), values));
+		assertEquals("12345678", data.read(1)[5]);
+
+		// a locked record is not updated
+		record = data.readRecord(1);
+		long cookie = data.lockRecord(1, 0);
+		assertFalse(data.compareAndUpdate(1, record.getVersion(), values));
+		data.unlock(1, cookie);
+		assertTrue(data.compareAndUpdate(1, record.getVersion(), values));
+		assertEquals("87654321", data.read(1)[5]);
+	}
+
+	@Test
+	public void testDurabilityModes() throws Exception {
+		int recNo = 1;
+		// each modification is forced before it returns
+		data.setDurabilityMode(DurabilityMode.STRICT);
+		updateOwner(recNo, "1");
+		assertTrue(data.isDurable());
+
+		// every second modification is forced
+		data.setDurabilityMode(DurabilityMode.PERIODIC, 60000, 2);
+		assertTrue(data.isDurable());
+		updateOwner(recNo, "2");
+		assertFalse(data.isDurable());
+		updateOwner(recNo, "3");
+		assertTrue(data.isDurable());
+
+		// neither the modifications nor the checkpoints force anything
+		data.setDurabilityMode(DurabilityMode.ASYNC);
+		updateOwner(recNo, "4");
+		assertFalse(data.isDurable());
+		Thread.sleep(1500); // lets a background checkpoint run
+		assertFalse(data.isDurable());
+
+		// leaving the asynchronous mode forces all modifications
+		data.setDurabilityMode(DurabilityMode.STRICT);
+		assertTrue(data.isDurable());
+		assertEquals("4", data.read(recNo)[5]);
+	}
+
+	@Test
+	public void testBackgroundTasksSkipClosedDatabase() throws Exception {
+		data.setDurabilityMode(DurabilityMode.PERIODIC, 60000, 10);
+		updateOwner(1, "5");
+		data.close();
+		data.close(); // closing again does nothing
+
+		// tasks started before the close must not touch the database anymore
+		Field database = Data.class.getDeclaredField("database");
+		database.setAccessible(true);
+		database.set(data, null);
+		Method checkpoint = Data.class.getDeclaredMethod("checkpoint",
+				boolean.class);
+		checkpoint.setAccessible(true);
+		checkpoint.invoke(data, true);
+		Method force = Data.class.getDeclaredMethod("forceUnforcedCommits");
+		force.setAccessible(true);
+		force.invoke(data);
+	}
+
+	private void updateOwner(int recNo, String owner) throws Exception {
+		long cookie = data.lockRecord(recNo, 0);
+		String[] record = data.read(recNo);
+		record[5] = owner;
+		data.update(recNo, record, cookie);
+		data.unlock(recNo, cookie);
+	}
+
+	@Test
+	public void testBulkImport() throws Exception {
+		// importing the original content adds nothing
+		BulkLoadResult result = data.importDatabase(new File(
+				"files/db-files/stdContent.db"));
+		assertEquals(0, result.getImportedCount());
+		assertTrue(result.getDuplicateCount() > 0);
+
+		String existing = "";
+		for (String value : data.read(0)) {
+			existing += ",\"" + value + "\"";
+		}
+		String csv = "name,location,specialties,size,rate,owner\r\n"
+				+ "Bulk One,Trier,\"Roofing, Plumbing\",4,$44,\r\n"
+				+ existing.substring(1) + "\r\n"
+				+ "\"Bulk \"\"Two\"\"\",Trier,Glass,5,$55,\r\n";
+		result = data.importCsv(new StringReader(csv));
+		assertEquals(2, result.getImportedCount());
+		assertEquals(1, result.getDuplicateCount());
+
+		int[] found = data.find(new String[] { "Bulk", null, null, null,
+				null, null });
+		assertEquals(2, found.length);
+		assertEquals("Roofing, Plumbing", data.read(found[0])[2]);
+		assertEquals("Bulk \"Two\"", data.read(found[1])[0]);
+	}
+
+	@Test
+	public void testExport() throws Exception {
+		int valid = data.find(new String[6]).length;
+		data.lock(1);
+		data.delete(1);
+		data.unlock(1);
+
+		StringWriter csv = new StringWriter();
+		assertEquals(valid - 1, data.export(csv, ExportFormat.CSV));
+		String[] lines = csv.toString().split("\r\n");
+		assertEquals(valid, lines.length);
+		assertEquals("name,location,specialties,size,rate,owner", lines[0]);
+		assertTrue(lines[1].startsWith("Bitter Homes & Gardens,Smallville,"
+				+ "\"Drywall, Painting, Carpets\","));
+
+		StringWriter json = new StringWriter();
+		assertEquals(valid - 1, data.export(json,
+				ExportFormat.JSON_LINES));
+		lines = json.toString().split("\n");
+		assertEquals(valid - 1, lines.length);
+		assertTrue(lines[0].startsWith("{\"name\":\"Bitter Homes & Gardens\","
+				+ "\"location\":\"Smallville\","));
+	}
+
+	@Test
+	public void testCompactWhileReading() throws Exception {
+		for (int recNo = 1; recNo < 30; recNo += 3) {
+			data.lock(recNo);
+			data.delete(recNo);
+			data.unlock(recNo);
+		}
+		final String expected = data.read(32)[0];
+		final AtomicInteger failures = new AtomicInteger();
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 2000; i++) {
+					try {
+						if (!expected.equals(data.read(32)[0])) {
+							failures.incrementAndGet();
+						}
+					} catch (RecordNotFoundException rnfe) {
+						failures.incrementAndGet();
+					}
+				}
+			}
+		};
+		reader.start();
+		CompactionResult result = data.compact();
+		reader.join();
+
+		assertEquals(0, failures.get());
+		assertEquals(10 * 183, result.getReclaimedBytes());
+		assertEquals(expected, data.read(32)[0]);
+	}
+
+	@Test
+	public void testCursorStreamsMatchingRecords() throws Exception {
+		String[] record = createCorrectData();
+		for (int i = 0; i < 100; i++) {
+			record[0] = "Cursor Contractor " + i;
+			data.create(record);
+		}
+
+		String[] criteria = new String[6];
+		criteria[0] = "Cursor";
+		int[] found = data.find(criteria);
+		assertEquals(100, found.length);
+		Iterator<DBRecord> cursor = data.cursor(criteria);
+		for (int recNo : found) {
+			assertTrue(cursor.hasNext());
+			DBRecord next = cursor.next();
+			assertEquals(recNo, next.getRecNo());
+			assertTrue(Arrays.equals(data.read(recNo), next.getValues()));
+		}
+		assertFalse(cursor.hasNext());
+
+		criteria[0] = "Cursor Contractor 42";
+		criteria[1] = "Smallville";
+		cursor = data.cursorExact(criteria, false);
+		int matches = 0;
+		while (cursor.hasNext()) {
+			String[] values = cursor.next().getValues();
+			assertTrue(values[0].equals(criteria[0])
+					|| values[1].equals(criteria[1]));
+			matches++;
+		}
+		assertEquals(data.findExact(criteria, false).length, matches);
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+package suncertify.db;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark measuring the throughput of bookings (lock, read, update, unlock)
+ * of a file based database in each durability mode, once by a single client
+ * and once by several clients sharing forced writes. The result helps to
+ * choose the durability mode of a deployment.
+ */
+public class DurabilityBenchmark {
+
+    private static final File STD_FILE = new File(
+            "files/db-files/stdContent.db");
+
+    private static final long MEASURE_MILLIS = 3000;
+
+    private static final int RECORDS = 16;
+
+    public static void main(String[] args) throws Exception {
+        File dbFile = File.createTempFile("durabilityBenchmark", ".db");
+        dbFile.deleteOnExit();
+        new File(dbFile.getPath() + ".journal").deleteOnExit();
+        copy(STD_FILE, dbFile);
+        Data data = new Data(dbFile, StorageMode.FILE);
+
+        run(data, 4, MEASURE_MILLIS); // warm-up
+        for (DurabilityMode mode : DurabilityMode.values()) {
+            data.setDurabilityMode(mode);
+            for (int clients = 1; clients <= 16; clients *= 16) {
+                long bookings = run(data, clients, MEASURE_MILLIS);
+                System.out.println(String.format("%-8s %2d clients: "
+                        + "%,10d bookings/s", mode, clients, bookings * 1000
+                        / MEASURE_MILLIS));
+            }
+        }
+    }
+
+    private static long run(final Data data, int clients, long millis)
+            throws Exception {
+        final AtomicLong bookings = new AtomicLong();
+        final long end = System.currentTimeMillis() + millis;
+        final CountDownLatch done = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            final int client = i;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        long count = 0;
+                        for (int n = 0; System.currentTimeMillis() < end; n++) {
+                            int recNo = (client + n) % RECORDS;
+                            long cookie = data.lockRecord(recNo, 60000);
+                            try {
+                                String[] record = data.read(recNo);
+                                record[5] = String.valueOf(n % 100);
+                                data.update(recNo, record, cookie);
+                            } finally {
+                                data.unlock(recNo, cookie);
+                            }
+                            count++;
+                        }
+                        bookings.addAndGet(count);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        return bookings.get();
+    }
+
+    private static void copy(File from, File to) throws Exception {
+        FileInputStream fis = new FileInputStream(from);
+        byte[] content = new byte[(int) from.length()];
+        fis.read(content);
+        fis.close();
+        FileOutputStream fos = new FileOutputStream(to, false);
+        fos.write(content);
+        fos.close();
+    }
+
+}
@@ -0,0 +1,86 @@
+package suncertify.db;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark measuring the throughput of bookings (lock, read, update, unlock)
+ * of a few hot records by an increasing number of clients. With per-record
+ * wait queues an unlock wakes up only the next client of the same record, so
+ * the throughput should not degrade with the number of clients.
+ */
+public class LockContentionBenchmark {
+
+    private static final File STD_FILE = new File(
+            "files/db-files/stdContent.db");
+
+    private static final int HOT_RECORDS = 4;
+
+    private static final long MEASURE_MILLIS = 3000;
+
+    public static void main(String[] args) throws Exception {
+        File dbFile = File.createTempFile("lockBenchmark", ".db");
+        dbFile.deleteOnExit();
+        new File(dbFile.getPath() + ".journal").deleteOnExit();
+        copy(STD_FILE, dbFile);
+        Data data = new Data(dbFile, StorageMode.MEMORY_WRITE_BEHIND);
+
+        run(data, 4, MEASURE_MILLIS); // warm-up
+        for (int clients = 1; clients <= 64; clients *= 4) {
+            long bookings = run(data, clients, MEASURE_MILLIS);
+            System.out.println(String.format("%2d clients: %,10d bookings/s",
+                    clients, bookings * 1000 / MEASURE_MILLIS));
+        }
+    }
+
+    private static long run(final Data data, int clients, long millis)
+            throws Exception {
+        final AtomicLong bookings = new AtomicLong();
+        final long end = System.currentTimeMillis() + millis;
+        final CountDownLatch done = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            final String owner = String.valueOf(i);
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        long count = 0;
+                        for (int n = 0; System.currentTimeMillis() < end; n++) {
+                            int recNo = n % HOT_RECORDS;
+                            data.lock(recNo);
+                            try {
+                                String[] record = data.read(recNo);
+                                record[5] = owner;
+                                data.update(recNo, record);
+                            } finally {
+                                data.unlock(recNo);
+                            }
+                            count++;
+                        }
+                        bookings.addAndGet(count);
+                    } catch (RecordNotFoundException rnfe) {
+                        rnfe.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        return bookings.get();
+    }
+
+    private static void copy(File from, File to) throws Exception {
+        FileInputStream fis = new FileInputStream(from);
+        byte[] content = new byte[(int) from.length()];
+        fis.read(content);
+        fis.close();
+        FileOutputStream fos = new FileOutputStream(to, false);
+        fos.write(content);
+        fos.close();
+    }
+
+}
@@ -0,0 +1,102 @@
+package suncertify.db;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark measuring the throughput of concurrent readers of
+ * <code>Data</code>, i.e.: of <code>find</code> followed by reading the found
+ * records, for an increasing number of reader threads. One additional thread
+ * keeps updating a record meanwhile. With readers sharing the database lock
+ * the throughput should grow with the number of cores.
+ */
+public class ReadThroughputBenchmark {
+
+    private static final File STD_FILE = new File(
+            "files/db-files/stdContent.db");
+
+    private static final long WARMUP_MILLIS = 2000;
+
+    private static final long MEASURE_MILLIS = 3000;
+
+    private static final String[] CRITERIA = new String[] { "B", null, null,
+            null, null, null };
+
+    public static void main(String[] args) throws Exception {
+        File dbFile = File.createTempFile("readBenchmark", ".db");
+        dbFile.deleteOnExit();
+        new File(dbFile.getPath() + ".journal").deleteOnExit();
+        copy(STD_FILE, dbFile);
+        Data data = new Data(dbFile, 0); // no cache: every read hits the file
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        run(data, cores, WARMUP_MILLIS);
+        for (int threads = 1; threads <= 2 * cores; threads *= 2) {
+            long ops = run(data, threads, MEASURE_MILLIS);
+            System.out.println(String.format("%2d readers: %,10d reads/s",
+                    threads, ops * 1000 / MEASURE_MILLIS));
+        }
+    }
+
+    private static long run(final Data data, int threads, long millis)
+            throws Exception {
+        final AtomicLong ops = new AtomicLong();
+        final long end = System.currentTimeMillis() + millis;
+        final CountDownLatch done = new CountDownLatch(threads + 1);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        long count = 0;
+                        while (System.currentTimeMillis() < end) {
+                            for (int recNo : data.find(CRITERIA)) {
+                                data.read(recNo);
+                                count++;
+                            }
+                        }
+                        ops.addAndGet(count);
+                    } catch (RecordNotFoundException rnfe) {
+                        rnfe.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    String[] record = data.read(5);
+                    while (System.currentTimeMillis() < end) {
+                        data.lock(5);
+                        data.update(5, record);
+                        data.unlock(5);
+                        Thread.sleep(1);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }
+        }.start();
+        done.await();
+        return ops.get();
+    }
+
+    private static void copy(File from, File to) throws Exception {
+        FileInputStream fis = new FileInputStream(from);
+        byte[] content = new byte[(int) from.length()];
+        fis.read(content);
+        fis.close();
+        FileOutputStream fos = new FileOutputStream(to, false);
+        fos.write(content);
+        fos.close();
+    }
+
+}
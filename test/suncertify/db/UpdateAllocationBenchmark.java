@@ -0,0 +1,93 @@
+package suncertify.db;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Micro-benchmark measuring the bytes allocated per record update. It
+ * compares the former write path (one formatted <code>String</code> and one
+ * write per column) with the current <code>DBFileAccess.update</code>.
+ * Requires a JVM providing <code>com.sun.management.ThreadMXBean</code>.
+ */
+public class UpdateAllocationBenchmark {
+
+    private static final File STD_FILE = new File(
+            "files/db-files/stdContent.db");
+
+    private static final int WARMUP = 20000;
+
+    private static final int ITERATIONS = 100000;
+
+    private static final int[] COL_LENGTHS = new int[] { 32, 64, 64, 6, 8, 8 };
+
+    private static final int DATA_SECTION_START = 54;
+
+    private static final int DATA_SET_LENGTH = 183;
+
+    private static String[] data = new String[] { "Fred & Nobby",
+            "Smallville", "Drywall", "9", "$85.00", "12345678" };
+
+    public static void main(String[] args) throws Exception {
+        File dbFile = File.createTempFile("updateBenchmark", ".db");
+        dbFile.deleteOnExit();
+        copy(STD_FILE, dbFile);
+
+        RandomAccessFile raf = new RandomAccessFile(dbFile, "rw");
+        for (int i = 0; i < WARMUP; i++) {
+            legacyUpdate(raf, i % 33);
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            legacyUpdate(raf, i % 33);
+        }
+        long legacy = (allocatedBytes() - before) / ITERATIONS;
+        raf.close();
+
+        DBFileAccess dbFileAccess = new DBFileAccess(dbFile);
+        for (int i = 0; i < WARMUP; i++) {
+            dbFileAccess.update(i % 33, data);
+        }
+        before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            dbFileAccess.update(i % 33, data);
+        }
+        long current = (allocatedBytes() - before) / ITERATIONS;
+
+        System.out.println(String.format("Bytes allocated per update: "
+                + "before %d, after %d", legacy, current));
+    }
+
+    /**
+     * The write path used before, kept here for comparison.
+     */
+    private static void legacyUpdate(RandomAccessFile raf, int recNo)
+            throws Exception {
+        raf.seek(DATA_SECTION_START + (DATA_SET_LENGTH * recNo) + 1);
+        for (int i = 0; i < COL_LENGTHS.length; i++) {
+            String str = String.format("%1$-" + COL_LENGTHS[i] + "s",
+                    (data[i] != null ? data[i] : ""));
+            raf.write(str.getBytes());
+        }
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory
+                        .getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void copy(File from, File to) throws Exception {
+        FileInputStream fis = new FileInputStream(from);
+        byte[] content = new byte[(int) from.length()];
+        fis.read(content);
+        fis.close();
+        FileOutputStream fos = new FileOutputStream(to, false);
+        fos.write(content);
+        fos.close();
+    }
+
+}
@@ -38,6 +38,7 @@ public class SubContractorServiceLocalTest {
 	
 	@After
 	public void tearDown() throws Exception {
+		manager.close();
 	}
 	
 	/*
@@ -92,6 +93,16 @@ public class SubContractorServiceLocalTest {
 		}
 	}
 	
+	@Test
+	public void testGetSubContractorsByRecNos() throws Exception {
+		List<SubContractor> list = manager.getSubContractorsByRecNos(
+				new int[] { 5, 0, 999 });
+		assertEquals(2, list.size());
+		assertEquals(5, list.get(0).getRecNo());
+		assertEquals(testSc, list.get(1));
+		assertEquals(manager.getSubContractorByRecNo(5), list.get(0));
+	}
+	
 	@Test
 	public void testSearchOr() {
 		List<SubContractor> list = null;